@@ -0,0 +1,18 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行基准测试，参数与JMH命令行相同。总是启用gc profiler，结果中的gc.alloc.rate.norm为每次操作分配的字节数
+ * 
+ * @author jiangmingyang
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build())
+				.run();
+	}
+}
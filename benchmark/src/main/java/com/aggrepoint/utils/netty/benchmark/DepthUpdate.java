@@ -0,0 +1,123 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.Arrays;
+
+import com.aggrepoint.utils.ws.codec.JsonCodec;
+import com.aggrepoint.utils.ws.codec.JsonReader;
+import com.aggrepoint.utils.ws.codec.JsonWriter;
+import com.aggrepoint.utils.ws.codec.LengthPrefixedCodec;
+import com.aggrepoint.utils.ws.codec.PooledMessage;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 深度更新消息，格式与StubWebSocketServer.PAYLOAD相同。价格和数量数组复用
+ * 
+ * @author jiangmingyang
+ */
+public class DepthUpdate extends PooledMessage {
+	StringBuilder symbol = new StringBuilder();
+	int bids;
+	double[] bidPrices = new double[8];
+	double[] bidQuantities = new double[8];
+	int asks;
+	double[] askPrices = new double[8];
+	double[] askQuantities = new double[8];
+
+	@Override
+	protected void clear() {
+		symbol.setLength(0);
+		bids = 0;
+		asks = 0;
+	}
+
+	void addBid(double price, double quantity) {
+		if (bids == bidPrices.length) {
+			bidPrices = Arrays.copyOf(bidPrices, bids * 2);
+			bidQuantities = Arrays.copyOf(bidQuantities, bids * 2);
+		}
+		bidPrices[bids] = price;
+		bidQuantities[bids++] = quantity;
+	}
+
+	void addAsk(double price, double quantity) {
+		if (asks == askPrices.length) {
+			askPrices = Arrays.copyOf(askPrices, asks * 2);
+			askQuantities = Arrays.copyOf(askQuantities, asks * 2);
+		}
+		askPrices[asks] = price;
+		askQuantities[asks++] = quantity;
+	}
+
+	public static class Json extends JsonCodec<DepthUpdate> {
+		public Json(boolean pooled) {
+			super(DepthUpdate::new, pooled);
+		}
+
+		@Override
+		protected void read(JsonReader reader, DepthUpdate msg) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				reader.nextName();
+				if (reader.nameIs("s"))
+					reader.nextString(msg.symbol);
+				else if (reader.nameIs("b") || reader.nameIs("a")) {
+					boolean bid = reader.nameIs("b");
+					reader.beginArray();
+					while (reader.hasNext()) {
+						reader.beginArray();
+						double price = reader.nextDouble();
+						reader.hasNext();
+						double quantity = reader.nextDouble();
+						reader.endArray();
+						if (bid)
+							msg.addBid(price, quantity);
+						else
+							msg.addAsk(price, quantity);
+					}
+					reader.endArray();
+				} else
+					reader.skipValue();
+			}
+			reader.endObject();
+		}
+
+		@Override
+		protected void write(DepthUpdate msg, JsonWriter writer) {
+			writer.beginObject().name("e").value("depthUpdate").name("s").value(msg.symbol);
+			writer.name("b").beginArray();
+			for (int i = 0; i < msg.bids; i++)
+				writer.beginArray().value(msg.bidPrices[i]).value(msg.bidQuantities[i]).endArray();
+			writer.endArray().name("a").beginArray();
+			for (int i = 0; i < msg.asks; i++)
+				writer.beginArray().value(msg.askPrices[i]).value(msg.askQuantities[i]).endArray();
+			writer.endArray().endObject();
+		}
+	}
+
+	public static class Binary extends LengthPrefixedCodec<DepthUpdate> {
+		public Binary(boolean pooled) {
+			super(DepthUpdate::new, pooled);
+		}
+
+		@Override
+		protected void read(ByteBuf in, DepthUpdate msg) {
+			readString(in, msg.symbol);
+			for (int i = in.readInt(); i > 0; i--)
+				msg.addBid(in.readDouble(), in.readDouble());
+			for (int i = in.readInt(); i > 0; i--)
+				msg.addAsk(in.readDouble(), in.readDouble());
+		}
+
+		@Override
+		protected void write(DepthUpdate msg, ByteBuf out) {
+			writeString(out, msg.symbol);
+			out.writeInt(msg.bids);
+			for (int i = 0; i < msg.bids; i++)
+				out.writeDouble(msg.bidPrices[i]).writeDouble(msg.bidQuantities[i]);
+			out.writeInt(msg.asks);
+			for (int i = 0; i < msg.asks; i++)
+				out.writeDouble(msg.askPrices[i]).writeDouble(msg.askQuantities[i]);
+		}
+	}
+}
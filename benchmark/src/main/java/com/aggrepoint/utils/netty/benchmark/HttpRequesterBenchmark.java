@@ -0,0 +1,134 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.asynchttpclient.ListenableFuture;
+import org.asynchttpclient.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.http.HttpChannel;
+import com.aggrepoint.utils.http.HttpTask;
+import com.aggrepoint.utils.http.ResponseFuture;
+
+/**
+ * HttpRequester.request(List)批量请求，以及ResponseFuture从创建到取得结果的开销
+ * 
+ * @author jiangmingyang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequesterBenchmark {
+	static final int BATCH = 100;
+
+	/** 已经完成的ListenableFuture，用于单独测量ResponseFuture */
+	static class CompletedFuture implements ListenableFuture<Response> {
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return true;
+		}
+
+		@Override
+		public Response get() {
+			return null;
+		}
+
+		@Override
+		public Response get(long timeout, TimeUnit unit) {
+			return null;
+		}
+
+		@Override
+		public void done() {
+		}
+
+		@Override
+		public void abort(Throwable t) {
+		}
+
+		@Override
+		public void touch() {
+		}
+
+		@Override
+		public ListenableFuture<Response> addListener(Runnable listener, Executor exec) {
+			listener.run();
+			return this;
+		}
+
+		@Override
+		public CompletableFuture<Response> toCompletableFuture() {
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	StubHttpServer server;
+	ExecutorService exec;
+	HttpChannel channel;
+	String url;
+	CompletedFuture completed = new CompletedFuture();
+
+	@Setup
+	public void setup() throws Exception {
+		server = new StubHttpServer().start();
+		url = server.url("/api/v3/ticker/price?symbol=BTCUSDT");
+		exec = Executors.newFixedThreadPool(4);
+		channel = new HttpChannel(exec, null, 3000, 3000, 3000, false, null, null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		exec.shutdownNow();
+		server.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void requestList() {
+		List<HttpTask> tasks = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++)
+			tasks.add(new HttpTask(url, (body, e) -> {
+			}));
+		ResponseFuture.sync(channel.request(tasks));
+	}
+
+	/**
+	 * HttpThrottling中的用法：先创建ResponseFuture，请求被分派后再设置ListenableFuture
+	 */
+	@Benchmark
+	public Response responseFuture() throws Exception {
+		ResponseFuture future = new ResponseFuture(() -> false);
+		future.setResponseFuture(completed);
+		return future.get();
+	}
+}
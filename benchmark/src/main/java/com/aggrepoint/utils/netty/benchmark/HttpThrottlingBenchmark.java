@@ -0,0 +1,73 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.http.HttpChannel;
+import com.aggrepoint.utils.http.HttpThrottling;
+
+/**
+ * HttpThrottling在N个channel上不限速时的分派吞吐量，请求发往进程内的StubHttpServer
+ * 
+ * @author jiangmingyang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpThrottlingBenchmark {
+	static final int BATCH = 100;
+
+	@Param({ "1", "4" })
+	int channels;
+
+	StubHttpServer server;
+	ExecutorService exec;
+	HttpThrottling throttling;
+	String url;
+
+	@Setup
+	public void setup() throws Exception {
+		server = new StubHttpServer().start();
+		url = server.url("/api/v3/ticker/price?symbol=BTCUSDT");
+		exec = Executors.newFixedThreadPool(4);
+
+		HttpChannel[] chs = new HttpChannel[channels];
+		for (int i = 0; i < channels; i++)
+			chs[i] = new HttpChannel(exec, null, 3000, 3000, 3000, false, null, null);
+		throttling = new HttpThrottling(chs, 0, BATCH * 10);
+	}
+
+	@TearDown
+	public void tearDown() {
+		exec.shutdownNow();
+		server.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void dispatch() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(BATCH);
+		for (int i = 0; i < BATCH; i++)
+			throttling.request(url, (body, e) -> latch.countDown());
+		latch.await();
+	}
+}
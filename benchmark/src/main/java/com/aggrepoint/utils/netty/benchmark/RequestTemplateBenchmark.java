@@ -0,0 +1,51 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.util.HttpConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.http.HttpRequestTemplate;
+
+/**
+ * HttpRequestTemplate与RequestBuilder生成同样请求的开销
+ * 
+ * @author jiangmingyang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestTemplateBenchmark {
+	HttpRequestTemplate template = new HttpRequestTemplate(HttpConstants.Methods.GET,
+			"https://api.binance.com/api/v1/depth?symbol={symbol}&limit={limit}").addHeader("X-MBX-APIKEY",
+					"vmPUZE6mv9SD5VNHk4HlWFsOr6aKE2zvsw0MuIgwCIPy6utIco14y7Ju91duEh8A");
+
+	String symbol = "BTCUSDT";
+	int limit = 20;
+
+	@Benchmark
+	public Request template() {
+		return template.request(symbol, limit);
+	}
+
+	@Benchmark
+	public Request requestBuilder() {
+		return new RequestBuilder(HttpConstants.Methods.GET).setUrl("https://api.binance.com/api/v1/depth")
+				.addQueryParam("symbol", symbol).addQueryParam("limit", String.valueOf(limit))
+				.addHeader("X-MBX-APIKEY", "vmPUZE6mv9SD5VNHk4HlWFsOr6aKE2zvsw0MuIgwCIPy6utIco14y7Ju91duEh8A")
+				.build();
+	}
+}
@@ -0,0 +1,69 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.net.InetSocketAddress;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+/**
+ * 进程内的HTTP服务器，对所有请求返回同样的JSON内容，保持连接
+ * 
+ * @author jiangmingyang
+ */
+public class StubHttpServer {
+	private static final ByteBuf BODY = Unpooled.unreleasableBuffer(
+			Unpooled.copiedBuffer("{\"symbol\":\"BTCUSDT\",\"price\":\"6500.00\"}", CharsetUtil.UTF_8));
+
+	private NioEventLoopGroup group = new NioEventLoopGroup(2);
+	private Channel channel;
+
+	public StubHttpServer start() throws InterruptedException {
+		channel = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(65536),
+								new SimpleChannelInboundHandler<FullHttpRequest>() {
+									@Override
+									protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg)
+											throws Exception {
+										FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+												HttpResponseStatus.OK, BODY.duplicate());
+										res.headers().set(HttpHeaderNames.CONTENT_TYPE,
+												HttpHeaderValues.APPLICATION_JSON);
+										res.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, BODY.readableBytes());
+										ctx.writeAndFlush(res);
+									}
+								});
+					}
+				}).bind("127.0.0.1", 0).sync().channel();
+		return this;
+	}
+
+	public String url(String path) {
+		return "http://127.0.0.1:" + ((InetSocketAddress) channel.localAddress()).getPort() + path;
+	}
+
+	public void stop() {
+		channel.close();
+		group.shutdownGracefully();
+	}
+}
@@ -0,0 +1,50 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.net.ServerSocket;
+
+import com.aggrepoint.utils.ws.WebSocketServer;
+
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * 用WebSocketServer在进程内启动的服务器。收到“blast n”时回复n个文本帧，忽略其他帧
+ * 
+ * @author jiangmingyang
+ */
+public class StubWebSocketServer {
+	static final String PAYLOAD = "{\"e\":\"depthUpdate\",\"s\":\"BTCUSDT\","
+			+ "\"b\":[[\"6500.00\",\"1.000\"]],\"a\":[[\"6500.10\",\"2.000\"]]}";
+
+	private int port;
+	private Runnable stop;
+
+	public StubWebSocketServer start() throws Exception {
+		try (ServerSocket s = new ServerSocket(0)) {
+			port = s.getLocalPort();
+		}
+
+		stop = WebSocketServer.start(null, null, port, "/ws", (channel, req) -> {
+		}, (channel, ip) -> ip, (ip, channel, frame) -> {
+			if (!(frame instanceof TextWebSocketFrame))
+				return;
+			String text = ((TextWebSocketFrame) frame).text();
+			if (!text.startsWith("blast "))
+				return;
+
+			int n = Integer.parseInt(text.substring("blast ".length()));
+			for (int i = 0; i < n; i++)
+				channel.write(new TextWebSocketFrame(PAYLOAD));
+			channel.flush();
+		}, ip -> {
+		});
+		return this;
+	}
+
+	public String url() {
+		return "ws://127.0.0.1:" + port + "/ws";
+	}
+
+	public void stop() {
+		stop.run();
+	}
+}
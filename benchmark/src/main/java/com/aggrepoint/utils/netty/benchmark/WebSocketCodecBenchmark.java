@@ -0,0 +1,147 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.ws.codec.WebSocketCodecs;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.CharsetUtil;
+
+/**
+ * <pre>
+ * 解码和编码一个深度更新消息的开销：先转为String再解析，与WebSocketCodec直接读写ByteBuf比较
+ * 
+ * 用BenchmarkMain运行时结果中的gc.alloc.rate.norm为每次操作分配的字节数
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketCodecBenchmark {
+	DepthUpdate.Json json = new DepthUpdate.Json(true);
+	DepthUpdate.Json jsonUnpooled = new DepthUpdate.Json(false);
+	DepthUpdate.Binary binary = new DepthUpdate.Binary(true);
+
+	TextWebSocketFrame textFrame;
+	BinaryWebSocketFrame binaryFrame;
+	DepthUpdate msg;
+
+	@Setup
+	public void setup() {
+		textFrame = new TextWebSocketFrame(
+				Unpooled.directBuffer().writeBytes(StubWebSocketServer.PAYLOAD.getBytes(CharsetUtil.UTF_8)));
+		msg = json.decode(textFrame.content());
+		binaryFrame = (BinaryWebSocketFrame) WebSocketCodecs.encode(binary, msg, ByteBufAllocator.DEFAULT);
+	}
+
+	@TearDown
+	public void tearDown() {
+		textFrame.release();
+		binaryFrame.release();
+	}
+
+	/** 常见的做法：frame.text()后用String的方法解析 */
+	@Benchmark
+	public DepthUpdate decodeString() {
+		String text = textFrame.text();
+		DepthUpdate msg = new DepthUpdate();
+		msg.symbol.append(field(text, "\"s\":\"", "\""));
+		parseLevels(msg, field(text, "\"b\":[", "]]"), true);
+		parseLevels(msg, field(text, "\"a\":[", "]]"), false);
+		return msg;
+	}
+
+	private static String field(String text, String start, String end) {
+		int from = text.indexOf(start) + start.length();
+		return text.substring(from, text.indexOf(end, from));
+	}
+
+	private static void parseLevels(DepthUpdate msg, String levels, boolean bid) {
+		for (String level : levels.split("\\],")) {
+			String[] pq = level.replace("[", "").replace("\"", "").split(",");
+			if (bid)
+				msg.addBid(Double.parseDouble(pq[0]), Double.parseDouble(pq[1]));
+			else
+				msg.addAsk(Double.parseDouble(pq[0]), Double.parseDouble(pq[1]));
+		}
+	}
+
+	@Benchmark
+	public double decodeJson() {
+		DepthUpdate m = WebSocketCodecs.decode(json, textFrame);
+		double v = m.bidPrices[0];
+		json.release(m);
+		return v;
+	}
+
+	@Benchmark
+	public double decodeJsonUnpooled() {
+		DepthUpdate m = WebSocketCodecs.decode(jsonUnpooled, textFrame);
+		double v = m.bidPrices[0];
+		jsonUnpooled.release(m);
+		return v;
+	}
+
+	@Benchmark
+	public double decodeBinary() {
+		DepthUpdate m = WebSocketCodecs.decode(binary, binaryFrame);
+		double v = m.bidPrices[0];
+		binary.release(m);
+		return v;
+	}
+
+	/** 常见的做法：拼接String后创建TextWebSocketFrame */
+	@Benchmark
+	public int encodeString() {
+		StringBuilder sb = new StringBuilder("{\"e\":\"depthUpdate\",\"s\":\"").append(msg.symbol).append("\",\"b\":[");
+		for (int i = 0; i < msg.bids; i++)
+			sb.append(i == 0 ? "[\"" : ",[\"").append(msg.bidPrices[i]).append("\",\"").append(msg.bidQuantities[i])
+					.append("\"]");
+		sb.append("],\"a\":[");
+		for (int i = 0; i < msg.asks; i++)
+			sb.append(i == 0 ? "[\"" : ",[\"").append(msg.askPrices[i]).append("\",\"").append(msg.askQuantities[i])
+					.append("\"]");
+		sb.append("]}");
+		WebSocketFrame frame = new TextWebSocketFrame(sb.toString());
+		int size = frame.content().readableBytes();
+		frame.release();
+		return size;
+	}
+
+	@Benchmark
+	public int encodeJson() {
+		WebSocketFrame frame = WebSocketCodecs.encode(json, msg, ByteBufAllocator.DEFAULT);
+		int size = frame.content().readableBytes();
+		frame.release();
+		return size;
+	}
+
+	@Benchmark
+	public int encodeBinary() {
+		WebSocketFrame frame = WebSocketCodecs.encode(binary, msg, ByteBufAllocator.DEFAULT);
+		int size = frame.content().readableBytes();
+		frame.release();
+		return size;
+	}
+}
@@ -0,0 +1,127 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.ws.WebSocketClient;
+import com.aggrepoint.utils.ws.WebSocketClientBuilder;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * <pre>
+ * 没有设置requestInterval时，合并flush前后sendMessage()和sendMessages()的吞吐量
+ *
+ * 结果中的flushes是每秒到达socket的flush次数，每次flush对应一次写系统调用，flushes除以吞吐量即为每个消息的系统调用次数
+ * </pre>
+ *
+ * @author jiangmingyang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketFlushBenchmark {
+	static final int BATCH = 100;
+
+	/** 0表示每个消息单独flush */
+	@Param({ "0", "64" })
+	int flushMessages;
+
+	StubWebSocketServer server;
+	ExecutorService exec;
+	WebSocketClient<TextWebSocketFrame, String> client;
+	LongAdder flushCount = new LongAdder();
+
+	@Sharable
+	class FlushCounter extends ChannelOutboundHandlerAdapter {
+		@Override
+		public void flush(ChannelHandlerContext ctx) throws Exception {
+			flushCount.increment();
+			ctx.flush();
+		}
+	}
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Flushes {
+		long base;
+		public long flushes;
+
+		@Setup(Level.Iteration)
+		public void reset(WebSocketFlushBenchmark bench) {
+			base = bench.flushCount.sum();
+			flushes = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		server = new StubWebSocketServer().start();
+		exec = Executors.newFixedThreadPool(2);
+		client = new WebSocketClientBuilder<TextWebSocketFrame, String>(exec, "bench", server.url())
+				.setFlushConsolidation(flushMessages, 0).build();
+		client.open(null);
+		while (!client.isConnected())
+			Thread.sleep(1);
+		// 放在最靠近socket的位置
+		client.getChannel().pipeline().addFirst(new FlushCounter());
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		client.stop();
+		exec.shutdownNow();
+		server.stop();
+	}
+
+	/** 等待消息写入socket，避免发送速度超过网络时消息在内存中堆积 */
+	private void awaitWritten(Flushes f) {
+		while (client.getQueueSize() > 0 || !client.getChannel().isWritable())
+			Thread.yield();
+		f.flushes = flushCount.sum() - f.base;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void sendMessage(Flushes f) {
+		for (int i = 0; i < BATCH; i++)
+			client.sendMessage(new TextWebSocketFrame(StubWebSocketServer.PAYLOAD));
+		awaitWritten(f);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void sendMessages(Flushes f) {
+		List<TextWebSocketFrame> frames = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++)
+			frames.add(new TextWebSocketFrame(StubWebSocketServer.PAYLOAD));
+		client.sendMessages(frames);
+		awaitWritten(f);
+	}
+}
@@ -0,0 +1,70 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.ws.WebSocketClient;
+import com.aggrepoint.utils.ws.WebSocketClientBuilder;
+
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * 接收到的帧经WebSocketClientHandler交给execSvc执行onFrame回调的吞吐量
+ * 
+ * @author jiangmingyang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketReceiveBenchmark {
+	static final int BATCH = 1000;
+
+	StubWebSocketServer server;
+	ExecutorService exec;
+	WebSocketClient<TextWebSocketFrame, String> client;
+	volatile CountDownLatch latch;
+
+	@Setup
+	public void setup() throws Exception {
+		server = new StubWebSocketServer().start();
+		exec = Executors.newFixedThreadPool(4);
+		client = new WebSocketClientBuilder<TextWebSocketFrame, String>(exec, "bench", server.url())
+				.onFrame((channel, frame, data) -> latch.countDown()).build();
+		client.open(null);
+		while (!client.isConnected())
+			Thread.sleep(1);
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		client.stop();
+		exec.shutdownNow();
+		server.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void receive() throws InterruptedException {
+		latch = new CountDownLatch(BATCH);
+		client.sendMessage(new TextWebSocketFrame("blast " + BATCH));
+		latch.await();
+	}
+}
@@ -0,0 +1,81 @@
+package com.aggrepoint.utils.netty.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aggrepoint.utils.ws.WebSocketClient;
+import com.aggrepoint.utils.ws.WebSocketClientBuilder;
+
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * <pre>
+ * WebSocketClient.sendMessage()的开销。requestInterval为0时直接写出，大于0时进入等待队列由调度线程发送
+ * 
+ * 每次迭代调用batchSize次sendMessage()，然后关闭连接，避免等待队列无限增长
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = WebSocketSendBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = WebSocketSendBenchmark.BATCH)
+@Fork(1)
+public class WebSocketSendBenchmark {
+	static final int BATCH = 10000;
+
+	@Param({ "0", "1" })
+	long requestInterval;
+
+	StubWebSocketServer server;
+	ExecutorService exec;
+	WebSocketClient<TextWebSocketFrame, String> client;
+
+	@Setup
+	public void setup() throws Exception {
+		server = new StubWebSocketServer().start();
+		exec = Executors.newFixedThreadPool(2);
+	}
+
+	@TearDown
+	public void tearDown() {
+		exec.shutdownNow();
+		server.stop();
+	}
+
+	@Setup(Level.Iteration)
+	public void connect() throws Exception {
+		client = new WebSocketClientBuilder<TextWebSocketFrame, String>(exec, "bench", server.url())
+				.setRequestInterval(requestInterval).build();
+		client.open(null);
+		while (!client.isConnected())
+			Thread.sleep(1);
+	}
+
+	@TearDown(Level.Iteration)
+	public void disconnect() throws InterruptedException {
+		client.stop();
+	}
+
+	@Benchmark
+	public boolean sendMessage() {
+		return client.sendMessage(new TextWebSocketFrame(StubWebSocketServer.PAYLOAD));
+	}
+}
@@ -0,0 +1,720 @@
+package com.aggrepoint.utils.http;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.SSLException;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.ListenableFuture;
+import org.asynchttpclient.Param;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.asynchttpclient.netty.NettyResponse;
+import org.asynchttpclient.uri.Uri;
+import org.asynchttpclient.util.Utf8UrlEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aggrepoint.utils.StringUtils;
+import com.aggrepoint.utils.jfr.Jfr;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2MultiplexCodec;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * <pre>
+ * 基于Netty HTTP/2编解码器的HttpRequester。对同一个主机的请求在少量连接上多路复用，
+ * 每个连接上同时进行的请求数量不超过maxConcurrentStreams和服务器SETTINGS中限制的较小值，
+ * 所有连接都满时请求在主机队列中等待
+ * 
+ * https使用ALPN协商h2，服务器不支持h2时请求失败；http使用h2c（prior knowledge）
+ * 
+ * 可以代替HttpChannel用于HttpThrottling和HttpRepeat。不支持代理和HttpDownloadTask
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class Http2Channel implements HttpRequester {
+	private static final Logger logger = LoggerFactory.getLogger(Http2Channel.class);
+
+	static NioEventLoopGroup group = new NioEventLoopGroup();
+
+	Executor exec;
+	String bindIp;
+	Integer connectTimeout;
+	Integer requestTimeout;
+
+	/** 每个主机最多建立的连接数 */
+	int maxConnectionsPerHost = 2;
+	/** 每个连接上最多同时进行的请求数 */
+	int maxConcurrentStreams = 100;
+	/** 每个stream的初始接收窗口 */
+	int initialWindowSize = 1024 * 1024;
+	/** 连接的接收窗口 */
+	int connectionWindowSize = 16 * 1024 * 1024;
+	/** 允许的最大响应内容字节数。可以被HttpTask中的maxBodySize覆盖 */
+	int maxContentLength = 64 * 1024 * 1024;
+
+	private SslContext sslCtx;
+	private InflaterPool inflaters = new InflaterPool(64);
+	private Map<String, Host> hosts = new ConcurrentHashMap<>();
+	private HttpMetrics metrics = new HttpMetrics("Http2Channel");
+
+	/** 一个主机的所有连接和等待发送的请求 */
+	class Host {
+		String key;
+		boolean ssl;
+		String host;
+		int port;
+		List<Connection> connections = new ArrayList<>();
+		/** 正在建立的连接数 */
+		int connecting;
+		ArrayDeque<Pending> pending = new ArrayDeque<>();
+	}
+
+	static class Connection {
+		Channel channel;
+		Http2MultiplexCodec codec;
+		/** 正在进行的请求数 */
+		int active;
+	}
+
+	static class Pending {
+		HttpTask task;
+		Request request;
+		Http2ResponseFuture future;
+		long start = System.nanoTime();
+		/** 收到响应头的时间 */
+		long firstByte;
+		long bodySize;
+
+		Pending(HttpTask task, Request request) {
+			this.task = task;
+			this.request = request;
+			this.future = new Http2ResponseFuture();
+		}
+	}
+
+	/**
+	 * @param exec           用于执行处理HTTP响应的逻辑。如果HttpTask中带有Executor，则用HttpTask中的Executor
+	 * @param bindIp         绑定本地IP地址
+	 * @param connectTimeout 连接超时
+	 * @param requestTimeout 请求超时
+	 */
+	public Http2Channel(Executor exec, String bindIp, Integer connectTimeout, Integer requestTimeout) {
+		this.exec = exec;
+		this.bindIp = StringUtils.isEmpty(bindIp) ? null : bindIp;
+		this.connectTimeout = connectTimeout;
+		this.requestTimeout = requestTimeout;
+	}
+
+	public Http2Channel setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		return this;
+	}
+
+	public Http2Channel setMaxConcurrentStreams(int maxConcurrentStreams) {
+		this.maxConcurrentStreams = maxConcurrentStreams;
+		return this;
+	}
+
+	/**
+	 * @param initialWindowSize    每个stream的接收窗口，通过SETTINGS通知服务器
+	 * @param connectionWindowSize 整个连接的接收窗口，连接建立后用WINDOW_UPDATE通知服务器
+	 */
+	public Http2Channel setWindowSize(int initialWindowSize, int connectionWindowSize) {
+		this.initialWindowSize = initialWindowSize;
+		this.connectionWindowSize = connectionWindowSize;
+		return this;
+	}
+
+	/** 请求统计 */
+	public HttpMetrics getMetrics() {
+		return metrics;
+	}
+
+	public Http2Channel setMaxContentLength(int maxContentLength) {
+		this.maxContentLength = maxContentLength;
+		return this;
+	}
+
+	private synchronized SslContext getSslContext() throws SSLException {
+		if (sslCtx == null)
+			sslCtx = SslContextBuilder.forClient()
+					.ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+					.applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
+							SelectorFailureBehavior.NO_ADVERTISE, SelectedListenerFailureBehavior.ACCEPT,
+							ApplicationProtocolNames.HTTP_2))
+					.build();
+		return sslCtx;
+	}
+
+	private Http2MultiplexCodec newCodec() {
+		return Http2MultiplexCodecBuilder.forClient(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				// 不接受服务器推送
+			}
+		}).initialSettings(Http2Settings.defaultSettings().pushEnabled(false).initialWindowSize(initialWindowSize)
+				.maxConcurrentStreams(maxConcurrentStreams)).build();
+	}
+
+	/**
+	 * 发起请求，在exec中执行请求结果
+	 */
+	@Override
+	public ResponseFuture request(HttpTask task) {
+		if (task instanceof HttpDownloadTask) {
+			logger.error("Http2Channel不支持HttpDownloadTask");
+			UnsupportedOperationException e = new UnsupportedOperationException("Http2Channel不支持HttpDownloadTask");
+			task.fail(e, exec);
+			return new ResponseFuture(new ListenableFuture.CompletedFailure<>(e));
+		}
+
+		Request request = null;
+		try {
+			request = task.getRequest();
+		} catch (Exception e) {
+			logger.error("获取请求对象异常", e);
+			return null;
+		}
+
+		Uri uri = request.getUri();
+		boolean ssl = uri.isSecured();
+		int port = uri.getExplicitPort();
+		String key = (ssl ? "https://" : "http://") + uri.getHost() + ":" + port;
+		Host host = hosts.computeIfAbsent(key, k -> {
+			Host h = new Host();
+			h.key = k;
+			h.ssl = ssl;
+			h.host = uri.getHost();
+			h.port = port;
+			return h;
+		});
+
+		Pending pending = new Pending(task, request);
+		Http2ResponseFuture future = pending.future;
+		future.toCompletableFuture().whenComplete((r, t) -> {
+			metrics.latency.record(HttpMetrics.micros(pending.start));
+			if (t == null)
+				metrics.outcome(r.getStatusCode());
+			else
+				metrics.outcome(t);
+			Jfr.httpRequest(pending.request, t == null ? r.getStatusCode() : 0, pending.bodySize, pending.start,
+					pending.firstByte, t);
+		});
+
+		future.addListener(() -> {
+			if (task.getProcess() == null)
+				return;
+			try {
+				task.getProcess().accept(future.get().getResponseBody(), null);
+			} catch (InterruptedException | ExecutionException e) {
+				task.getProcess().accept(null,
+						e.getCause() instanceof ResponseLimitException ? (ResponseLimitException) e.getCause() : e);
+			}
+		}, task.getExecutor() == null ? exec : task.getExecutor());
+
+		synchronized (host) {
+			host.pending.add(pending);
+			dispatch(host);
+		}
+
+		return new ResponseFuture(future);
+	}
+
+	/** 连接上允许同时进行的请求数 */
+	private int streamLimit(Connection conn) {
+		return Math.min(maxConcurrentStreams, conn.codec.connection().local().maxActiveStreams());
+	}
+
+	/**
+	 * 把等待的请求分配到有空闲的连接上，没有空闲连接时建立新连接。调用时已经锁定host
+	 */
+	private void dispatch(Host host) {
+		while (!host.pending.isEmpty()) {
+			Connection conn = null;
+			for (Connection c : host.connections)
+				if (c.active < streamLimit(c) && (conn == null || c.active < conn.active))
+					conn = c;
+
+			if (conn == null) {
+				if (host.connections.size() + host.connecting < maxConnectionsPerHost)
+					connect(host);
+				return;
+			}
+
+			Pending pending = host.pending.poll();
+			if (pending.future.isDone()) // 已经被撤销
+				continue;
+			conn.active++;
+			openStream(host, conn, pending);
+		}
+	}
+
+	private void connect(Host host) {
+		host.connecting++;
+
+		Bootstrap b = new Bootstrap();
+		b.group(group).channel(NioSocketChannel.class);
+		if (connectTimeout != null)
+			b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
+
+		Connection conn = new Connection();
+		conn.codec = newCodec();
+
+		SslContext ctx;
+		try {
+			ctx = host.ssl ? getSslContext() : null;
+		} catch (SSLException e) {
+			connectFailed(host, e);
+			return;
+		}
+
+		b.handler(new ChannelInitializer<SocketChannel>() {
+			@Override
+			protected void initChannel(SocketChannel ch) throws Exception {
+				if (ctx == null) {
+					ch.pipeline().addLast(conn.codec);
+					ch.pipeline().addLast(new ConnectionReady(host, conn));
+					return;
+				}
+
+				ch.pipeline().addLast(ctx.newHandler(ch.alloc(), host.host, host.port));
+				ch.pipeline().addLast(new ApplicationProtocolNegotiationHandler("") {
+					@Override
+					protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+						if (!ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+							ctx.close();
+							connectFailed(host, new IllegalStateException(host.key + " 不支持HTTP/2: " + protocol));
+							return;
+						}
+
+						ctx.pipeline().addLast(conn.codec);
+						ctx.pipeline().addLast(new ConnectionReady(host, conn));
+					}
+
+					@Override
+					protected void handshakeFailure(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+						super.handshakeFailure(ctx, cause);
+						connectFailed(host, cause);
+					}
+				});
+			}
+		});
+
+		SocketAddress remote = new InetSocketAddress(host.host, host.port);
+		ChannelFuture cf = bindIp == null ? b.connect(remote) : b.connect(remote, new InetSocketAddress(bindIp, 0));
+		cf.addListener((ChannelFuture f) -> {
+			if (!f.isSuccess())
+				connectFailed(host, f.cause());
+		});
+	}
+
+	/**
+	 * 收到服务器的SETTINGS后连接才可以开始使用，此前不知道服务器允许的并发stream数量
+	 */
+	private class ConnectionReady extends ChannelInboundHandlerAdapter {
+		Host host;
+		Connection conn;
+		boolean ready;
+
+		ConnectionReady(Host host, Connection conn) {
+			this.host = host;
+			this.conn = conn;
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			// 连接级别的帧不需要处理
+			ReferenceCountUtil.release(msg);
+
+			if (!ready && msg instanceof Http2SettingsFrame) {
+				ready = true;
+				connectionReady(host, conn, ctx.channel());
+			}
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			if (!ready)
+				connectFailed(host, new IllegalStateException(host.key + " 连接在HTTP/2握手完成前关闭"));
+			super.channelInactive(ctx);
+		}
+	}
+
+	private void connectionReady(Host host, Connection conn, Channel channel) {
+		conn.channel = channel;
+
+		// 默认连接窗口只有64K，加大到connectionWindowSize
+		int delta = connectionWindowSize - Http2CodecUtil.DEFAULT_WINDOW_SIZE;
+		if (delta > 0)
+			channel.writeAndFlush(new DefaultHttp2WindowUpdateFrame(delta));
+
+		channel.closeFuture().addListener(f -> {
+			synchronized (host) {
+				host.connections.remove(conn);
+				dispatch(host);
+			}
+		});
+
+		synchronized (host) {
+			host.connecting--;
+			host.connections.add(conn);
+			dispatch(host);
+		}
+	}
+
+	private void connectFailed(Host host, Throwable cause) {
+		logger.error(host.key + " 建立HTTP/2连接失败: " + cause);
+
+		List<Pending> failed = new ArrayList<>();
+		synchronized (host) {
+			host.connecting--;
+			// 没有其他可用的连接时，等待中的请求全部失败
+			if (host.connections.isEmpty() && host.connecting == 0) {
+				failed.addAll(host.pending);
+				host.pending.clear();
+			}
+		}
+
+		for (Pending pending : failed)
+			pending.future.abort(cause);
+	}
+
+	/**
+	 * 与HttpChannel一样，HttpTask中的maxBodySize优先于maxContentLength。响应内容要聚合在内存中，不限制时最多Integer.MAX_VALUE
+	 */
+	private int contentLimit(HttpTask task) {
+		if (task.getMaxBodySize() == null)
+			return maxContentLength;
+		return task.getMaxBodySize() <= 0 ? Integer.MAX_VALUE
+				: (int) Math.min(task.getMaxBodySize(), Integer.MAX_VALUE);
+	}
+
+	private void openStream(Host host, Connection conn, Pending pending) {
+		int limit = contentLimit(pending.task);
+		List<String> types = pending.task.getContentTypes();
+
+		new Http2StreamChannelBootstrap(conn.channel).handler(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false));
+				ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+					@Override
+					public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+						if (pending.firstByte == 0 && msg instanceof HttpResponse) {
+							pending.firstByte = System.nanoTime();
+							metrics.firstByte.record((pending.firstByte - pending.start) / 1000);
+
+							String type = ((HttpResponse) msg).headers().get(HttpHeaderNames.CONTENT_TYPE);
+							if (types != null && types.size() > 0
+									&& !ResponseLimitHandler.matchContentType(type, types)) {
+								ReferenceCountUtil.release(msg);
+								pending.future.abort(new ResponseLimitException(
+										pending.request.getUrl() + " 响应内容类型不允许: " + type));
+								ctx.close();
+								return;
+							}
+						}
+						ctx.fireChannelRead(msg);
+					}
+				});
+				ch.pipeline().addLast(new PooledHttpContentDecompressor(inflaters));
+				ch.pipeline().addLast(new HttpObjectAggregator(limit) {
+					@Override
+					protected void handleOversizedMessage(ChannelHandlerContext ctx, HttpMessage oversized)
+							throws Exception {
+						// 默认实现先关闭stream再抛出异常，请求会被当作连接中断
+						pending.future.abort(
+								new ResponseLimitException(pending.request.getUrl() + " 响应内容超过限制" + limit));
+						ctx.close();
+					}
+				});
+				ch.pipeline().addLast(new StreamHandler(pending));
+			}
+		}).open().addListener((Future<Http2StreamChannel> f) -> {
+			if (!f.isSuccess()) {
+				streamDone(host, conn);
+				pending.future.abort(f.cause());
+				return;
+			}
+
+			Http2StreamChannel stream = f.getNow();
+			pending.future.stream = stream;
+
+			int timeout = pending.request.getRequestTimeout() != 0 ? pending.request.getRequestTimeout()
+					: requestTimeout == null ? 0 : requestTimeout;
+			ScheduledFuture<?> timer = timeout <= 0 ? null : stream.eventLoop().schedule(() -> {
+				if (!pending.future.isDone()) {
+					pending.future.abort(new TimeoutException(pending.request.getUrl() + " 请求超时" + timeout));
+					stream.close();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+
+			stream.closeFuture().addListener(cf -> {
+				if (timer != null)
+					timer.cancel(false);
+				// 在channelRead中关闭stream时Http2Connection中的stream还没有关闭，稍后再释放名额
+				conn.channel.eventLoop().execute(() -> streamDone(host, conn));
+				if (!pending.future.isDone())
+					pending.future.abort(new IllegalStateException(pending.request.getUrl() + " 连接中断"));
+			});
+
+			stream.writeAndFlush(toHttpRequest(pending.request));
+		});
+	}
+
+	private void streamDone(Host host, Connection conn) {
+		synchronized (host) {
+			conn.active--;
+			dispatch(host);
+		}
+	}
+
+	private static FullHttpRequest toHttpRequest(Request request) {
+		ByteBuf body;
+		boolean form = false;
+		if (request.getByteData() != null)
+			body = Unpooled.wrappedBuffer(request.getByteData());
+		else if (request.getStringData() != null)
+			body = Unpooled.copiedBuffer(request.getStringData(),
+					request.getCharset() == null ? StandardCharsets.UTF_8 : request.getCharset());
+		else if (request.getFormParams() != null && request.getFormParams().size() > 0) {
+			StringBuilder sb = new StringBuilder();
+			for (Param param : request.getFormParams()) {
+				if (sb.length() > 0)
+					sb.append('&');
+				Utf8UrlEncoder.encodeAndAppendFormElement(sb, param.getName());
+				sb.append('=');
+				if (param.getValue() != null)
+					Utf8UrlEncoder.encodeAndAppendFormElement(sb, param.getValue());
+			}
+			body = Unpooled.copiedBuffer(sb, StandardCharsets.UTF_8);
+			form = true;
+		} else
+			body = Unpooled.EMPTY_BUFFER;
+
+		FullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(request.getMethod()),
+				request.getUri().toRelativeUrl(), body);
+		req.headers().set(request.getHeaders());
+		// 只修改发出的请求，调用者的Request可能被重复使用
+		if (form && !req.headers().contains(HttpHeaderNames.CONTENT_TYPE))
+			req.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED);
+		req.headers().set(HttpHeaderNames.HOST, request.getUri().getHost()
+				+ (request.getUri().getPort() == -1 ? "" : ":" + request.getUri().getPort()));
+		if (!req.headers().contains(HttpHeaderNames.ACCEPT_ENCODING))
+			req.headers().set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP_DEFLATE);
+		if (body.isReadable())
+			req.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, body.readableBytes());
+		return req;
+	}
+
+	/** 接收一个stream上的响应 */
+	private class StreamHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+		Pending pending;
+
+		StreamHandler(Pending pending) {
+			this.pending = pending;
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
+			Channel parent = ((Http2StreamChannel) ctx.channel()).parent();
+			List<HttpResponseBodyPart> parts = new ArrayList<>(1);
+			parts.add(new EagerResponseBodyPart(msg.content(), true));
+			pending.bodySize = msg.content().readableBytes();
+			metrics.bodySize.record(pending.bodySize);
+			pending.future.complete(new NettyResponse(new Http2ResponseStatus(pending.request.getUri(),
+					msg.status().code(), msg.status().reasonPhrase(), parent), msg.headers(), parts));
+			ctx.close();
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			pending.future.abort(cause);
+			ctx.close();
+		}
+	}
+
+	static class Http2ResponseStatus extends HttpResponseStatus {
+		int code;
+		String text;
+		SocketAddress remote;
+		SocketAddress local;
+
+		Http2ResponseStatus(Uri uri, int code, String text, Channel channel) {
+			super(uri);
+			this.code = code;
+			this.text = text;
+			this.remote = channel.remoteAddress();
+			this.local = channel.localAddress();
+		}
+
+		@Override
+		public int getStatusCode() {
+			return code;
+		}
+
+		@Override
+		public String getStatusText() {
+			return text;
+		}
+
+		@Override
+		public String getProtocolName() {
+			return "HTTP";
+		}
+
+		@Override
+		public int getProtocolMajorVersion() {
+			return 2;
+		}
+
+		@Override
+		public int getProtocolMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public String getProtocolText() {
+			return "HTTP/2.0";
+		}
+
+		@Override
+		public SocketAddress getRemoteAddress() {
+			return remote;
+		}
+
+		@Override
+		public SocketAddress getLocalAddress() {
+			return local;
+		}
+	}
+
+	/**
+	 * 用CompletableFuture实现ListenableFuture，使Http2Channel的结果可以像HttpChannel一样放入ResponseFuture
+	 */
+	static class Http2ResponseFuture implements ListenableFuture<Response> {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		volatile Channel stream;
+
+		void complete(Response response) {
+			future.complete(response);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = future.cancel(mayInterruptIfRunning);
+			Channel s = stream;
+			if (cancelled && s != null)
+				s.close();
+			return cancelled;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return future.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		@Override
+		public Response get() throws InterruptedException, ExecutionException {
+			return future.get();
+		}
+
+		@Override
+		public Response get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			return future.get(timeout, unit);
+		}
+
+		@Override
+		public void done() {
+		}
+
+		@Override
+		public void abort(Throwable t) {
+			future.completeExceptionally(t);
+		}
+
+		@Override
+		public void touch() {
+		}
+
+		@Override
+		public ListenableFuture<Response> addListener(Runnable listener, Executor exec) {
+			if (exec == null)
+				future.whenComplete((r, t) -> listener.run());
+			else
+				future.whenCompleteAsync((r, t) -> listener.run(), exec);
+			return this;
+		}
+
+		@Override
+		public CompletableFuture<Response> toCompletableFuture() {
+			return future;
+		}
+	}
+}
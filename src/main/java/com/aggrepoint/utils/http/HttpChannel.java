@@ -2,26 +2,47 @@ package com.aggrepoint.utils.http;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.AsyncHttpClientConfig.ResponseBodyPartFactory;
 import org.asynchttpclient.DefaultAsyncHttpClientConfig;
 import org.asynchttpclient.Dsl;
+import org.asynchttpclient.HostStats;
 import org.asynchttpclient.ListenableFuture;
 import org.asynchttpclient.Request;
 import org.asynchttpclient.RequestBuilder;
 import org.asynchttpclient.Response;
+import org.asynchttpclient.netty.channel.ChannelManager;
+import org.asynchttpclient.uri.Uri;
+import org.asynchttpclient.util.HttpConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.aggrepoint.utils.StringUtils;
+import com.aggrepoint.utils.jfr.Jfr;
+
+import io.netty.channel.ChannelPipeline;
 
 /**
  * <pre>
  * 一个HttpChannel代表一个指定了以下全部或部分特性的Http请求异步发送通道
  * 
  * 		- 绑定IP - 绑定代理 - 超时时间
+ * 
+ * 请求时声明接受gzip和deflate压缩，响应内容用复用的Inflater解压。请求中已经带有Accept-Encoding时，
+ * 以请求中的为准
+ * 
+ * 设置了HttpDnsCache时使用缓存的域名解析结果。调用warmUp()后在后台为指定的主机保持一定数量的空闲连接，
+ * 使请求不必等待域名解析、TCP和TLS握手
+ * 
+ * 设置了HttpRecorder时录制请求和响应，用于HttpReplay回放
  * </pre>
  * 
  * @author jiangmingyang
@@ -30,8 +51,26 @@ public class HttpChannel implements HttpRequester {
 	private static final Logger logger = LoggerFactory.getLogger(HttpChannel.class);
 
 	Executor exec;
-	AsyncHttpClient client;
+	/** 第一次发起请求时才用config建立client，之前可以修改config */
+	DefaultAsyncHttpClientConfig.Builder config;
+	volatile AsyncHttpClient client;
+	/** 用于HttpDownloadTask，响应内容直接引用Netty缓冲区，不复制 */
+	volatile AsyncHttpClient downloadClient;
 	String bindIp;
+	/** 允许的最大响应内容字节数，小于等于0表示不限制。可以被HttpTask中的设置覆盖 */
+	long maxBodySize;
+	/** 允许的响应内容类型，为空表示不限制。可以被HttpTask中的设置覆盖 */
+	List<String> contentTypes;
+	InflaterPool inflaters = new InflaterPool(64);
+	/** 解压前的响应内容字节数 */
+	HttpContentCounter wireCounter = new HttpContentCounter();
+	/** 解压后的响应内容字节数 */
+	HttpContentCounter decodedCounter = new HttpContentCounter();
+	HttpDnsCache dnsCache;
+	HttpMetrics metrics;
+	/** 用于保持预热连接 */
+	ScheduledExecutorService warmer;
+	HttpRecorder recorder;
 
 	/**
 	 * @param exec           用于执行处理HTTP响应的逻辑。如果HttpTask中带有Executor，则用HttpTask中的Executor
@@ -47,6 +86,7 @@ public class HttpChannel implements HttpRequester {
 			Integer readTimeout, boolean followRedirect, String proxyIp, Integer proxyPort) {
 		this.exec = exec;
 		this.bindIp = StringUtils.isEmpty(bindIp) ? null : bindIp;
+		metrics = new HttpMetrics(this.bindIp == null ? "HttpChannel" : "HttpChannel@" + this.bindIp);
 
 		DefaultAsyncHttpClientConfig.Builder clientBuilder = Dsl.config();
 		if (connectTimeout != null)
@@ -58,7 +98,180 @@ public class HttpChannel implements HttpRequester {
 		clientBuilder.setFollowRedirect(followRedirect);
 		if (!StringUtils.isEmpty(proxyIp) && proxyPort != null)
 			clientBuilder.setProxyServer(Dsl.proxyServer(proxyIp, proxyPort));
-		client = Dsl.asyncHttpClient(clientBuilder);
+		clientBuilder.setCompressionEnforced(true);
+		clientBuilder.setHttpAdditionalChannelInitializer(ch -> {
+			ChannelPipeline pipeline = ch.pipeline();
+			pipeline.addAfter(ChannelManager.HTTP_CLIENT_CODEC, "wire-counter", wireCounter);
+			pipeline.replace(ChannelManager.INFLATER_HANDLER, ChannelManager.INFLATER_HANDLER,
+					new PooledHttpContentDecompressor(inflaters));
+			pipeline.addAfter(ChannelManager.INFLATER_HANDLER, "decoded-counter", decodedCounter);
+		});
+		config = clientBuilder;
+	}
+
+	AsyncHttpClient getClient() {
+		if (client == null)
+			synchronized (this) {
+				if (client == null)
+					client = Dsl.asyncHttpClient(config);
+			}
+		return client;
+	}
+
+	/**
+	 * 限制响应内容大小。接收过程中一旦超过限制就中断连接，process收到ResponseLimitException
+	 */
+	public HttpChannel setMaxBodySize(long maxBodySize) {
+		this.maxBodySize = maxBodySize;
+		return this;
+	}
+
+	/**
+	 * 限制响应内容类型，例如application/json、text/*。类型不允许时中断连接，process收到ResponseLimitException
+	 */
+	public HttpChannel setContentTypes(String... contentTypes) {
+		this.contentTypes = contentTypes == null ? null : Arrays.asList(contentTypes);
+		return this;
+	}
+
+	/**
+	 * 使用缓存的域名解析结果
+	 */
+	public HttpChannel setDnsCache(HttpDnsCache dnsCache) {
+		this.dnsCache = dnsCache;
+		return this;
+	}
+
+	/**
+	 * 录制请求和响应，为null时停止录制
+	 */
+	public HttpChannel setRecorder(HttpRecorder recorder) {
+		this.recorder = recorder;
+		return this;
+	}
+
+	/**
+	 * 设置TLS会话缓存。缓存的会话在建立新连接时用于恢复会话，省去完整的TLS握手。必须在发起请求前调用，
+	 * 之后调用抛出IllegalStateException
+	 * 
+	 * @param cacheSize      缓存的会话数量，0表示使用JDK默认值
+	 * @param timeoutSeconds 会话有效时间，0表示使用JDK默认值
+	 */
+	public synchronized HttpChannel setSslSessionCache(int cacheSize, int timeoutSeconds) {
+		if (client != null)
+			throw new IllegalStateException("已经发起过请求，不能再设置TLS会话缓存");
+
+		config.setSslSessionCacheSize(cacheSize).setSslSessionTimeout(timeoutSeconds);
+		return this;
+	}
+
+	/**
+	 * <pre>
+	 * 为urls所在的主机保持至少minIdle个已经完成握手的空闲连接
+	 * 
+	 * 每隔interval毫秒检查一次连接池，空闲连接不足时同时向url发送minIdle个HEAD请求，
+	 * 请求完成后连接留在连接池中。interval应小于连接池的空闲连接超时
+	 * </pre>
+	 */
+	public synchronized HttpChannel warmUp(int minIdle, long interval, String... urls) {
+		if (warmer == null)
+			warmer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "HttpChannel-warmUp");
+				t.setDaemon(true);
+				return t;
+			});
+
+		for (String url : urls) {
+			Uri uri = Uri.create(url);
+			warmer.scheduleWithFixedDelay(() -> keepWarm(uri, minIdle), 0, interval, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	private void keepWarm(Uri uri, int minIdle) {
+		if (dnsCache != null)
+			dnsCache.prefetch(uri.getHost());
+
+		HostStats stats = getClient().getClientStats().getStatsPerHost().get(uri.getHost());
+		if (stats != null && stats.getHostIdleConnectionCount() >= minIdle)
+			return;
+
+		// 同时发出的请求不能共用连接，已有的空闲连接被占用，不足的部分新建连接
+		for (int i = 0; i < minIdle; i++) {
+			RequestBuilder builder = new RequestBuilder(HttpConstants.Methods.HEAD).setUri(uri);
+			if (dnsCache != null)
+				builder.setNameResolver(dnsCache);
+			getClient().executeRequest(builder.build()).toCompletableFuture().exceptionally(t -> {
+				logger.warn("预热连接" + uri + "失败: " + t);
+				return null;
+			});
+		}
+	}
+
+	/** 请求统计 */
+	public HttpMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** 网络上接收到的响应内容字节数（解压前） */
+	public long getWireBytes() {
+		return wireCounter.get();
+	}
+
+	/** 解压后的响应内容字节数 */
+	public long getDecodedBytes() {
+		return decodedCounter.get();
+	}
+
+	AsyncHttpClient getDownloadClient() {
+		if (downloadClient == null)
+			synchronized (this) {
+				// 下载时不声明接受压缩，Range请求的位置才能与文件中的位置对应
+				if (downloadClient == null)
+					downloadClient = Dsl.asyncHttpClient(new DefaultAsyncHttpClientConfig.Builder(getClient().getConfig())
+							.setResponseBodyPartFactory(ResponseBodyPartFactory.LAZY).setCompressionEnforced(false));
+			}
+		return downloadClient;
+	}
+
+	/**
+	 * 执行下载任务，在exec中回调下载结果
+	 */
+	ResponseFuture download(HttpDownloadTask task, Request request) {
+		HttpDownloadHandler handler;
+		try {
+			handler = task.newHandler(request);
+		} catch (Exception e) {
+			logger.error("准备下载异常", e);
+			metrics.outcome(e);
+			task.fail(e, exec);
+			return new ResponseFuture(new ListenableFuture.CompletedFailure<>(e));
+		}
+
+		long start = System.nanoTime();
+		ListenableFuture<Response> future = getDownloadClient().executeRequest(request, handler);
+
+		future.addListener(() -> {
+			try {
+				future.get();
+				metrics.latency.record(HttpMetrics.micros(start));
+				metrics.bodySize.record(handler.getResult().getSize() - handler.getResult().getOffset());
+				metrics.outcome(handler.getResult().getStatusCode());
+				Jfr.httpRequest(request, handler.getResult().getStatusCode(),
+						handler.getResult().getSize() - handler.getResult().getOffset(), start, 0, null);
+				if (task.getDone() != null)
+					task.getDone().accept(handler.getResult(), null);
+			} catch (InterruptedException | ExecutionException e) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				metrics.latency.record(HttpMetrics.micros(start));
+				metrics.outcome(cause);
+				Jfr.httpRequest(request, 0, 0, start, 0, cause);
+				if (task.getDone() != null)
+					task.getDone().accept(null, e);
+			}
+		}, task.getExecutor() == null ? exec : task.getExecutor());
+
+		return new ResponseFuture(future);
 	}
 
 	/**
@@ -82,14 +295,29 @@ public class HttpChannel implements HttpRequester {
 			}
 		}
 
-		ListenableFuture<Response> future = client.executeRequest(request);
+		if (dnsCache != null && request.getNameResolver() != dnsCache)
+			request = new RequestBuilder(request).setNameResolver(dnsCache).build();
+
+		if (task instanceof HttpDownloadTask)
+			return download((HttpDownloadTask) task, request);
+
+		long maxBody = task.getMaxBodySize() == null ? maxBodySize : task.getMaxBodySize();
+		List<String> types = task.getContentTypes() == null ? contentTypes : task.getContentTypes();
+
+		HttpMetricsHandler handler = maxBody > 0 || types != null && types.size() > 0
+				? new ResponseLimitHandler(metrics, request, maxBody, types)
+				: new HttpMetricsHandler(metrics, request);
+		handler.recorder = recorder;
+		ListenableFuture<Response> future = getClient().executeRequest(request, handler);
 
 		future.addListener(() -> {
 			try {
 				if (task.getProcess() != null)
 					task.getProcess().accept(future.get().getResponseBody(), null);
 			} catch (InterruptedException | ExecutionException e) {
-				task.getProcess().accept(null, e);
+				if (task.getProcess() != null)
+					task.getProcess().accept(null,
+							e.getCause() instanceof ResponseLimitException ? (ResponseLimitException) e.getCause() : e);
 			}
 		}, task.getExecutor() == null ? exec : task.getExecutor());
 
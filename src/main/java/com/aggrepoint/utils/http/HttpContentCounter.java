@@ -0,0 +1,29 @@
+package com.aggrepoint.utils.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpContent;
+
+/**
+ * 统计经过的响应内容字节数。放在解压前统计网络上传输的字节数，放在解压后统计解压后的字节数
+ * 
+ * @author jiangmingyang
+ */
+@Sharable
+class HttpContentCounter extends ChannelInboundHandlerAdapter {
+	private LongAdder bytes = new LongAdder();
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof HttpContent)
+			bytes.add(((HttpContent) msg).content().readableBytes());
+		ctx.fireChannelRead(msg);
+	}
+
+	long get() {
+		return bytes.sum();
+	}
+}
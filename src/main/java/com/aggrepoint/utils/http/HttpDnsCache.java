@@ -0,0 +1,164 @@
+package com.aggrepoint.utils.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.resolver.InetNameResolver;
+import io.netty.util.NetUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * <pre>
+ * 缓存域名解析结果的NameResolver，通过HttpChannel.setDnsCache()使用
+ * 
+ * 第一次解析一个域名时在请求线程中同步解析，此后由后台线程在ttl到期前刷新，请求线程直接使用缓存的结果。
+ * 刷新失败时继续使用上一次的结果，稍后重试。一个ttl周期内没有被使用过的域名不再刷新，从缓存中删除
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpDnsCache extends InetNameResolver {
+	private static final Logger logger = LoggerFactory.getLogger(HttpDnsCache.class);
+
+	/** 刷新失败后重试的间隔 */
+	private static final long RETRY_INTERVAL = 5000;
+
+	static class Entry {
+		volatile List<InetAddress> addresses;
+		/** 最后一次被使用的时间 */
+		volatile long lastUsed;
+		/** 最后一次解析成功的时间 */
+		long loaded;
+	}
+
+	private long ttl;
+	private Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "HttpDnsCache");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * @param ttl 解析结果的有效时间
+	 */
+	public HttpDnsCache(long ttl, TimeUnit unit) {
+		super(ImmediateEventExecutor.INSTANCE);
+		this.ttl = unit.toMillis(ttl);
+	}
+
+	private static boolean isIp(String host) {
+		return NetUtil.isValidIpV4Address(host) || NetUtil.isValidIpV6Address(host);
+	}
+
+	/**
+	 * 在后台解析域名放入缓存，用于预热。已经在缓存中的域名视为被使用过，继续保持刷新
+	 */
+	public void prefetch(String host) {
+		if (isIp(host))
+			return;
+
+		Entry entry = entries.get(host);
+		if (entry != null) {
+			entry.lastUsed = System.currentTimeMillis();
+			return;
+		}
+
+		refresher.execute(() -> {
+			try {
+				load(host);
+			} catch (UnknownHostException e) {
+				logger.error("解析" + host + "失败", e);
+			}
+		});
+	}
+
+	/** 缓存中的域名数量 */
+	public int size() {
+		return entries.size();
+	}
+
+	private Entry load(String host) throws UnknownHostException {
+		List<InetAddress> addresses = Arrays.asList(InetAddress.getAllByName(host));
+
+		Entry entry = new Entry();
+		entry.addresses = addresses;
+		entry.loaded = entry.lastUsed = System.currentTimeMillis();
+		if (entries.putIfAbsent(host, entry) == null) // 其他线程已经解析过时沿用其刷新计划
+			schedule(host, entry, refreshDelay());
+		return entries.get(host);
+	}
+
+	/** 在ttl到期前刷新 */
+	private long refreshDelay() {
+		return Math.max(ttl * 4 / 5, 1);
+	}
+
+	private void schedule(String host, Entry entry, long delay) {
+		if (refresher.isShutdown())
+			return;
+		refresher.schedule(() -> refresh(host, entry), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void refresh(String host, Entry entry) {
+		if (entry.lastUsed < System.currentTimeMillis() - ttl) { // 已经不再使用
+			entries.remove(host, entry);
+			return;
+		}
+
+		try {
+			entry.addresses = Arrays.asList(InetAddress.getAllByName(host));
+			entry.loaded = System.currentTimeMillis();
+			schedule(host, entry, refreshDelay());
+		} catch (UnknownHostException e) {
+			logger.error("刷新" + host + "解析结果失败，继续使用" + (System.currentTimeMillis() - entry.loaded) + "毫秒前的结果",
+					e);
+			schedule(host, entry, Math.min(RETRY_INTERVAL, refreshDelay()));
+		}
+	}
+
+	private List<InetAddress> lookup(String host) throws UnknownHostException {
+		if (isIp(host))
+			return Arrays.asList(InetAddress.getAllByName(host));
+
+		Entry entry = entries.get(host);
+		if (entry == null)
+			entry = load(host);
+		entry.lastUsed = System.currentTimeMillis();
+		return entry.addresses;
+	}
+
+	@Override
+	protected void doResolve(String inetHost, Promise<InetAddress> promise) throws Exception {
+		try {
+			promise.setSuccess(lookup(inetHost).get(0));
+		} catch (UnknownHostException e) {
+			promise.setFailure(e);
+		}
+	}
+
+	@Override
+	protected void doResolveAll(String inetHost, Promise<List<InetAddress>> promise) throws Exception {
+		try {
+			promise.setSuccess(lookup(inetHost));
+		} catch (UnknownHostException e) {
+			promise.setFailure(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		refresher.shutdownNow();
+	}
+}
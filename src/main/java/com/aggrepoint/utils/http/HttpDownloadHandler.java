@@ -0,0 +1,119 @@
+package com.aggrepoint.utils.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Response;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * 把响应内容逐块写入文件，不累积响应内容。下载完成后得到的Response没有内容，结果保存在getResult()中
+ * 
+ * @author jiangmingyang
+ */
+class HttpDownloadHandler extends AsyncCompletionHandler<Response> {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private String url;
+	private File file;
+	private File partFile;
+	private MessageDigest digest;
+	private FileChannel channel;
+	private HttpDownloadTask.Result result = new HttpDownloadTask.Result();
+
+	HttpDownloadHandler(String url, File file, File partFile, long offset, MessageDigest digest) {
+		this.url = url;
+		this.file = file;
+		this.partFile = partFile;
+		this.digest = digest;
+		result.file = file;
+		result.offset = offset;
+	}
+
+	HttpDownloadTask.Result getResult() {
+		return result;
+	}
+
+	@Override
+	public State onStatusReceived(HttpResponseStatus status) throws Exception {
+		result.statusCode = status.getStatusCode();
+
+		if (result.statusCode == 416 && result.offset > 0) // 已经下载完毕
+			return super.onStatusReceived(status);
+
+		if (result.statusCode < 200 || result.statusCode >= 300)
+			throw new IOException(url + " 下载失败，HTTP状态: " + result.statusCode);
+
+		if (result.statusCode != 206 && result.offset > 0) { // 服务器不支持Range，从头下载
+			result.offset = 0;
+			if (digest != null)
+				digest.reset();
+		}
+
+		channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.truncate(result.offset);
+		channel.position(result.offset);
+		return super.onStatusReceived(status);
+	}
+
+	@Override
+	public State onHeadersReceived(HttpHeaders headers) throws Exception {
+		result.contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+		return super.onHeadersReceived(headers);
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart content) throws Exception {
+		if (channel == null)
+			return State.CONTINUE;
+
+		// 不调用super，不在内存中累积响应内容
+		ByteBuffer buf = content.getBodyByteBuffer();
+		if (digest != null)
+			digest.update(buf.duplicate());
+		while (buf.hasRemaining())
+			channel.write(buf);
+		return State.CONTINUE;
+	}
+
+	@Override
+	public Response onCompleted(Response response) throws Exception {
+		if (channel != null)
+			channel.close();
+
+		Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		result.size = file.length();
+
+		if (digest != null) {
+			byte[] bytes = digest.digest();
+			char[] chars = new char[bytes.length * 2];
+			for (int i = 0; i < bytes.length; i++) {
+				chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+				chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+			}
+			result.checksum = new String(chars);
+		}
+
+		return response;
+	}
+
+	@Override
+	public void onThrowable(Throwable t) {
+		if (channel != null)
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+	}
+}
@@ -0,0 +1,187 @@
+package com.aggrepoint.utils.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.util.HttpConstants;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+/**
+ * <pre>
+ * 把响应内容直接写入文件的HttpTask。响应内容在接收过程中逐块写入FileChannel，不在内存中缓存，
+ * 可以用于下载很大的文件。可以像普通HttpTask一样交给HttpChannel、HttpThrottling或HttpRepeat执行。
+ * HttpThrottling暂存下载任务时，目标文件和done回调只保留在内存中，重启前暂存的下载任务在重启后被丢弃
+ * 
+ * 下载过程中写入“文件名.part”，完成后改名为目标文件。设置了resume时，如果.part文件已经存在，
+ * 用Range请求从断点继续下载；服务器不支持Range时从头下载
+ * 
+ * 设置了checksum算法时，在接收过程中计算校验和。从断点继续下载时，发起请求前要先读取已下载部分计算校验和
+ * 
+ * 下载完成后回调done，只传递文件路径和元数据
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpDownloadTask extends HttpTask {
+	/** 下载结果 */
+	public static class Result {
+		File file;
+		/** 文件总字节数 */
+		long size;
+		/** 从断点继续下载时的起始位置，从头下载时为0 */
+		long offset;
+		/** 校验和，十六进制。没有设置checksum算法时为空 */
+		String checksum;
+		int statusCode;
+		String contentType;
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public String getChecksum() {
+			return checksum;
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+	}
+
+	private String url;
+	private File file;
+	private BiConsumer<Result, Exception> done;
+	/** 是否从断点继续下载 */
+	private boolean resume;
+	/** 校验和算法，例如MD5、SHA-256 */
+	private String checksum;
+	/** 请求超时，默认不限制，只受读超时控制 */
+	private int requestTimeout = -1;
+
+	public HttpDownloadTask(String url, File file, BiConsumer<Result, Exception> done) {
+		super(url);
+		this.url = url;
+		this.file = file;
+		this.done = done;
+	}
+
+	public HttpDownloadTask setResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+	/**
+	 * @param algorithm MessageDigest算法名称，例如MD5、SHA-256
+	 */
+	public HttpDownloadTask setChecksum(String algorithm) throws NoSuchAlgorithmException {
+		MessageDigest.getInstance(algorithm);
+		this.checksum = algorithm;
+		return this;
+	}
+
+	/**
+	 * @param requestTimeout 整个下载的超时时间，-1表示不限制
+	 */
+	public HttpDownloadTask setRequestTimeout(int requestTimeout) {
+		this.requestTimeout = requestTimeout;
+		return this;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public BiConsumer<Result, Exception> getDone() {
+		return done;
+	}
+
+	/**
+	 * 下载任务没有process，失败时回调done
+	 */
+	@Override
+	void fail(Exception e, Executor defaultExec) {
+		BiConsumer<Result, Exception> done = this.done;
+		if (done == null)
+			return;
+
+		Executor executor = getExecutor() == null ? defaultExec : getExecutor();
+		if (executor == null)
+			done.accept(null, e);
+		else
+			executor.execute(() -> done.accept(null, e));
+	}
+
+	File getPartFile() {
+		return new File(file.getPath() + ".part");
+	}
+
+	@Override
+	public Request getRequest() throws Exception {
+		RequestBuilder builder = new RequestBuilder(HttpConstants.Methods.GET).setUrl(url)
+				.setRequestTimeout(requestTimeout);
+
+		long offset = resume ? getPartFile().length() : 0;
+		if (offset > 0)
+			builder.setHeader(HttpHeaderNames.RANGE, "bytes=" + offset + "-");
+
+		return builder.build();
+	}
+
+	/**
+	 * 为一次请求建立处理响应的handler
+	 */
+	HttpDownloadHandler newHandler(Request request) throws IOException, NoSuchAlgorithmException {
+		long offset = 0;
+		String range = request.getHeaders().get(HttpHeaderNames.RANGE);
+		if (range != null)
+			offset = Long.parseLong(range.substring("bytes=".length(), range.length() - 1));
+
+		MessageDigest digest = null;
+		if (checksum != null) {
+			digest = MessageDigest.getInstance(checksum);
+
+			// { 计算已下载部分的校验和
+			if (offset > 0)
+				try (FileChannel fc = FileChannel.open(getPartFile().toPath(), StandardOpenOption.READ)) {
+					ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+					long remaining = offset;
+					while (remaining > 0) {
+						buf.clear();
+						if (remaining < buf.capacity())
+							buf.limit((int) remaining);
+						int n = fc.read(buf);
+						if (n < 0)
+							break;
+						buf.flip();
+						digest.update(buf);
+						remaining -= n;
+					}
+				}
+			// }
+		}
+
+		return new HttpDownloadHandler(request.getUrl(), file, getPartFile(), offset, digest);
+	}
+}
@@ -0,0 +1,147 @@
+package com.aggrepoint.utils.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 记录数值分布的直方图，用于统计延迟和大小。桶的划分与HdrHistogram相同：小于64的值精确记录，
+ * 更大的值在每个2的幂区间内再分为32个桶，相对误差不超过1/32
+ * 
+ * 记录数值时不分配对象，可以在多个线程中同时记录
+ * 
+ * snapshot()返回累计的分布，intervalSnapshot()返回上次调用intervalSnapshot()以来的分布，用于定期采集
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpHistogram {
+	/** 每个2的幂区间划分的桶数为2^(SUB_BITS-1) */
+	static final int SUB_BITS = 6;
+	static final int SUB_COUNT = 1 << SUB_BITS;
+	static final int HALF_COUNT = SUB_COUNT / 2;
+	static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private LongAdder sum = new LongAdder();
+	/** 上次intervalSnapshot()时的累计值 */
+	private Snapshot last = new Snapshot(new long[BUCKETS], 0);
+
+	static int index(long value) {
+		if (value < SUB_COUNT)
+			return value < 0 ? 0 : (int) value;
+
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BITS + 1;
+		return SUB_COUNT + (msb - SUB_BITS) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+	}
+
+	/** 桶中的最小值 */
+	static long lowest(int index) {
+		if (index < SUB_COUNT)
+			return index;
+
+		int msb = (index - SUB_COUNT) / HALF_COUNT + SUB_BITS;
+		long top = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+		return top << (msb - SUB_BITS + 1);
+	}
+
+	/** 桶中的最大值 */
+	static long highest(int index) {
+		return index + 1 < BUCKETS ? lowest(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+	public void record(long value) {
+		counts.incrementAndGet(index(value));
+		sum.add(value);
+	}
+
+	/**
+	 * 累计的分布
+	 */
+	public Snapshot snapshot() {
+		long[] c = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			c[i] = counts.get(i);
+		return new Snapshot(c, sum.sum());
+	}
+
+	/**
+	 * 上次调用以来的分布
+	 */
+	public synchronized Snapshot intervalSnapshot() {
+		Snapshot total = snapshot();
+		long[] c = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			c[i] = total.counts[i] - last.counts[i];
+		Snapshot delta = new Snapshot(c, total.sum - last.sum);
+		last = total;
+		return delta;
+	}
+
+	/**
+	 * 某一时刻的分布。最小值、最大值和百分位数都是所在桶的上限，误差与桶的精度相同
+	 */
+	public static class Snapshot {
+		long[] counts;
+		long count;
+		long sum;
+
+		Snapshot(long[] counts, long sum) {
+			this.counts = counts;
+			this.sum = sum;
+			for (long c : counts)
+				count += c;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		public long getMin() {
+			for (int i = 0; i < counts.length; i++)
+				if (counts[i] > 0)
+					return highest(i);
+			return 0;
+		}
+
+		public long getMax() {
+			for (int i = counts.length - 1; i >= 0; i--)
+				if (counts[i] > 0)
+					return highest(i);
+			return 0;
+		}
+
+		/**
+		 * @param percentile 0到100之间
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0)
+				return 0;
+
+			long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target)
+					return highest(i);
+			}
+			return getMax();
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + " mean=" + String.format("%.1f", getMean()) + " p50=" + getPercentile(50)
+					+ " p90=" + getPercentile(90) + " p99=" + getPercentile(99) + " p999=" + getPercentile(99.9)
+					+ " max=" + getMax();
+		}
+	}
+}
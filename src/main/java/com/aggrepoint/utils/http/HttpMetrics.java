@@ -0,0 +1,164 @@
+package com.aggrepoint.utils.http;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 一个HttpChannel、Http2Channel或HttpThrottling的请求统计，时间单位为微秒
+ * 
+ * 		- queueWait：请求在HttpThrottling等待队列中的时间
+ * 		- dispatchDelay：请求到达队首后等待channel请求间隔的时间
+ * 		- firstByte：发出请求到收到响应状态行的时间
+ * 		- latency：发出请求到接收完响应的时间
+ * 		- bodySize：响应内容字节数
+ * 
+ * HttpThrottling只记录queueWait、dispatchDelay和被拒绝的请求数，其余由执行请求的channel记录
+ * 
+ * 通过snapshot()或intervalSnapshot()定期采集
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpMetrics {
+	/** 请求结果 */
+	public enum Outcome {
+		/** 2xx和3xx */
+		SUCCESS,
+		/** 4xx */
+		CLIENT_ERROR,
+		/** 5xx */
+		SERVER_ERROR,
+		TIMEOUT,
+		/** 连接失败、超出响应限制等 */
+		ERROR,
+		/** HttpThrottling等待队列已满 */
+		REJECTED
+	}
+
+	String name;
+	HttpHistogram queueWait = new HttpHistogram();
+	HttpHistogram dispatchDelay = new HttpHistogram();
+	HttpHistogram firstByte = new HttpHistogram();
+	HttpHistogram latency = new HttpHistogram();
+	HttpHistogram bodySize = new HttpHistogram();
+	LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+	/** 上次intervalSnapshot()时的结果计数 */
+	private long[] lastOutcomes = new long[outcomes.length];
+
+	public HttpMetrics(String name) {
+		this.name = name;
+		for (int i = 0; i < outcomes.length; i++)
+			outcomes[i] = new LongAdder();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	void outcome(Outcome outcome) {
+		outcomes[outcome.ordinal()].increment();
+	}
+
+	void outcome(int statusCode) {
+		outcome(statusCode >= 500 ? Outcome.SERVER_ERROR
+				: statusCode >= 400 ? Outcome.CLIENT_ERROR : Outcome.SUCCESS);
+	}
+
+	/** 请求失败，区分是否超时 */
+	void outcome(Throwable t) {
+		outcome(t instanceof TimeoutException ? Outcome.TIMEOUT : Outcome.ERROR);
+	}
+
+	static long micros(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000;
+	}
+
+	/**
+	 * 累计的统计
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[outcomes.length];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = outcomes[i].sum();
+		return new Snapshot(name, queueWait.snapshot(), dispatchDelay.snapshot(), firstByte.snapshot(),
+				latency.snapshot(), bodySize.snapshot(), counts);
+	}
+
+	/**
+	 * 上次调用以来的统计
+	 */
+	public synchronized Snapshot intervalSnapshot() {
+		long[] counts = new long[outcomes.length];
+		for (int i = 0; i < counts.length; i++) {
+			long total = outcomes[i].sum();
+			counts[i] = total - lastOutcomes[i];
+			lastOutcomes[i] = total;
+		}
+		return new Snapshot(name, queueWait.intervalSnapshot(), dispatchDelay.intervalSnapshot(),
+				firstByte.intervalSnapshot(), latency.intervalSnapshot(), bodySize.intervalSnapshot(), counts);
+	}
+
+	public static class Snapshot {
+		String name;
+		HttpHistogram.Snapshot queueWait;
+		HttpHistogram.Snapshot dispatchDelay;
+		HttpHistogram.Snapshot firstByte;
+		HttpHistogram.Snapshot latency;
+		HttpHistogram.Snapshot bodySize;
+		long[] outcomes;
+
+		Snapshot(String name, HttpHistogram.Snapshot queueWait, HttpHistogram.Snapshot dispatchDelay,
+				HttpHistogram.Snapshot firstByte, HttpHistogram.Snapshot latency, HttpHistogram.Snapshot bodySize,
+				long[] outcomes) {
+			this.name = name;
+			this.queueWait = queueWait;
+			this.dispatchDelay = dispatchDelay;
+			this.firstByte = firstByte;
+			this.latency = latency;
+			this.bodySize = bodySize;
+			this.outcomes = outcomes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public HttpHistogram.Snapshot getQueueWait() {
+			return queueWait;
+		}
+
+		public HttpHistogram.Snapshot getDispatchDelay() {
+			return dispatchDelay;
+		}
+
+		public HttpHistogram.Snapshot getFirstByte() {
+			return firstByte;
+		}
+
+		public HttpHistogram.Snapshot getLatency() {
+			return latency;
+		}
+
+		public HttpHistogram.Snapshot getBodySize() {
+			return bodySize;
+		}
+
+		public long getOutcome(Outcome outcome) {
+			return outcomes[outcome.ordinal()];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(name);
+			for (Outcome o : Outcome.values())
+				sb.append(' ').append(o.name().toLowerCase()).append('=').append(outcomes[o.ordinal()]);
+			if (queueWait.getCount() > 0)
+				sb.append("\n\tqueueWait ").append(queueWait).append("\n\tdispatchDelay ").append(dispatchDelay);
+			if (latency.getCount() > 0)
+				sb.append("\n\tfirstByte ").append(firstByte).append("\n\tlatency ").append(latency)
+						.append("\n\tbodySize ").append(bodySize);
+			return sb.toString();
+		}
+	}
+}
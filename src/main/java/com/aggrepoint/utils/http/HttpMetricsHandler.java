@@ -0,0 +1,67 @@
+package com.aggrepoint.utils.http;
+
+import org.asynchttpclient.AsyncCompletionHandlerBase;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.Response;
+
+import com.aggrepoint.utils.jfr.Jfr;
+
+/**
+ * 记录响应时间、响应大小和请求结果到HttpMetrics，并提交JFR事件。设置了recorder时录制请求和响应
+ * 
+ * @author jiangmingyang
+ */
+class HttpMetricsHandler extends AsyncCompletionHandlerBase {
+	private HttpMetrics metrics;
+	private Request request;
+	private long start = System.nanoTime();
+	private long firstByte;
+	private long received;
+	HttpRecorder recorder;
+
+	HttpMetricsHandler(HttpMetrics metrics, Request request) {
+		this.metrics = metrics;
+		this.request = request;
+	}
+
+	/** 已接收的响应内容字节数 */
+	long getReceived() {
+		return received;
+	}
+
+	@Override
+	public State onStatusReceived(HttpResponseStatus status) throws Exception {
+		firstByte = System.nanoTime();
+		metrics.firstByte.record((firstByte - start) / 1000);
+		return super.onStatusReceived(status);
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart content) throws Exception {
+		received += content.length();
+		return super.onBodyPartReceived(content);
+	}
+
+	@Override
+	public Response onCompleted(Response response) throws Exception {
+		metrics.latency.record(HttpMetrics.micros(start));
+		metrics.bodySize.record(received);
+		metrics.outcome(response.getStatusCode());
+		Jfr.httpRequest(request, response.getStatusCode(), received, start, firstByte, null);
+		if (recorder != null)
+			recorder.record(request, start, firstByte, response, null);
+		return super.onCompleted(response);
+	}
+
+	@Override
+	public void onThrowable(Throwable t) {
+		metrics.latency.record(HttpMetrics.micros(start));
+		metrics.outcome(t);
+		Jfr.httpRequest(request, 0, received, start, firstByte, t);
+		if (recorder != null)
+			recorder.record(request, start, firstByte, null, t);
+		super.onThrowable(t);
+	}
+}
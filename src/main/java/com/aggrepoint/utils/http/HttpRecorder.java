@@ -0,0 +1,304 @@
+package com.aggrepoint.utils.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.asynchttpclient.Request;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * <pre>
+ * 录制HttpChannel的请求和响应，通过HttpChannel.setRecorder()使用，录制的内容可以用HttpReplay回放
+ * 
+ * 请求线程只把请求和响应对象放入队列，由后台线程编码后写入目录下内存映射的段文件。
+ * 队列满时丢弃记录，不阻塞请求线程，丢弃的数量可以通过getDropped()查看
+ * 
+ * 每次创建HttpRecorder都从新的段文件开始写入，不覆盖目录中已有的记录
+ * 
+ * 记录格式：[int 长度][记录内容]，长度为0表示段结束。先写内容再写长度，写了一半的记录不会被读出
+ * 
+ * 记录内容：请求开始时间、收到响应状态行的时间、完成时间、请求（与HttpSpillLog格式相同）、
+ * 响应状态、响应header和响应内容；请求失败时保存异常类型和信息
+ * 
+ * HttpDownloadTask的请求不录制
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpRecorder implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(HttpRecorder.class);
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	static final String SEGMENT_SUFFIX = ".rec";
+	static final int RECORD_HEADER = 4;
+
+	/** 录制的一次请求 */
+	public static class Record {
+		long timestamp;
+		long firstByte;
+		long latency;
+		Request request;
+		int statusCode;
+		HttpHeaders headers;
+		byte[] body;
+		Throwable error;
+
+		/** 请求开始的时间，毫秒 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/** 发出请求到收到响应状态行的时间，微秒。没有收到响应时为0 */
+		public long getFirstByte() {
+			return firstByte;
+		}
+
+		/** 发出请求到接收完响应或失败的时间，微秒 */
+		public long getLatency() {
+			return latency;
+		}
+
+		public Request getRequest() {
+			return request;
+		}
+
+		/** 请求失败时为0 */
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		/** 请求失败的原因。超时为TimeoutException，其他为IOException */
+		public Throwable getError() {
+			return error;
+		}
+	}
+
+	private File dir;
+	private int segmentSize;
+	private long segment;
+	/** 只在写入线程中使用 */
+	private MappedByteBuffer buf;
+	private ThreadPoolExecutor writer;
+	private LongAdder dropped = new LongAdder();
+
+	/**
+	 * @param dir         段文件所在目录
+	 * @param segmentSize 每个段文件的大小。超过段大小的单条记录独占一个段
+	 * @param queueSize   等待写入的记录数上限
+	 */
+	public HttpRecorder(File dir, int segmentSize, int queueSize) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("无法创建目录" + dir);
+
+		long[] segments = listSegments(dir);
+		segment = segments.length == 0 ? 1 : segments[segments.length - 1] + 1;
+		buf = HttpSpillLog.map(segmentFile(dir, segment), segmentSize);
+
+		writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+			Thread t = new Thread(r, "HttpRecorder");
+			t.setDaemon(true);
+			return t;
+		}, (r, e) -> dropped.increment());
+	}
+
+	public HttpRecorder(File dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE, DEFAULT_QUEUE_SIZE);
+	}
+
+	private static File segmentFile(File dir, long seg) {
+		return new File(dir, String.format("%019d", seg) + SEGMENT_SUFFIX);
+	}
+
+	private static long[] listSegments(File dir) {
+		String[] names = dir.list((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+		long[] segments = new long[names == null ? 0 : names.length];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = Long.parseLong(names[i].substring(0, names[i].length() - SEGMENT_SUFFIX.length()));
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/** 因为队列已满或请求内容无法保存而丢弃的记录数 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * 录制一次请求，在请求完成的线程中调用
+	 * 
+	 * @param start     请求开始的System.nanoTime()
+	 * @param firstByte 收到响应状态行的System.nanoTime()，没有收到时为0
+	 * @param response  请求成功时的响应
+	 * @param error     请求失败的原因
+	 */
+	void record(Request request, long start, long firstByte, Response response, Throwable error) {
+		long now = System.nanoTime();
+		long timestamp = System.currentTimeMillis() - (now - start) / 1000000;
+		long firstByteMicros = firstByte == 0 ? 0 : (firstByte - start) / 1000;
+		long latency = (now - start) / 1000;
+		writer.execute(() -> write(timestamp, firstByteMicros, latency, request, response, error));
+	}
+
+	private void write(long timestamp, long firstByte, long latency, Request request, Response response,
+			Throwable error) {
+		byte[] bytes;
+		try {
+			bytes = encode(timestamp, firstByte, latency, request, response, error);
+		} catch (IOException e) {
+			logger.debug("无法录制请求", e);
+			dropped.increment();
+			return;
+		}
+
+		try {
+			if (buf.remaining() < RECORD_HEADER * 2 + bytes.length) { // 当前段空间不足，开始新的段
+				buf.putInt(buf.position(), 0);
+				segment++;
+				buf = HttpSpillLog.map(segmentFile(dir, segment),
+						Math.max(segmentSize, RECORD_HEADER * 2 + bytes.length));
+			}
+		} catch (IOException e) {
+			logger.error("创建录制段文件失败", e);
+			dropped.increment();
+			return;
+		}
+
+		int pos = buf.position();
+		buf.position(pos + RECORD_HEADER);
+		buf.put(bytes);
+		buf.putInt(pos, bytes.length);
+	}
+
+	static byte[] encode(long timestamp, long firstByte, long latency, Request request, Response response,
+			Throwable error) throws IOException {
+		byte[] req = HttpSpillLog.encode(request, null);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(req.length + 512);
+		DataOutputStream out = new DataOutputStream(bos);
+
+		out.writeLong(timestamp);
+		out.writeLong(firstByte);
+		out.writeLong(latency);
+		out.writeInt(req.length);
+		out.write(req);
+
+		if (response != null) {
+			out.writeInt(response.getStatusCode());
+			out.writeInt(response.getHeaders().size());
+			for (Map.Entry<String, String> header : response.getHeaders()) {
+				out.writeUTF(header.getKey());
+				out.writeUTF(header.getValue());
+			}
+			byte[] body = response.getResponseBodyAsBytes();
+			out.writeInt(body.length);
+			out.write(body);
+		} else {
+			out.writeInt(0);
+			out.writeBoolean(error instanceof TimeoutException);
+			out.writeUTF(String.valueOf(error == null ? null : error.getMessage()));
+		}
+
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	static Record decode(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+		Record record = new Record();
+		record.timestamp = in.readLong();
+		record.firstByte = in.readLong();
+		record.latency = in.readLong();
+
+		byte[] req = new byte[in.readInt()];
+		in.readFully(req);
+		HttpSpillLog.Entry entry = new HttpSpillLog.Entry();
+		HttpSpillLog.decode(req, entry);
+		record.request = entry.request;
+
+		record.statusCode = in.readInt();
+		if (record.statusCode > 0) {
+			record.headers = new DefaultHttpHeaders(false);
+			for (int i = in.readInt(); i > 0; i--)
+				record.headers.add(in.readUTF(), in.readUTF());
+			record.body = new byte[in.readInt()];
+			in.readFully(record.body);
+		} else {
+			boolean timeout = in.readBoolean();
+			String message = in.readUTF();
+			record.error = timeout ? new TimeoutException(message) : new IOException(message);
+		}
+		return record;
+	}
+
+	/**
+	 * 按写入顺序读出目录中录制的所有请求
+	 */
+	public static List<Record> read(File dir) throws IOException {
+		List<Record> records = new ArrayList<>();
+		for (long seg : listSegments(dir)) {
+			MappedByteBuffer buf = HttpSpillLog.map(segmentFile(dir, seg), 0);
+			int pos = 0;
+			while (pos + RECORD_HEADER <= buf.capacity()) {
+				int len = buf.getInt(pos);
+				if (len <= 0 || pos + RECORD_HEADER + len > buf.capacity())
+					break;
+
+				byte[] bytes = new byte[len];
+				buf.position(pos + RECORD_HEADER);
+				buf.get(bytes);
+				records.add(decode(bytes));
+				pos += RECORD_HEADER + len;
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * 写完队列中的记录后关闭
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(10, TimeUnit.SECONDS))
+				logger.warn("{} 仍有{}条记录未写入", dir, writer.getQueue().size());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		buf.force();
+	}
+}
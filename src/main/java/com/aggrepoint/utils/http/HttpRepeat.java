@@ -3,6 +3,8 @@ package com.aggrepoint.utils.http;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.aggrepoint.utils.thread.VirtualThreads;
+
 /**
  * <pre>
  * 基于HttpThrottling或HttpChannel不断重复执行请求任务
@@ -39,7 +41,7 @@ public class HttpRepeat {
 		if (repeatTask == null) // 清空要执行的任务，停止
 			repeateTaskThread = null;
 		else if (repeateTaskThread == null) {
-			repeateTaskThread = new Thread(() -> {
+			repeateTaskThread = VirtualThreads.newThread(HttpRepeat.class.getName(), () -> {
 				while (Thread.currentThread() == repeateTaskThread) {
 					long time = System.currentTimeMillis();
 					List<ResponseFuture> list = null;
@@ -0,0 +1,205 @@
+package com.aggrepoint.utils.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.asynchttpclient.netty.NettyResponse;
+import org.asynchttpclient.uri.Uri;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aggrepoint.utils.http.Http2Channel.Http2ResponseFuture;
+
+import io.netty.buffer.Unpooled;
+
+/**
+ * <pre>
+ * 回放HttpRecorder录制的响应，不访问网络。用于在测试环境中按生产环境的请求组合对HttpThrottling、HttpRepeat
+ * 等进行可重复的压力测试
+ * 
+ * 请求按method和url匹配录制的响应，同一个请求录制了多次时按录制顺序循环返回。没有录制过的请求以IOException失败
+ * 
+ * 响应按录制时的延迟乘以latencyScale返回，latencyScale为0时立即返回
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpReplay implements HttpRequester {
+	private static final Logger logger = LoggerFactory.getLogger(HttpReplay.class);
+
+	/** 同一个请求录制的所有响应 */
+	static class Recorded {
+		List<HttpRecorder.Record> records = new ArrayList<>();
+		AtomicInteger next = new AtomicInteger();
+
+		HttpRecorder.Record next() {
+			return records.get((next.getAndIncrement() & Integer.MAX_VALUE) % records.size());
+		}
+	}
+
+	Executor exec;
+	Map<String, Recorded> recorded = new HashMap<>();
+	double latencyScale = 1;
+	HttpMetrics metrics = new HttpMetrics("HttpReplay");
+	private ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "HttpReplay");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * @param exec    用于执行处理HTTP响应的逻辑。如果HttpTask中带有Executor，则用HttpTask中的Executor
+	 * @param records 录制的请求
+	 */
+	public HttpReplay(Executor exec, List<HttpRecorder.Record> records) {
+		this.exec = exec;
+		for (HttpRecorder.Record record : records)
+			recorded.computeIfAbsent(key(record.request), k -> new Recorded()).records.add(record);
+	}
+
+	/**
+	 * @param dir HttpRecorder录制的目录
+	 */
+	public HttpReplay(Executor exec, File dir) throws IOException {
+		this(exec, HttpRecorder.read(dir));
+	}
+
+	private static String key(Request request) {
+		return request.getMethod() + " " + request.getUrl();
+	}
+
+	/**
+	 * 响应延迟相对录制时的倍数，默认为1
+	 */
+	public HttpReplay setLatencyScale(double latencyScale) {
+		this.latencyScale = latencyScale;
+		return this;
+	}
+
+	/** 请求统计 */
+	public HttpMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public ResponseFuture request(HttpTask task) {
+		Request request = null;
+		try {
+			request = task.getRequest();
+		} catch (Exception e) {
+			logger.error("获取请求对象异常", e);
+			return null;
+		}
+
+		Http2ResponseFuture future = new Http2ResponseFuture();
+		future.addListener(() -> {
+			try {
+				if (task.getProcess() != null)
+					task.getProcess().accept(future.get().getResponseBody(), null);
+			} catch (InterruptedException | ExecutionException e) {
+				if (task.getProcess() != null)
+					task.getProcess().accept(null, e);
+			}
+		}, task.getExecutor() == null ? exec : task.getExecutor());
+
+		long start = System.nanoTime();
+		Recorded r = recorded.get(key(request));
+		if (r == null) {
+			metrics.outcome(HttpMetrics.Outcome.ERROR);
+			future.abort(new IOException(request.getUrl() + " 没有录制的响应"));
+			return new ResponseFuture(future);
+		}
+
+		HttpRecorder.Record record = r.next();
+		Uri uri = request.getUri();
+		long delay = (long) (record.latency * latencyScale);
+		if (delay <= 0)
+			complete(future, uri, record, start);
+		else
+			timer.schedule(() -> complete(future, uri, record, start), delay, TimeUnit.MICROSECONDS);
+
+		return new ResponseFuture(future);
+	}
+
+	private void complete(Http2ResponseFuture future, Uri uri, HttpRecorder.Record record, long start) {
+		metrics.latency.record(HttpMetrics.micros(start));
+
+		if (record.error != null) {
+			metrics.outcome(record.error);
+			future.abort(record.error);
+			return;
+		}
+
+		metrics.firstByte.record((long) (record.firstByte * latencyScale));
+		metrics.bodySize.record(record.body.length);
+		metrics.outcome(record.statusCode);
+
+		List<HttpResponseBodyPart> parts = new ArrayList<>(1);
+		parts.add(new EagerResponseBodyPart(Unpooled.wrappedBuffer(record.body), true));
+		future.complete(new NettyResponse(new ReplayStatus(uri, record.statusCode), record.headers, parts));
+	}
+
+	static class ReplayStatus extends HttpResponseStatus {
+		int code;
+
+		ReplayStatus(Uri uri, int code) {
+			super(uri);
+			this.code = code;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return code;
+		}
+
+		@Override
+		public String getStatusText() {
+			return io.netty.handler.codec.http.HttpResponseStatus.valueOf(code).reasonPhrase();
+		}
+
+		@Override
+		public String getProtocolName() {
+			return "HTTP";
+		}
+
+		@Override
+		public int getProtocolMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getProtocolMinorVersion() {
+			return 1;
+		}
+
+		@Override
+		public String getProtocolText() {
+			return "HTTP/1.1";
+		}
+
+		@Override
+		public SocketAddress getRemoteAddress() {
+			return null;
+		}
+
+		@Override
+		public SocketAddress getLocalAddress() {
+			return null;
+		}
+	}
+}
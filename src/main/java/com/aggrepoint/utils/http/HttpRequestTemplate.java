@@ -0,0 +1,222 @@
+package com.aggrepoint.utils.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.asynchttpclient.DefaultRequest;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.uri.Uri;
+import org.asynchttpclient.util.Utf8UrlEncoder;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * <pre>
+ * 预先解析好的请求模板。url和body中用{name}表示参数，例如
+ * 
+ * 		new HttpRequestTemplate("GET", "https://api.x.com/v1/depth?symbol={symbol}&limit={limit}")
+ * 
+ * url、参数位置和固定header只解析一次，每次请求只需要把参数值填入线程内复用的缓冲区，
+ * 不经过RequestBuilder的url解析、header校验和query参数重新编码
+ * 
+ * url路径中的参数按路径规则编码，query中的参数按query规则编码，body中的参数不编码
+ * 
+ * 模板在第一次生成请求后不能再修改
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpRequestTemplate {
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	/** 编码方式 */
+	static final int RAW = 0;
+	static final int PATH = 1;
+	static final int QUERY = 2;
+
+	/** 一段解析好的模板：固定文本和参数交替出现 */
+	static class Compiled {
+		/** 固定文本，比params多一个 */
+		String[] literals;
+		/** 参数序号 */
+		int[] params;
+		/** 参数的编码方式 */
+		int[] encodings;
+
+		String apply(StringBuilder sb, Object[] values) {
+			sb.setLength(0);
+			sb.append(literals[0]);
+			for (int i = 0; i < params.length; i++) {
+				String value = String.valueOf(values[params[i]]);
+				switch (encodings[i]) {
+				case PATH:
+					sb.append(Utf8UrlEncoder.encodePath(value));
+					break;
+				case QUERY:
+					Utf8UrlEncoder.encodeAndAppendQueryElement(sb, value);
+					break;
+				default:
+					sb.append(value);
+				}
+				sb.append(literals[i + 1]);
+			}
+			return sb.toString();
+		}
+	}
+
+	private String method;
+	private Uri base;
+	private HttpHeaders headers = new DefaultHttpHeaders();
+	private String bodyTemplate;
+
+	/** 参数名称，按第一次出现的顺序排列 */
+	private List<String> names = new ArrayList<>();
+	private Compiled path;
+	private Compiled query;
+	private Compiled body;
+
+	/** 第一次生成请求时建立，提供超时、字符集、域名解析等默认设置 */
+	private volatile Request prototype;
+
+	public HttpRequestTemplate(String method, String url) {
+		this.method = method;
+
+		// { 分离固定的scheme/host/port和带参数的path/query
+		int start = url.indexOf("://");
+		int pathStart = url.indexOf('/', start < 0 ? 0 : start + 3);
+		String hostPart = pathStart < 0 ? url : url.substring(0, pathStart);
+		if (hostPart.indexOf('{') >= 0)
+			throw new IllegalArgumentException("不支持在主机名中使用参数: " + url);
+		base = Uri.create(hostPart);
+
+		String pathAndQuery = pathStart < 0 ? "/" : url.substring(pathStart);
+		int q = pathAndQuery.indexOf('?');
+		path = compile(q < 0 ? pathAndQuery : pathAndQuery.substring(0, q), PATH);
+		query = q < 0 ? null : compile(pathAndQuery.substring(q + 1), QUERY);
+		// }
+	}
+
+	/**
+	 * 固定文本与RequestBuilder一样编码，只在解析模板时编码一次
+	 */
+	private static String encodeLiteral(String literal, int encoding) {
+		switch (encoding) {
+		case PATH:
+			return Utf8UrlEncoder.encodePath(literal);
+		case QUERY:
+			return Utf8UrlEncoder.encodeAndAppendQuery(new StringBuilder(), literal).toString();
+		default:
+			return literal;
+		}
+	}
+
+	/**
+	 * 解析模板，记录每个参数的位置和编码方式
+	 */
+	private Compiled compile(String template, int encoding) {
+		List<String> literals = new ArrayList<>();
+		List<Integer> params = new ArrayList<>();
+
+		int pos = 0;
+		while (true) {
+			int open = template.indexOf('{', pos);
+			int close = open < 0 ? -1 : template.indexOf('}', open);
+			if (close < 0) {
+				literals.add(encodeLiteral(template.substring(pos), encoding));
+				break;
+			}
+
+			literals.add(encodeLiteral(template.substring(pos, open), encoding));
+			String name = template.substring(open + 1, close);
+			int idx = names.indexOf(name);
+			if (idx < 0) {
+				idx = names.size();
+				names.add(name);
+			}
+			params.add(idx);
+			pos = close + 1;
+		}
+
+		Compiled c = new Compiled();
+		c.literals = literals.toArray(new String[literals.size()]);
+		c.params = new int[params.size()];
+		c.encodings = new int[params.size()];
+		for (int i = 0; i < c.params.length; i++) {
+			c.params[i] = params.get(i);
+			c.encodings[i] = encoding;
+		}
+		return c;
+	}
+
+	private void checkModifiable() {
+		if (prototype != null)
+			throw new IllegalStateException("模板已经开始使用，不能再修改");
+	}
+
+	public HttpRequestTemplate addHeader(String name, String value) {
+		checkModifiable();
+		headers.add(name, value);
+		return this;
+	}
+
+	/**
+	 * 设置body模板，body中的参数原样替换，不做编码
+	 */
+	public HttpRequestTemplate setBody(String template) {
+		checkModifiable();
+		bodyTemplate = template;
+		body = template == null ? null : compile(template, RAW);
+		return this;
+	}
+
+	/** 参数名称，request()的参数按这个顺序传入 */
+	public List<String> getParamNames() {
+		return Collections.unmodifiableList(names);
+	}
+
+	private Request prototype() {
+		Request p = prototype;
+		if (p == null)
+			synchronized (this) {
+				if (prototype == null)
+					prototype = new RequestBuilder(method).setUri(base).setHeaders(headers).setBody(bodyTemplate)
+							.build();
+				p = prototype;
+			}
+		return p;
+	}
+
+	/**
+	 * 生成请求
+	 * 
+	 * @param values 参数值，按getParamNames()的顺序
+	 */
+	public Request request(Object... values) {
+		if (values.length != names.size())
+			throw new IllegalArgumentException("需要" + names.size() + "个参数，实际为" + values.length);
+
+		Request p = prototype();
+		StringBuilder sb = BUFFER.get();
+
+		Uri uri = new Uri(base.getScheme(), base.getUserInfo(), base.getHost(), base.getPort(), path.apply(sb, values),
+				query == null ? null : query.apply(sb, values), null);
+
+		// AHC处理重定向时会修改请求头，因此每个请求复制一份。prototype中的请求头已经校验过，复制时不再校验
+		return new DefaultRequest(method, uri, null, null, new DefaultHttpHeaders(false).add(p.getHeaders()),
+				p.getCookies(), null, null, body == null ? null : body.apply(sb, values), null, null, null,
+				p.getFormParams(), p.getBodyParts(), null, null, null, null, null, p.getRequestTimeout(),
+				p.getReadTimeout(), p.getRangeOffset(), p.getCharset(), p.getChannelPoolPartitioning(),
+				p.getNameResolver());
+	}
+
+	/**
+	 * 生成使用这个模板的HttpTask
+	 */
+	public HttpTask task(BiConsumer<String, Exception> process, Object... values) {
+		return new HttpTask(request(values), process);
+	}
+}
@@ -6,7 +6,6 @@ import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 
 import org.asynchttpclient.RequestBuilder;
-import org.asynchttpclient.util.HttpConstants;
 
 /**
  * 执行HTTP请求
@@ -21,7 +20,7 @@ public interface HttpRequester {
 	}
 
 	default public ResponseFuture request(String method, String url, BiConsumer<String, Exception> process) {
-		return request(new HttpTask(new RequestBuilder(HttpConstants.Methods.POST).setUrl(url).build(), process));
+		return request(new HttpTask(new RequestBuilder(method).setUrl(url).build(), process));
 	}
 
 	default public ResponseFuture request(String url, BiConsumer<String, Exception> process, Executor exec) {
@@ -30,6 +29,14 @@ public interface HttpRequester {
 		return request(task);
 	}
 
+	/**
+	 * 用预先解析好的模板发起请求
+	 */
+	default public ResponseFuture request(HttpRequestTemplate template, BiConsumer<String, Exception> process,
+			Object... values) {
+		return request(template.task(process, values));
+	}
+
 	default public List<ResponseFuture> request(List<HttpTask> tasks) {
 		List<ResponseFuture> list = new ArrayList<>();
 		if (tasks == null || tasks.size() == 0)
@@ -0,0 +1,415 @@
+package com.aggrepoint.utils.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.asynchttpclient.Param;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+
+/**
+ * <pre>
+ * HttpThrottling等待队列满时用于暂存请求的磁盘日志
+ * 
+ * 日志由目录下一组内存映射的段文件组成，只追加写入，按写入顺序读出。读取位置保存在索引文件中，
+ * 重启后可以从上次读取的位置继续读出未执行的请求。段文件中的记录全部被读出后，段文件被删除。
+ * 
+ * 记录格式：[int 长度][long 序号][byte 标记][请求内容]，长度为0表示段结束。先写内容再写长度，
+ * 写了一半的记录不会被读出
+ * 
+ * 只保存请求的method、url、header、cookie、超时、virtualHost、body（字节、字符串或表单参数）和HttpTask的data
+ * （data必须可序列化）。带有绑定地址、认证信息、代理或其他类型body的请求不能暂存，append时抛出IOException
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class HttpSpillLog implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(HttpSpillLog.class);
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	static final String SEGMENT_SUFFIX = ".seg";
+	static final String INDEX_FILE = "spill.idx";
+	static final int RECORD_HEADER = 12;
+
+	static final byte BODY_NONE = 0;
+	static final byte BODY_BYTES = 1;
+	static final byte BODY_STRING = 2;
+	static final byte BODY_FORM = 3;
+
+	/** 从日志中读出的请求 */
+	public static class Entry {
+		long seq;
+		Request request;
+		Object data;
+		boolean memoryOnly;
+
+		public long getSeq() {
+			return seq;
+		}
+
+		public Request getRequest() {
+			return request;
+		}
+
+		public Object getData() {
+			return data;
+		}
+
+		/** 写入时标记为只在本次运行中有效 */
+		public boolean isMemoryOnly() {
+			return memoryOnly;
+		}
+	}
+
+	private File dir;
+	private int segmentSize;
+
+	/** 索引文件：[long 读取段号][int 段内读取位置] */
+	private MappedByteBuffer index;
+
+	private long writeSegment;
+	private MappedByteBuffer writeBuf;
+
+	private long readSegment;
+	/** 读取位置独立于写入位置，读写同一个段时是writeBuf的duplicate */
+	private ByteBuffer readBuf;
+
+	/** 下一条记录的序号 */
+	private long nextSeq;
+	/** 尚未读出的记录数 */
+	private long count;
+
+	/**
+	 * @param dir         段文件所在目录
+	 * @param segmentSize 每个段文件的大小。超过段大小的单条记录独占一个段
+	 * @param replay      true表示读出目录中上次运行遗留的请求，false表示清除遗留的请求
+	 */
+	public HttpSpillLog(File dir, int segmentSize, boolean replay) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("无法创建目录" + dir);
+
+		long[] segments = listSegments();
+		if (!replay) {
+			for (long seg : segments)
+				segmentFile(seg).delete();
+			new File(dir, INDEX_FILE).delete();
+			segments = new long[0];
+		}
+
+		index = map(new File(dir, INDEX_FILE), 12);
+
+		if (segments.length == 0) {
+			readSegment = writeSegment = 1;
+			writeBuf = map(segmentFile(writeSegment), segmentSize);
+			readBuf = writeBuf.duplicate();
+			saveIndex();
+			return;
+		}
+
+		// { 恢复读取位置
+		readSegment = index.getLong(0);
+		int readPos = index.getInt(8);
+		if (readSegment < segments[0]) {
+			readSegment = segments[0];
+			readPos = 0;
+		}
+		for (long seg : segments)
+			if (seg < readSegment)
+				segmentFile(seg).delete();
+		// }
+
+		// { 统计未读出的记录，恢复写入位置和序号
+		writeSegment = segments[segments.length - 1];
+		for (long seg : segments) {
+			if (seg < readSegment)
+				continue;
+
+			MappedByteBuffer buf = map(segmentFile(seg), 0);
+			int pos = seg == readSegment ? readPos : 0;
+			while (pos + RECORD_HEADER <= buf.capacity()) {
+				int len = buf.getInt(pos);
+				if (len <= 0)
+					break;
+				nextSeq = buf.getLong(pos + 4) + 1;
+				pos += RECORD_HEADER + len;
+				count++;
+			}
+
+			if (seg == readSegment) {
+				readBuf = buf.duplicate();
+				readBuf.position(readPos);
+			}
+			if (seg == writeSegment) {
+				writeBuf = buf;
+				writeBuf.position(pos);
+			}
+		}
+		// }
+
+		if (count > 0)
+			logger.info("{} 中有{}个请求等待重新执行", dir, count);
+	}
+
+	public HttpSpillLog(File dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE, true);
+	}
+
+	private File segmentFile(long seg) {
+		return new File(dir, String.format("%019d", seg) + SEGMENT_SUFFIX);
+	}
+
+	private long[] listSegments() {
+		String[] names = dir.list((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+		long[] segments = new long[names == null ? 0 : names.length];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = Long.parseLong(names[i].substring(0, names[i].length() - SEGMENT_SUFFIX.length()));
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * @param size 为0表示按文件现有大小映射
+	 */
+	static MappedByteBuffer map(File file, int size) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel fc = raf.getChannel()) {
+			return fc.map(FileChannel.MapMode.READ_WRITE, 0, size == 0 ? fc.size() : Math.max(size, fc.size()));
+		}
+	}
+
+	private void saveIndex() {
+		index.putLong(0, readSegment);
+		index.putInt(8, readBuf.position());
+	}
+
+	/**
+	 * 追加一个请求，返回请求的序号
+	 */
+	public long append(Request request, Object data) throws IOException {
+		return append(request, data, false);
+	}
+
+	/**
+	 * 追加一个请求，返回请求的序号
+	 * 
+	 * @param memoryOnly 请求依赖只存在于内存中的状态，例如HttpDownloadTask的目标文件和回调。重启后读出时标记为isMemoryOnly()
+	 */
+	public synchronized long append(Request request, Object data, boolean memoryOnly) throws IOException {
+		// 绑定地址、认证信息和代理不写入磁盘，宁可拒绝也不重建一个不同的请求
+		if (request.getLocalAddress() != null || request.getRealm() != null || request.getProxyServer() != null)
+			throw new IOException("不支持暂存带有绑定地址、认证信息或代理的请求: " + request.getUrl());
+
+		byte[] body = encode(request, data);
+		byte[] bytes = new byte[body.length + 1];
+		bytes[0] = memoryOnly ? (byte) 1 : 0;
+		System.arraycopy(body, 0, bytes, 1, body.length);
+
+		if (writeBuf.remaining() < RECORD_HEADER + bytes.length) { // 当前段空间不足，开始新的段
+			writeSegment++;
+			writeBuf = map(segmentFile(writeSegment), Math.max(segmentSize, RECORD_HEADER * 2 + bytes.length));
+		}
+
+		long seq = nextSeq++;
+		int pos = writeBuf.position();
+		writeBuf.putLong(pos + 4, seq);
+		writeBuf.position(pos + RECORD_HEADER);
+		writeBuf.put(bytes);
+		writeBuf.putInt(pos, bytes.length);
+		count++;
+		return seq;
+	}
+
+	/**
+	 * 读出最早写入的请求，没有请求时返回null
+	 */
+	public synchronized Entry poll() throws IOException {
+		while (true) {
+			int pos = readBuf.position();
+			int len = pos + RECORD_HEADER <= readBuf.capacity() ? readBuf.getInt(pos) : 0;
+
+			if (len > 0) {
+				Entry entry = new Entry();
+				entry.seq = readBuf.getLong(pos + 4);
+				byte[] bytes = new byte[len];
+				readBuf.position(pos + RECORD_HEADER);
+				readBuf.get(bytes);
+				count--;
+				saveIndex();
+				entry.memoryOnly = bytes[0] != 0;
+				decode(Arrays.copyOfRange(bytes, 1, bytes.length), entry);
+				return entry;
+			}
+
+			if (readSegment == writeSegment)
+				return null;
+
+			// { 当前段已读完，转到下一个段
+			segmentFile(readSegment).delete();
+			readSegment++;
+			readBuf = readSegment == writeSegment ? writeBuf.duplicate() : map(segmentFile(readSegment), 0);
+			readBuf.position(0);
+			saveIndex();
+			// }
+		}
+	}
+
+	/** 尚未读出的请求数量 */
+	public synchronized long size() {
+		return count;
+	}
+
+	public synchronized boolean isEmpty() {
+		return count == 0;
+	}
+
+	@Override
+	public synchronized void close() {
+		index.force();
+		writeBuf.force();
+	}
+
+	static byte[] encode(Request request, Object data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bos);
+
+		out.writeUTF(request.getMethod());
+		out.writeUTF(request.getUrl());
+
+		out.writeInt(request.getHeaders().size());
+		for (Map.Entry<String, String> header : request.getHeaders()) {
+			out.writeUTF(header.getKey());
+			out.writeUTF(header.getValue());
+		}
+
+		out.writeInt(request.getCookies().size());
+		for (Cookie cookie : request.getCookies()) {
+			out.writeUTF(cookie.name());
+			out.writeUTF(cookie.value());
+			out.writeBoolean(cookie.wrap());
+		}
+
+		out.writeInt(request.getRequestTimeout());
+		out.writeInt(request.getReadTimeout());
+		out.writeBoolean(request.getVirtualHost() != null);
+		if (request.getVirtualHost() != null)
+			out.writeUTF(request.getVirtualHost());
+		out.writeBoolean(request.getCharset() != null);
+		if (request.getCharset() != null)
+			out.writeUTF(request.getCharset().name());
+
+		if (request.getByteData() != null) {
+			out.writeByte(BODY_BYTES);
+			out.writeInt(request.getByteData().length);
+			out.write(request.getByteData());
+		} else if (request.getStringData() != null) {
+			// 按请求的字符集编码，与实际发送的字节一致
+			byte[] body = request.getStringData()
+					.getBytes(request.getCharset() == null ? StandardCharsets.UTF_8 : request.getCharset());
+			out.writeByte(BODY_STRING);
+			out.writeInt(body.length);
+			out.write(body);
+		} else if (request.getFormParams() != null && request.getFormParams().size() > 0) {
+			out.writeByte(BODY_FORM);
+			out.writeInt(request.getFormParams().size());
+			for (Param param : request.getFormParams()) {
+				out.writeUTF(param.getName());
+				out.writeUTF(param.getValue() == null ? "" : param.getValue());
+			}
+		} else if (request.getByteBufferData() != null || request.getCompositeByteData() != null
+				|| request.getStreamData() != null || request.getFile() != null
+				|| request.getBodyGenerator() != null || request.getBodyParts().size() > 0) {
+			throw new IOException("不支持暂存的请求内容类型: " + request.getUrl());
+		} else
+			out.writeByte(BODY_NONE);
+
+		if (data == null)
+			out.writeBoolean(false);
+		else if (data instanceof Serializable) {
+			out.writeBoolean(true);
+			out.flush();
+			ObjectOutputStream oos = new ObjectOutputStream(bos);
+			oos.writeObject(data);
+			oos.flush();
+		} else
+			throw new IOException("HttpTask的data不可序列化: " + data.getClass().getName());
+
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	static void decode(byte[] bytes, Entry entry) throws IOException {
+		ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+		DataInputStream in = new DataInputStream(bis);
+
+		RequestBuilder builder = new RequestBuilder(in.readUTF()).setUrl(in.readUTF());
+
+		for (int i = in.readInt(); i > 0; i--)
+			builder.addHeader(in.readUTF(), in.readUTF());
+
+		for (int i = in.readInt(); i > 0; i--) {
+			Cookie cookie = new DefaultCookie(in.readUTF(), in.readUTF());
+			cookie.setWrap(in.readBoolean());
+			builder.addCookie(cookie);
+		}
+
+		builder.setRequestTimeout(in.readInt());
+		builder.setReadTimeout(in.readInt());
+		if (in.readBoolean())
+			builder.setVirtualHost(in.readUTF());
+		Charset charset = in.readBoolean() ? Charset.forName(in.readUTF()) : null;
+		if (charset != null)
+			builder.setCharset(charset);
+
+		switch (in.readByte()) {
+		case BODY_BYTES: {
+			byte[] body = new byte[in.readInt()];
+			in.readFully(body);
+			builder.setBody(body);
+			break;
+		}
+		case BODY_STRING: {
+			byte[] body = new byte[in.readInt()];
+			in.readFully(body);
+			builder.setBody(new String(body, charset == null ? StandardCharsets.UTF_8 : charset));
+			break;
+		}
+		case BODY_FORM:
+			for (int i = in.readInt(); i > 0; i--)
+				builder.addFormParam(in.readUTF(), in.readUTF());
+			break;
+		default:
+		}
+		entry.request = builder.build();
+
+		if (in.readBoolean())
+			try (ObjectInputStream ois = new ObjectInputStream(bis)) {
+				entry.data = ois.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+	}
+}
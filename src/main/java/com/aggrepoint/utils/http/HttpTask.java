@@ -1,5 +1,7 @@
 package com.aggrepoint.utils.http;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 
@@ -15,6 +17,10 @@ public class HttpTask {
 	private Request request;
 	private BiConsumer<String, Exception> process;
 	private Object data;
+	/** 允许的最大响应内容字节数，为空则使用HttpChannel的设置 */
+	private Long maxBodySize;
+	/** 允许的响应内容类型，为空则使用HttpChannel的设置 */
+	private List<String> contentTypes;
 
 	/**
 	 * @param url         仅用于日志打印，不用于请求
@@ -47,6 +53,14 @@ public class HttpTask {
 		return request;
 	}
 
+	/**
+	 * 替换请求对象。HttpThrottling暂存请求时用null释放内存，取回时放回从磁盘重建的请求
+	 */
+	void setRequest(Request request) {
+		this.requestSupplier = null;
+		this.request = request;
+	}
+
 	public BiConsumer<String, Exception> getProcess() {
 		return process;
 	}
@@ -64,6 +78,21 @@ public class HttpTask {
 		this.data = data;
 	}
 
+	/**
+	 * 请求没有执行就失败时回调process。设置了Executor时在其中执行，否则在defaultExec中执行，两者都为空时在当前线程执行
+	 */
+	void fail(Exception e, Executor defaultExec) {
+		BiConsumer<String, Exception> process = this.process;
+		if (process == null)
+			return;
+
+		Executor executor = exec == null ? defaultExec : exec;
+		if (executor == null)
+			process.accept(null, e);
+		else
+			executor.execute(() -> process.accept(null, e));
+	}
+
 	public Executor getExecutor() {
 		return exec;
 	}
@@ -71,4 +100,28 @@ public class HttpTask {
 	public void setExecutor(Executor exec) {
 		this.exec = exec;
 	}
+
+	public Long getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	/**
+	 * @param maxBodySize 允许的最大响应内容字节数，超过时中断连接，process收到ResponseLimitException。小于等于0表示不限制
+	 */
+	public HttpTask setMaxBodySize(Long maxBodySize) {
+		this.maxBodySize = maxBodySize;
+		return this;
+	}
+
+	public List<String> getContentTypes() {
+		return contentTypes;
+	}
+
+	/**
+	 * @param contentTypes 允许的响应内容类型，例如application/json、text/*。不允许时中断连接，process收到ResponseLimitException
+	 */
+	public HttpTask setContentTypes(String... contentTypes) {
+		this.contentTypes = contentTypes == null ? null : Arrays.asList(contentTypes);
+		return this;
+	}
 }
@@ -1,49 +1,85 @@
 package com.aggrepoint.utils.http;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.asynchttpclient.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aggrepoint.utils.jfr.Jfr;
+import com.aggrepoint.utils.thread.VirtualThreads;
 
 /**
  * <pre>
  * 实现Http请求速度控制
  * 
- * 使用一组HttpChannel尽快发送Http请求，每个channel上的请求之间保持一定时间间隔
+ * 使用一组HttpChannel尽快发送Http请求，每个channel上的请求之间保持一定时间间隔。channel也可以是Http2Channel
  * 
  * 每个HttpThrottling内建立一个用于延时执行任务的线程
+ * 
+ * 设置了HttpSpillLog后，等待队列满时请求被暂存到磁盘，队列有空位时再按先后顺序取回执行，
+ * 暂存的请求数量超过maxSpilled时才拒绝请求。由SupplierX构建请求的HttpTask，在暂存时就构建请求。
+ * 暂存的HttpDownloadTask在取回后照常下载，但重启前暂存的下载任务在重启后被丢弃
  * </pre>
  * 
  * @author jiangmingyang
  */
 public class HttpThrottling implements HttpRequester {
+	private static final Logger logger = LoggerFactory.getLogger(HttpThrottling.class);
+
 	/** 等待运行的请求队列 */
 	private ArrayBlockingQueue<Waiting> waitingQueue;
 
+	/** 等待队列满时用于暂存请求 */
+	private volatile HttpSpillLog spillLog;
+	/** 默认最多允许暂存的请求数量。每个暂存的请求在内存中保留HttpTask和ResponseFuture */
+	public static final long DEFAULT_MAX_SPILLED = 100000;
+
+	/** 最多允许暂存的请求数量 */
+	private long maxSpilled = DEFAULT_MAX_SPILLED;
+	/** 用于为重启前暂存的请求重新建立回调，参数为HttpTask的data */
+	private Function<Object, BiConsumer<String, Exception>> spillProcess;
+	/** 暂存在磁盘中的请求的回调，不写入磁盘 */
+	private Map<Long, Waiting> spilled = new HashMap<>();
+	/** 记录排队时间和被拒绝的请求数 */
+	private HttpMetrics metrics = new HttpMetrics("HttpThrottling");
+
 	private static class Waiting {
 		HttpTask task;
 		ResponseFuture future;
+		/** 进入等待队列（或暂存）的时间 */
+		long enqueued = System.nanoTime();
 
 		public Waiting(HttpTask task) {
 			this.task = task;
 		}
 	}
 
-	public HttpThrottling(HttpChannel[] channels, int requestInterval, int maxWaiting) {
+	public HttpThrottling(HttpRequester[] channels, int requestInterval, int maxWaiting) {
 		long[] lastRequestTime = new long[channels.length];
 
 		waitingQueue = new ArrayBlockingQueue<>(maxWaiting);
 
 		// 请求线程
-		new Thread(() -> {
+		VirtualThreads.newThread(HttpThrottling.class.getName(), () -> {
 			while (true) {
+				unspill();
+
 				Waiting waiting = null;
 				try {
-					waiting = waitingQueue.poll(60, TimeUnit.SECONDS);
+					waiting = waitingQueue.poll(spillLog == null ? 60 : 1, TimeUnit.SECONDS);
 				} catch (InterruptedException e) {
 				}
 
 				if (waiting == null) {
 					continue;
 				}
+				long polled = System.nanoTime();
 
 				boolean run = false;
 
@@ -64,7 +100,10 @@ public class HttpThrottling implements HttpRequester {
 
 						// 找到可用的channel
 						lastRequestTime[i] = System.currentTimeMillis();
-						waiting.future.setResponseFuture(channels[i].request(waiting.task).getListenableFuture());
+						metrics.queueWait.record((polled - waiting.enqueued) / 1000);
+						metrics.dispatchDelay.record(HttpMetrics.micros(polled));
+						Jfr.httpDispatch(i, waiting.enqueued, polled);
+						dispatch(channels[i], waiting);
 						run = true;
 						break;
 					}
@@ -77,7 +116,136 @@ public class HttpThrottling implements HttpRequester {
 					}
 				} while (!run);
 			}
-		}, HttpThrottling.class.getName()).start();
+		}).start();
+	}
+
+	/**
+	 * 等待队列满时将请求暂存到spillLog
+	 * 
+	 * @param spillLog
+	 * @param maxSpilled 最多允许暂存的请求数量，超过时拒绝请求
+	 * @param process    用于为重启前暂存的请求重新建立回调，参数为HttpTask的data。为空则重启前暂存的请求执行后不回调
+	 */
+	public HttpThrottling setSpillLog(HttpSpillLog spillLog, long maxSpilled,
+			Function<Object, BiConsumer<String, Exception>> process) {
+		if (maxSpilled <= 0)
+			throw new IllegalArgumentException("maxSpilled必须大于0: " + maxSpilled);
+
+		synchronized (spilled) {
+			this.maxSpilled = maxSpilled;
+			this.spillProcess = process;
+			this.spillLog = spillLog;
+		}
+		return this;
+	}
+
+	/**
+	 * 等待队列满时将请求暂存到spillLog，最多暂存DEFAULT_MAX_SPILLED个请求
+	 */
+	public HttpThrottling setSpillLog(HttpSpillLog spillLog, Function<Object, BiConsumer<String, Exception>> process) {
+		return setSpillLog(spillLog, DEFAULT_MAX_SPILLED, process);
+	}
+
+	/** 排队时间和被拒绝的请求数。请求本身的统计由各个channel记录 */
+	public HttpMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 交给channel执行。channel没有执行请求时只让这个请求失败，不影响请求线程
+	 */
+	private void dispatch(HttpRequester channel, Waiting waiting) {
+		ResponseFuture future;
+		try {
+			future = channel.request(waiting.task);
+			if (future == null)
+				throw new IllegalStateException("请求没有被执行");
+		} catch (Exception e) {
+			logger.error("执行请求异常", e);
+			waiting.task.fail(e, null);
+			waiting.future.setResponseFuture(new ListenableFuture.CompletedFailure<>(e));
+			return;
+		}
+		waiting.future.setResponseFuture(future.getListenableFuture());
+	}
+
+	private void reject(HttpTask task, Exception e) {
+		metrics.outcome(HttpMetrics.Outcome.REJECTED);
+		Jfr.httpOverflow(e);
+		task.fail(e, null);
+	}
+
+	/**
+	 * 等待队列有空位时，将暂存的请求按顺序取回等待队列
+	 */
+	private void unspill() {
+		HttpSpillLog log = spillLog;
+		if (log == null)
+			return;
+
+		synchronized (spilled) {
+			while (waitingQueue.remainingCapacity() > 0 && !log.isEmpty()) {
+				HttpSpillLog.Entry entry;
+				try {
+					entry = log.poll();
+				} catch (Exception e) {
+					logger.error("读取暂存请求异常", e);
+					return;
+				}
+				if (entry == null)
+					return;
+
+				Waiting waiting = spilled.remove(entry.getSeq());
+				if (waiting == null && entry.isMemoryOnly()) { // 重启前暂存的下载任务，目标文件和回调已经不存在
+					logger.warn("丢弃重启前暂存的下载任务: {}", entry.getRequest().getUrl());
+					continue;
+				} else if (waiting == null) { // 重启前暂存的请求
+					HttpTask task = new HttpTask(entry.getRequest(),
+							spillProcess == null ? null : spillProcess.apply(entry.getData()));
+					task.setData(entry.getData());
+					waiting = new Waiting(task);
+					waiting.future = new ResponseFuture(() -> false);
+				} else if (waiting.future.isCancelled())
+					continue;
+				else // 仍然是原来的HttpTask，只放回请求
+					waiting.task.setRequest(entry.getRequest());
+
+				waitingQueue.offer(waiting);
+			}
+		}
+	}
+
+	/**
+	 * 将请求暂存到spillLog，内存中保留原来的HttpTask，只释放其中的请求对象
+	 */
+	private ResponseFuture spill(HttpSpillLog log, HttpTask task) {
+		if (spilled.size() >= maxSpilled) {
+			reject(task, new ThrottlingOverflowException());
+			return null;
+		}
+
+		long seq;
+		try {
+			seq = log.append(task.getRequest(), task.getData(), task instanceof HttpDownloadTask);
+		} catch (Exception e) {
+			logger.error("暂存请求异常", e);
+			reject(task, e);
+			return null;
+		}
+
+		// 保留HttpTask的子类和响应限制等设置，请求内容在取回时从磁盘重建
+		task.setRequest(null);
+		Waiting waiting = new Waiting(task);
+
+		// 被撤销的请求在取回时丢弃
+		waiting.future = new ResponseFuture(() -> {
+			synchronized (spilled) {
+				return spilled.containsKey(seq) || waitingQueue.remove(waiting);
+			}
+		});
+		spilled.put(seq, waiting);
+		Jfr.httpEnqueue(spilled.size(), true);
+		return waiting.future;
 	}
 
 	/**
@@ -89,13 +257,16 @@ public class HttpThrottling implements HttpRequester {
 	 */
 	@Override
 	public ResponseFuture request(HttpTask task) {
+		HttpSpillLog log = spillLog;
+		if (log != null)
+			synchronized (spilled) {
+				// 已经有暂存的请求时，新请求也要暂存，保持先后顺序
+				if (!log.isEmpty() || waitingQueue.remainingCapacity() == 0)
+					return spill(log, task);
+			}
+
 		if (waitingQueue.remainingCapacity() == 0) {
-			if (task.getExecutor() == null)
-				task.getProcess().accept(null, new ThrottlingOverflowException());
-			else
-				task.getExecutor().execute(() -> {
-					task.getProcess().accept(null, new ThrottlingOverflowException());
-				});
+			reject(task, new ThrottlingOverflowException());
 			return null;
 		}
 
@@ -104,14 +275,10 @@ public class HttpThrottling implements HttpRequester {
 		try {
 			waitingQueue.put(waiting);
 		} catch (InterruptedException e) {
-			if (task.getExecutor() == null)
-				task.getProcess().accept(null, e);
-			else
-				task.getExecutor().execute(() -> {
-					task.getProcess().accept(null, e);
-				});
+			reject(task, e);
 			return null;
 		}
+		Jfr.httpEnqueue(waitingQueue.size(), false);
 		return waiting.future;
 	}
 
@@ -0,0 +1,45 @@
+package com.aggrepoint.utils.http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * 复用Inflater，避免每个压缩响应都新建Inflater和其占用的本地内存
+ * 
+ * @author jiangmingyang
+ */
+class InflaterPool {
+	/** 每种Inflater最多保留的数量 */
+	private int max;
+	/** nowrap为true的Inflater，用于gzip和不带zlib头的deflate */
+	private ConcurrentLinkedQueue<Inflater> raw = new ConcurrentLinkedQueue<>();
+	private AtomicInteger rawCount = new AtomicInteger();
+	/** 带zlib头的deflate */
+	private ConcurrentLinkedQueue<Inflater> zlib = new ConcurrentLinkedQueue<>();
+	private AtomicInteger zlibCount = new AtomicInteger();
+
+	InflaterPool(int max) {
+		this.max = max;
+	}
+
+	Inflater borrow(boolean nowrap) {
+		Inflater inflater = (nowrap ? raw : zlib).poll();
+		if (inflater == null)
+			return new Inflater(nowrap);
+		(nowrap ? rawCount : zlibCount).decrementAndGet();
+		return inflater;
+	}
+
+	void release(Inflater inflater, boolean nowrap) {
+		AtomicInteger count = nowrap ? rawCount : zlibCount;
+		if (count.incrementAndGet() > max) {
+			count.decrementAndGet();
+			inflater.end();
+			return;
+		}
+
+		inflater.reset();
+		(nowrap ? raw : zlib).offer(inflater);
+	}
+}
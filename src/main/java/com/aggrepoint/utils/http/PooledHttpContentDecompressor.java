@@ -0,0 +1,30 @@
+package com.aggrepoint.utils.http;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaderValues;
+
+/**
+ * 替换AHC管道中的HttpContentDecompressor，用PooledInflaterDecoder解压gzip和deflate
+ * 
+ * @author jiangmingyang
+ */
+class PooledHttpContentDecompressor extends HttpContentDecompressor {
+	private InflaterPool pool;
+
+	PooledHttpContentDecompressor(InflaterPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	protected EmbeddedChannel newContentDecoder(String contentEncoding) throws Exception {
+		boolean gzip = HttpHeaderValues.GZIP.contentEqualsIgnoreCase(contentEncoding)
+				|| HttpHeaderValues.X_GZIP.contentEqualsIgnoreCase(contentEncoding);
+		if (!gzip && !HttpHeaderValues.DEFLATE.contentEqualsIgnoreCase(contentEncoding)
+				&& !HttpHeaderValues.X_DEFLATE.contentEqualsIgnoreCase(contentEncoding))
+			return null; // 不支持的编码，不解压
+
+		return new EmbeddedChannel(ctx.channel().id(), ctx.channel().metadata().hasDisconnect(),
+				ctx.channel().config(), new PooledInflaterDecoder(pool, gzip));
+	}
+}
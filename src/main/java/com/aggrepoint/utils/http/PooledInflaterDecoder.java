@@ -0,0 +1,198 @@
+package com.aggrepoint.utils.http;
+
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.compression.DecompressionException;
+
+/**
+ * <pre>
+ * 解压gzip或deflate格式的响应内容，Inflater从InflaterPool中借用，输入使用线程内复用的字节数组，
+ * 输出直接写入从ByteBufAllocator分配的缓冲区
+ * 
+ * deflate格式自动识别是否带有zlib头
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+class PooledInflaterDecoder extends ByteToMessageDecoder {
+	static final int HEADER = 0;
+	static final int BODY = 1;
+	static final int TRAILER = 2;
+	static final int DONE = 3;
+
+	private static final int FHCRC = 0x02;
+	private static final int FEXTRA = 0x04;
+	private static final int FNAME = 0x08;
+	private static final int FCOMMENT = 0x10;
+
+	private static final int CHUNK = 8192;
+	/** 解压在EventLoop线程中同步完成，输入缓冲区可以按线程复用 */
+	private static final ThreadLocal<byte[]> INPUT = ThreadLocal.withInitial(() -> new byte[CHUNK]);
+
+	private InflaterPool pool;
+	private boolean gzip;
+	private int state = HEADER;
+
+	private Inflater inflater;
+	private boolean nowrap;
+	private CRC32 crc;
+
+	PooledInflaterDecoder(InflaterPool pool, boolean gzip) {
+		this.pool = pool;
+		this.gzip = gzip;
+	}
+
+	/**
+	 * 读取gzip头，数据不完整时返回false并且不移动读取位置
+	 */
+	private boolean readGzipHeader(ByteBuf in) {
+		int start = in.readerIndex();
+		if (in.readableBytes() < 10)
+			return false;
+
+		if (in.readUnsignedByte() != 0x1f || in.readUnsignedByte() != 0x8b)
+			throw new DecompressionException("不是gzip格式");
+		if (in.readUnsignedByte() != 8)
+			throw new DecompressionException("不支持的gzip压缩方法");
+		int flags = in.readUnsignedByte();
+		in.skipBytes(6);
+
+		if ((flags & FEXTRA) != 0) {
+			if (in.readableBytes() < 2) {
+				in.readerIndex(start);
+				return false;
+			}
+			int len = in.readUnsignedShortLE();
+			if (in.readableBytes() < len) {
+				in.readerIndex(start);
+				return false;
+			}
+			in.skipBytes(len);
+		}
+
+		for (int flag : new int[] { FNAME, FCOMMENT })
+			if ((flags & flag) != 0) {
+				int end = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) 0);
+				if (end < 0) {
+					in.readerIndex(start);
+					return false;
+				}
+				in.readerIndex(end + 1);
+			}
+
+		if ((flags & FHCRC) != 0) {
+			if (in.readableBytes() < 2) {
+				in.readerIndex(start);
+				return false;
+			}
+			in.skipBytes(2);
+		}
+
+		return true;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if (state == DONE) {
+			in.skipBytes(in.readableBytes());
+			return;
+		}
+
+		if (state == HEADER) {
+			if (gzip) {
+				if (!readGzipHeader(in))
+					return;
+				nowrap = true;
+				crc = new CRC32();
+			} else {
+				if (in.readableBytes() < 2)
+					return;
+				// 带zlib头时，头两个字节组成的数字能被31整除
+				int cmf = in.getUnsignedByte(in.readerIndex());
+				int flg = in.getUnsignedByte(in.readerIndex() + 1);
+				nowrap = (cmf & 0x0f) != 8 || ((cmf << 8) | flg) % 31 != 0;
+			}
+			inflater = pool.borrow(nowrap);
+			state = BODY;
+		}
+
+		if (state == BODY)
+			inflate(ctx, in, out);
+
+		if (state == TRAILER) {
+			if (in.readableBytes() < 8)
+				return;
+			if (in.readIntLE() != (int) crc.getValue())
+				throw new DecompressionException("gzip校验和错误");
+			in.skipBytes(4);
+			state = DONE;
+			in.skipBytes(in.readableBytes());
+		}
+	}
+
+	private void inflate(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws DataFormatException {
+		byte[] input = INPUT.get();
+		ByteBuf buf = null;
+		try {
+			while (true) {
+				if (inflater.needsInput()) {
+					if (!in.isReadable())
+						break;
+					int n = Math.min(in.readableBytes(), input.length);
+					in.readBytes(input, 0, n);
+					inflater.setInput(input, 0, n);
+				}
+
+				if (buf == null)
+					buf = ctx.alloc().heapBuffer(CHUNK);
+
+				int n = inflater.inflate(buf.array(), buf.arrayOffset() + buf.writerIndex(), buf.writableBytes());
+				if (n > 0) {
+					if (crc != null)
+						crc.update(buf.array(), buf.arrayOffset() + buf.writerIndex(), n);
+					buf.writerIndex(buf.writerIndex() + n);
+					if (!buf.isWritable()) {
+						out.add(buf);
+						buf = null;
+					}
+				}
+
+				if (inflater.needsDictionary())
+					throw new DecompressionException("不支持需要预设字典的deflate数据");
+
+				if (inflater.finished()) {
+					// 退回压缩数据之后的字节（gzip的校验和）
+					in.readerIndex(in.readerIndex() - inflater.getRemaining());
+					releaseInflater();
+					state = gzip ? TRAILER : DONE;
+					break;
+				}
+			}
+		} finally {
+			if (buf != null) {
+				if (buf.isReadable())
+					out.add(buf);
+				else
+					buf.release();
+			}
+		}
+	}
+
+	private void releaseInflater() {
+		if (inflater != null) {
+			pool.release(inflater, nowrap);
+			inflater = null;
+		}
+	}
+
+	@Override
+	protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+		releaseInflater();
+	}
+}
@@ -0,0 +1,12 @@
+package com.aggrepoint.utils.http;
+
+/**
+ * 响应超出限制：响应内容超过允许的大小，或者响应内容类型不在允许范围内。连接在发现超限时即被中断
+ */
+public class ResponseLimitException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public ResponseLimitException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,75 @@
+package com.aggrepoint.utils.http;
+
+import java.util.List;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.Request;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * 在接收响应的过程中检查响应大小和内容类型，超出限制时抛出ResponseLimitException中断连接
+ * 
+ * @author jiangmingyang
+ */
+class ResponseLimitHandler extends HttpMetricsHandler {
+	private String url;
+	/** 允许的最大响应内容字节数，小于等于0表示不限制 */
+	private long maxBodySize;
+	/** 允许的内容类型，为空表示不限制 */
+	private List<String> contentTypes;
+
+	ResponseLimitHandler(HttpMetrics metrics, Request request, long maxBodySize, List<String> contentTypes) {
+		super(metrics, request);
+		this.url = request.getUrl();
+		this.maxBodySize = maxBodySize;
+		this.contentTypes = contentTypes;
+	}
+
+	/**
+	 * @param allowed 允许的内容类型，例如application/json，可以用text/*表示一类
+	 */
+	static boolean matchContentType(String contentType, List<String> allowed) {
+		if (contentType == null)
+			return false;
+
+		int idx = contentType.indexOf(';');
+		String mime = (idx < 0 ? contentType : contentType.substring(0, idx)).trim();
+		for (String type : allowed) {
+			if (type.endsWith("/*")) {
+				if (mime.regionMatches(true, 0, type, 0, type.length() - 1))
+					return true;
+			} else if (mime.equalsIgnoreCase(type))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public State onHeadersReceived(HttpHeaders headers) throws Exception {
+		if (contentTypes != null && contentTypes.size() > 0
+				&& !matchContentType(headers.get(HttpHeaderNames.CONTENT_TYPE), contentTypes))
+			throw new ResponseLimitException(url + " 响应内容类型不允许: " + headers.get(HttpHeaderNames.CONTENT_TYPE));
+
+		if (maxBodySize > 0) {
+			String length = headers.get(HttpHeaderNames.CONTENT_LENGTH);
+			if (length != null)
+				try {
+					if (Long.parseLong(length.trim()) > maxBodySize)
+						throw new ResponseLimitException(url + " 响应内容长度" + length + "超过限制" + maxBodySize);
+				} catch (NumberFormatException e) {
+				}
+		}
+
+		return super.onHeadersReceived(headers);
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart content) throws Exception {
+		State state = super.onBodyPartReceived(content);
+		if (maxBodySize > 0 && getReceived() > maxBodySize) // 没有Content-Length或者与实际长度不符
+			throw new ResponseLimitException(url + " 响应内容超过限制" + maxBodySize);
+		return state;
+	}
+}
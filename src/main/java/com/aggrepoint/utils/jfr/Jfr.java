@@ -0,0 +1,107 @@
+package com.aggrepoint.utils.jfr;
+
+import java.net.URI;
+
+import org.asynchttpclient.Request;
+
+/**
+ * <pre>
+ * 提交Java Flight Recorder事件。运行环境不支持JFR（8u262以前的Java 8）时所有方法都不做任何事情
+ * 
+ * 事件没有在JFR配置中启用时，只有一次isEnabled()判断的开销。参数传递原始对象，
+ * 在isEnabled()之后才转换成字符串
+ * 
+ * 时间参数都是System.nanoTime()的值
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public final class Jfr {
+	static final boolean AVAILABLE;
+
+	static {
+		boolean available = false;
+		try {
+			Class.forName("jdk.jfr.Event");
+			available = true;
+		} catch (Throwable e) {
+		}
+		AVAILABLE = available;
+	}
+
+	private Jfr() {
+	}
+
+	/**
+	 * @param queueSize 加入后等待队列中的请求数
+	 * @param spilled   是否暂存到磁盘
+	 */
+	public static void httpEnqueue(int queueSize, boolean spilled) {
+		if (AVAILABLE)
+			JfrEvents.httpEnqueue(queueSize, spilled);
+	}
+
+	/**
+	 * @param channel  执行请求的channel序号
+	 * @param enqueued 进入等待队列的时间
+	 * @param polled   到达队首的时间
+	 */
+	public static void httpDispatch(int channel, long enqueued, long polled) {
+		if (AVAILABLE)
+			JfrEvents.httpDispatch(channel, enqueued, polled);
+	}
+
+	public static void httpOverflow(Throwable reason) {
+		if (AVAILABLE)
+			JfrEvents.httpOverflow(reason);
+	}
+
+	/**
+	 * @param status    HTTP状态，请求失败时为0
+	 * @param firstByte 收到响应状态行的时间，没有收到时为0
+	 * @param error     请求失败时的异常
+	 */
+	public static void httpRequest(Request request, int status, long bodySize, long start, long firstByte,
+			Throwable error) {
+		if (AVAILABLE)
+			JfrEvents.httpRequest(request, status, bodySize, start, firstByte, error);
+	}
+
+	public static void webSocketConnect(String key, URI uri, String localIp, long start, Throwable error) {
+		if (AVAILABLE)
+			JfrEvents.webSocketConnect(key, uri, localIp, start, error);
+	}
+
+	/**
+	 * @param connectedTime 建立连接的时间，System.currentTimeMillis()的值
+	 */
+	public static void webSocketDisconnect(String key, URI uri, long connectedTime) {
+		if (AVAILABLE)
+			JfrEvents.webSocketDisconnect(key, uri, connectedTime);
+	}
+
+	/**
+	 * @param disconnectTime 上次中断连接的时间，System.currentTimeMillis()的值
+	 */
+	public static void webSocketReconnect(String key, URI uri, long disconnectTime) {
+		if (AVAILABLE)
+			JfrEvents.webSocketReconnect(key, uri, disconnectTime);
+	}
+
+	/**
+	 * @param resumed 是否恢复了已有的TLS会话
+	 * @param start   开始握手的时间
+	 */
+	public static void webSocketTlsHandshake(String key, URI uri, boolean resumed, long start, Throwable error) {
+		if (AVAILABLE)
+			JfrEvents.webSocketTlsHandshake(key, uri, resumed, start, error);
+	}
+
+	/**
+	 * @param start 开始处理帧的时间
+	 */
+	public static void webSocketFrame(String key, String type, int size, long start) {
+		if (AVAILABLE)
+			JfrEvents.webSocketFrame(key, type, size, start);
+	}
+}
@@ -0,0 +1,256 @@
+package com.aggrepoint.utils.jfr;
+
+import java.net.URI;
+
+import org.asynchttpclient.Request;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR事件定义。只有在Jfr确认运行环境支持JFR后才会加载
+ * 
+ * @author jiangmingyang
+ */
+class JfrEvents {
+	@Name("com.aggrepoint.http.Enqueue")
+	@Label("HTTP Enqueue")
+	@Category({ "AP Netty", "HTTP" })
+	@StackTrace(false)
+	static class HttpEnqueueEvent extends Event {
+		@Label("Queue Size")
+		int queueSize;
+		@Label("Spilled")
+		boolean spilled;
+	}
+
+	@Name("com.aggrepoint.http.Dispatch")
+	@Label("HTTP Dispatch")
+	@Category({ "AP Netty", "HTTP" })
+	@StackTrace(false)
+	static class HttpDispatchEvent extends Event {
+		@Label("Channel")
+		int channel;
+		@Label("Queue Wait")
+		@Timespan(Timespan.NANOSECONDS)
+		long queueWait;
+		@Label("Dispatch Delay")
+		@Timespan(Timespan.NANOSECONDS)
+		long dispatchDelay;
+	}
+
+	@Name("com.aggrepoint.http.Overflow")
+	@Label("HTTP Overflow")
+	@Category({ "AP Netty", "HTTP" })
+	static class HttpOverflowEvent extends Event {
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("com.aggrepoint.http.Request")
+	@Label("HTTP Request")
+	@Category({ "AP Netty", "HTTP" })
+	@StackTrace(false)
+	static class HttpRequestEvent extends Event {
+		@Label("Method")
+		String method;
+		@Label("URL")
+		String url;
+		@Label("Status")
+		int status;
+		@Label("Body Size")
+		@DataAmount(DataAmount.BYTES)
+		long bodySize;
+		@Label("Time To First Byte")
+		@Timespan(Timespan.NANOSECONDS)
+		long firstByte;
+		@Label("Latency")
+		@Timespan(Timespan.NANOSECONDS)
+		long latency;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.aggrepoint.ws.Connect")
+	@Label("WebSocket Connect")
+	@Category({ "AP Netty", "WebSocket" })
+	@StackTrace(false)
+	static class WebSocketConnectEvent extends Event {
+		@Label("Key")
+		String key;
+		@Label("URI")
+		String uri;
+		@Label("Local IP")
+		String localIp;
+		@Label("Latency")
+		@Timespan(Timespan.NANOSECONDS)
+		long latency;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.aggrepoint.ws.Disconnect")
+	@Label("WebSocket Disconnect")
+	@Category({ "AP Netty", "WebSocket" })
+	@StackTrace(false)
+	static class WebSocketDisconnectEvent extends Event {
+		@Label("Key")
+		String key;
+		@Label("URI")
+		String uri;
+		@Label("Connected Duration")
+		@Timespan(Timespan.MILLISECONDS)
+		long connected;
+	}
+
+	@Name("com.aggrepoint.ws.Reconnect")
+	@Label("WebSocket Reconnect")
+	@Category({ "AP Netty", "WebSocket" })
+	static class WebSocketReconnectEvent extends Event {
+		@Label("Key")
+		String key;
+		@Label("URI")
+		String uri;
+		@Label("Since Disconnect")
+		@Timespan(Timespan.MILLISECONDS)
+		long downtime;
+	}
+
+	@Name("com.aggrepoint.ws.TlsHandshake")
+	@Label("WebSocket TLS Handshake")
+	@Category({ "AP Netty", "WebSocket" })
+	@StackTrace(false)
+	static class WebSocketTlsHandshakeEvent extends Event {
+		@Label("Key")
+		String key;
+		@Label("URI")
+		String uri;
+		@Label("Resumed")
+		boolean resumed;
+		@Label("Latency")
+		@Timespan(Timespan.NANOSECONDS)
+		long latency;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.aggrepoint.ws.Frame")
+	@Label("WebSocket Frame")
+	@Category({ "AP Netty", "WebSocket" })
+	@StackTrace(false)
+	static class WebSocketFrameEvent extends Event {
+		@Label("Key")
+		String key;
+		@Label("Type")
+		String type;
+		@Label("Size")
+		@DataAmount(DataAmount.BYTES)
+		int size;
+		@Label("Processing Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long latency;
+	}
+
+	static void httpEnqueue(int queueSize, boolean spilled) {
+		HttpEnqueueEvent e = new HttpEnqueueEvent();
+		if (!e.isEnabled())
+			return;
+		e.queueSize = queueSize;
+		e.spilled = spilled;
+		e.commit();
+	}
+
+	static void httpDispatch(int channel, long enqueued, long polled) {
+		HttpDispatchEvent e = new HttpDispatchEvent();
+		if (!e.isEnabled())
+			return;
+		long now = System.nanoTime();
+		e.channel = channel;
+		e.queueWait = polled - enqueued;
+		e.dispatchDelay = now - polled;
+		e.commit();
+	}
+
+	static void httpOverflow(Throwable reason) {
+		HttpOverflowEvent e = new HttpOverflowEvent();
+		if (!e.isEnabled())
+			return;
+		e.reason = reason.toString();
+		e.commit();
+	}
+
+	static void httpRequest(Request request, int status, long bodySize, long start, long firstByte,
+			Throwable error) {
+		HttpRequestEvent e = new HttpRequestEvent();
+		if (!e.isEnabled())
+			return;
+		e.method = request.getMethod();
+		e.url = request.getUrl();
+		e.status = status;
+		e.bodySize = bodySize;
+		e.firstByte = firstByte == 0 ? 0 : firstByte - start;
+		e.latency = System.nanoTime() - start;
+		e.error = error == null ? null : error.toString();
+		e.commit();
+	}
+
+	static void webSocketConnect(String key, URI uri, String localIp, long start, Throwable error) {
+		WebSocketConnectEvent e = new WebSocketConnectEvent();
+		if (!e.isEnabled())
+			return;
+		e.key = key;
+		e.uri = uri.toString();
+		e.localIp = localIp;
+		e.latency = System.nanoTime() - start;
+		e.error = error == null ? null : error.toString();
+		e.commit();
+	}
+
+	static void webSocketDisconnect(String key, URI uri, long connectedTime) {
+		WebSocketDisconnectEvent e = new WebSocketDisconnectEvent();
+		if (!e.isEnabled())
+			return;
+		e.key = key;
+		e.uri = uri.toString();
+		e.connected = System.currentTimeMillis() - connectedTime;
+		e.commit();
+	}
+
+	static void webSocketReconnect(String key, URI uri, long disconnectTime) {
+		WebSocketReconnectEvent e = new WebSocketReconnectEvent();
+		if (!e.isEnabled())
+			return;
+		e.key = key;
+		e.uri = uri.toString();
+		e.downtime = disconnectTime == 0 ? 0 : System.currentTimeMillis() - disconnectTime;
+		e.commit();
+	}
+
+	static void webSocketTlsHandshake(String key, URI uri, boolean resumed, long start, Throwable error) {
+		WebSocketTlsHandshakeEvent e = new WebSocketTlsHandshakeEvent();
+		if (!e.isEnabled())
+			return;
+		e.key = key;
+		e.uri = uri.toString();
+		e.resumed = resumed;
+		e.latency = System.nanoTime() - start;
+		e.error = error == null ? null : error.toString();
+		e.commit();
+	}
+
+	static void webSocketFrame(String key, String type, int size, long start) {
+		WebSocketFrameEvent e = new WebSocketFrameEvent();
+		if (!e.isEnabled())
+			return;
+		e.key = key;
+		e.type = type;
+		e.size = size;
+		e.latency = System.nanoTime() - start;
+		e.commit();
+	}
+}
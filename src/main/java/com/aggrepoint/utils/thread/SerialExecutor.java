@@ -0,0 +1,90 @@
+package com.aggrepoint.utils.thread;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 在另一个Executor上按提交顺序逐个执行任务。多个SerialExecutor可以共享同一个线程池，
+ * 各自的任务按顺序执行，不同SerialExecutor的任务并行执行
+ * 
+ * 任务放入无锁队列，队列从空变为非空时才向线程池提交一次排空任务，每次最多连续执行batchSize个任务后
+ * 把线程让给其他SerialExecutor
+ * 
+ * 任务抛出的异常记录日志后继续执行后面的任务
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class SerialExecutor implements Executor {
+	private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final Executor executor;
+	private final int batchSize;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	/** 是否已经向executor提交了排空任务 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final Runnable drainTask = this::drain;
+
+	public SerialExecutor(Executor executor, int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize必须大于0");
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+
+	public SerialExecutor(Executor executor) {
+		this(executor, DEFAULT_BATCH_SIZE);
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		tasks.add(task);
+		schedule();
+	}
+
+	private void schedule() {
+		if (!scheduled.compareAndSet(false, true))
+			return;
+
+		try {
+			executor.execute(drainTask);
+		} catch (RuntimeException e) {
+			scheduled.set(false);
+			throw e;
+		}
+	}
+
+	private void drain() {
+		try {
+			Runnable task;
+			for (int i = 0; i < batchSize && (task = tasks.poll()) != null; i++)
+				try {
+					task.run();
+				} catch (Throwable e) {
+					logger.error("执行任务异常", e);
+				}
+		} finally {
+			scheduled.set(false);
+		}
+
+		// 放弃执行权后新加入的任务，或者本批没有执行完的任务
+		if (!tasks.isEmpty())
+			schedule();
+	}
+
+	/** 等待执行的任务数量 */
+	public int size() {
+		return tasks.size();
+	}
+}
@@ -0,0 +1,122 @@
+package com.aggrepoint.utils.thread;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 虚拟线程模式。在JDK 21及以上版本启用后，HttpThrottling、HttpRepeat、WebSocketClientMonitorSingle的内部循环
+ * 和WebSocketClient的发送调度都运行在虚拟线程中，newExecutor()返回每个任务一个虚拟线程的ExecutorService，
+ * 可以作为HttpChannel、HttpTask和WebSocketClientBuilder的回调执行器，回调中的阻塞操作不再占用平台线程
+ * 
+ * 在不支持虚拟线程的JVM上启用时继续使用平台线程，行为与未启用时相同
+ * 
+ * 通过系统属性-Daggrepoint.virtualThreads=true或setEnabled(true)启用。setEnabled()只影响此后创建的线程，
+ * 应在创建HttpThrottling、WebSocketClient等之前调用
+ * 
+ * 虚拟线程在synchronized块中阻塞时会占用其载体线程，回调中的长时间阻塞应避免放在synchronized块中
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public final class VirtualThreads {
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+	public static final String PROPERTY = "aggrepoint.virtualThreads";
+
+	/** Thread.ofVirtual() */
+	private static final Method OF_VIRTUAL;
+	/** Thread.Builder.name(String, long) */
+	private static final Method NAME;
+	/** Thread.Builder.factory() */
+	private static final Method FACTORY;
+	/** Executors.newThreadPerTaskExecutor(ThreadFactory) */
+	private static final Method PER_TASK;
+	public static final boolean SUPPORTED;
+
+	private static volatile boolean enabled = Boolean.getBoolean(PROPERTY);
+
+	static {
+		Method ofVirtual = null, name = null, factory = null, perTask = null;
+		boolean supported = false;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			factory.invoke(ofVirtual.invoke(null)); // JDK 19、20中未启用预览特性时抛出异常
+			supported = true;
+		} catch (Throwable e) {
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+		PER_TASK = perTask;
+		SUPPORTED = supported;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/** 是否在使用虚拟线程 */
+	public static boolean isEnabled() {
+		return enabled && SUPPORTED;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		if (enabled && !SUPPORTED)
+			logger.warn("当前JVM不支持虚拟线程，继续使用平台线程");
+		VirtualThreads.enabled = enabled;
+	}
+
+	/**
+	 * 虚拟线程模式下创建虚拟线程，否则创建平台线程。线程名称为name-序号
+	 * 
+	 * @param daemon 平台线程是否为守护线程。虚拟线程总是守护线程
+	 */
+	public static ThreadFactory factory(String name, boolean daemon) {
+		if (isEnabled())
+			try {
+				return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L));
+			} catch (ReflectiveOperationException e) {
+				logger.error("创建虚拟线程失败，使用平台线程", e);
+			}
+
+		AtomicInteger seq = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + seq.getAndIncrement());
+			t.setDaemon(daemon);
+			return t;
+		};
+	}
+
+	/**
+	 * 创建一个未启动的线程运行task。平台线程的守护属性与当前线程相同
+	 */
+	public static Thread newThread(String name, Runnable task) {
+		Thread t = isEnabled() ? factory(name, true).newThread(task) : new Thread(task);
+		t.setName(name);
+		return t;
+	}
+
+	/**
+	 * 用于执行回调的ExecutorService。虚拟线程模式下每个任务一个虚拟线程，否则是threads个平台线程的线程池
+	 */
+	public static ExecutorService newExecutor(String name, int threads) {
+		if (isEnabled())
+			try {
+				return (ExecutorService) PER_TASK.invoke(null, factory(name, true));
+			} catch (ReflectiveOperationException e) {
+				logger.error("创建虚拟线程ExecutorService失败，使用平台线程", e);
+			}
+
+		return Executors.newFixedThreadPool(threads, factory(name, false));
+	}
+}
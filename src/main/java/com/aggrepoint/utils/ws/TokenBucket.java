@@ -0,0 +1,60 @@
+package com.aggrepoint.utils.ws;
+
+/**
+ * <pre>
+ * 令牌桶：每period纳秒补充permits个令牌，最多积累burst个，发送一个消息消耗一个令牌
+ * 
+ * 不是线程安全的，由WebSocketSendQueue在锁内使用
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+class TokenBucket {
+	int permits;
+	long period;
+	int burst;
+
+	/** 补充一个令牌需要的纳秒数 */
+	private double nanosPerToken;
+	private double tokens;
+	private long last;
+
+	TokenBucket(int permits, long period, int burst) {
+		if (permits <= 0 || period <= 0 || burst <= 0)
+			throw new IllegalArgumentException("permits、period和burst必须大于0");
+
+		this.permits = permits;
+		this.period = period;
+		this.burst = burst;
+		nanosPerToken = (double) period / permits;
+		tokens = burst;
+		last = System.nanoTime();
+	}
+
+	/** 同样参数的新令牌桶，令牌是满的 */
+	TokenBucket copy() {
+		return new TokenBucket(permits, period, burst);
+	}
+
+	private void refill(long now) {
+		if (now > last) {
+			tokens = Math.min(burst, tokens + (now - last) / nanosPerToken);
+			last = now;
+		}
+	}
+
+	boolean available(long now) {
+		refill(now);
+		return tokens >= 1;
+	}
+
+	void take() {
+		tokens -= 1;
+	}
+
+	/** 距离有一个令牌可用还需要的纳秒数 */
+	long delay(long now) {
+		refill(now);
+		return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerToken);
+	}
+}
@@ -0,0 +1,105 @@
+package com.aggrepoint.utils.ws;
+
+/**
+ * <pre>
+ * 一个本地IP建立连接的健康状况：建立连接的成功率、握手耗时、连接断开的频率，都按时间衰减，
+ * 没有新的样本时逐渐恢复为健康，使暂时没有连接的IP可以重新分配到连接
+ * 
+ * score()在0到1之间，WebSocketClientMonitorGroup按它分配连接
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class WebSocketBindHealth {
+	/** 样本的影响在这个毫秒数内衰减到1/e */
+	static final double DECAY = 5 * 60 * 1000;
+	/** 一个样本的权重 */
+	static final double ALPHA = 0.2;
+	/** 握手耗时达到这个毫秒数时健康度减半 */
+	static final double LATENCY_REF = 1000;
+	/** 最低的健康度，不健康的IP仍然按比例分配少量连接 */
+	static final double MIN_SCORE = 0.01;
+
+	/** 失败率 */
+	private double failureRate;
+	/** 握手耗时，毫秒 */
+	private double latency;
+	/** 按时间衰减的断开次数 */
+	private double disconnects;
+	private long updateTime = System.currentTimeMillis();
+	private long attempts;
+	private long failures;
+	private long disconnectCount;
+
+	/** 把各项按时间衰减到now */
+	private void decay(long now) {
+		if (now > updateTime) {
+			double f = Math.exp(-(now - updateTime) / DECAY);
+			failureRate *= f;
+			latency *= f;
+			disconnects *= f;
+			updateTime = now;
+		}
+	}
+
+	/** 建立连接成功，latency为握手耗时毫秒数，-1表示不知道 */
+	public synchronized void succeeded(long latency) {
+		decay(System.currentTimeMillis());
+		attempts++;
+		failureRate -= ALPHA * failureRate;
+		if (latency >= 0)
+			this.latency += ALPHA * (latency - this.latency);
+	}
+
+	public synchronized void failed() {
+		decay(System.currentTimeMillis());
+		attempts++;
+		failures++;
+		failureRate += ALPHA * (1 - failureRate);
+	}
+
+	/** 已经建立的连接断开 */
+	public synchronized void disconnected() {
+		decay(System.currentTimeMillis());
+		disconnectCount++;
+		disconnects += 1;
+	}
+
+	/**
+	 * @param clients 使用这个IP的连接数量，用于计算每个连接的断开频率
+	 */
+	public synchronized double score(int clients) {
+		decay(System.currentTimeMillis());
+		double score = (1 - failureRate) / (1 + latency / LATENCY_REF) / (1 + disconnects / Math.max(clients, 1));
+		return Math.max(score, MIN_SCORE);
+	}
+
+	public synchronized double getFailureRate() {
+		decay(System.currentTimeMillis());
+		return failureRate;
+	}
+
+	public synchronized double getLatency() {
+		decay(System.currentTimeMillis());
+		return latency;
+	}
+
+	public synchronized long getAttempts() {
+		return attempts;
+	}
+
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	public synchronized long getDisconnectCount() {
+		return disconnectCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		decay(System.currentTimeMillis());
+		return String.format("失败率%.2f 握手%.0fms 断开%.1f 共%d/%d/%d", failureRate, latency, disconnects, failures,
+				attempts, disconnectCount);
+	}
+}
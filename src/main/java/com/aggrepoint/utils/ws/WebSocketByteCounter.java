@@ -0,0 +1,42 @@
+package com.aggrepoint.utils.ws;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * <pre>
+ * 统计经过的WebSocket帧的数据字节数。放在压缩扩展之前统计压缩后的字节数，放在之后统计压缩前的字节数
+ * 
+ * 只在连接的event loop中更新
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+class WebSocketByteCounter extends ChannelDuplexHandler {
+	private volatile long received;
+	private volatile long sent;
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof WebSocketFrame)
+			received += ((WebSocketFrame) msg).content().readableBytes();
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof WebSocketFrame)
+			sent += ((WebSocketFrame) msg).content().readableBytes();
+		ctx.write(msg, promise);
+	}
+
+	long received() {
+		return received;
+	}
+
+	long sent() {
+		return sent;
+	}
+}
@@ -2,17 +2,28 @@ package com.aggrepoint.utils.ws;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.aggrepoint.utils.jfr.Jfr;
+import com.aggrepoint.utils.thread.SerialExecutor;
+import com.aggrepoint.utils.thread.VirtualThreads;
+import com.aggrepoint.utils.ws.codec.WebSocketCodec;
+import com.aggrepoint.utils.ws.codec.WebSocketCodecs;
+
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -28,25 +39,52 @@ import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateClientExtensionHandshaker;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 
 /**
  * 一个WebSocketClient实例代表一个WebSocket的客户连接。
- *
+ * 
  * @param <T>
  * @param <V>
  */
 public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketClientIntf {
 	public static final long DEFAULT_INACTIVE_TIME = 60 * 1000;
+	public static final int DEFAULT_SSL_SESSION_CACHE_SIZE = 1024;
+	public static final int DEFAULT_SSL_SESSION_TIMEOUT = 24 * 3600;
+	/** 迁移时新连接握手的最长毫秒数 */
+	static final long MIGRATE_TIMEOUT = 10 * 1000;
 	private static final Logger logger = LoggerFactory.getLogger(WebSocketClient.class);
-	private static ScheduledExecutorService scheduleService = Executors.newScheduledThreadPool(20);
+	private static ScheduledExecutorService scheduleService = Executors.newScheduledThreadPool(20,
+			VirtualThreads.factory(WebSocketClient.class.getName(), false));
 
 	private WebSocketClientBuilder<T, V> builder;
 	/** 不为空表示连接成功 */
-	private Channel channel;
+	private volatile Channel channel;
+	/** 迁移时正在建立的新连接，握手成功后替换channel */
+	private volatile Channel replacing;
+	/** 迁移后正在关闭的原连接 */
+	private volatile Channel retiring;
+	/** 已经不再使用、正在关闭的连接：迁移后的原连接和断开时还没有完成迁移的新连接。关闭时不作为连接中断处理 */
+	private final Set<Channel> abandoned = ConcurrentHashMap.newKeySet();
+	/** 新连接是否已经握手成功 */
+	private volatile boolean replacingReady;
+	/** 新旧连接重叠期间和切换后的一段时间内去重，没有设置去重或不在迁移中时为空 */
+	private volatile WebSocketFrameDeduplicator dedup;
+	/** 迁移中切换连接和分发帧的锁 */
+	private final Object overlapLock = new Object();
+	/** 迁移失败后，在这个时间之前定时重连不再尝试迁移 */
+	private volatile long migrateRetryTime;
+	/** 重叠期间被判定为重复而没有分发的帧数量 */
+	private volatile long duplicateFrames;
 	private long connectedTime;
 	private long disconnectTime;
 	/** 最后一次活跃时间 */
@@ -62,64 +100,199 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 	private boolean connected = false;
 	private ReentrantLock connectedLock = new ReentrantLock();
 
-	/** 消息发送速度控制：当前正在等待发送的所有消息 */
-	private List<Object> messages = new ArrayList<>();
-	/** 消息发送速度控制：最后一次发送消息的时间 */
-	private long lastSendTime;
-	/** 当前是否有调度任务正在运行 */
-	private boolean scheduling = false;
+	/** 消息发送速度控制 */
+	private WebSocketSendQueue queue;
+	/** 按顺序分发时，在execSvc中按顺序执行本客户端的回调 */
+	private volatile SerialExecutor serial;
+	/** 限制等待execSvc处理的帧数量 */
+	private volatile WebSocketInboundLimiter limiter;
 
 	private String localIp = null;
+	/** 连接建立、建立失败或断开时通知监控器 */
+	private volatile Runnable stateListener;
+
+	/** 没有在builder中设置SslContext的wss连接共享的SslContext */
+	private static volatile SslContext defaultSslContext;
+
+	/** 重新连接的次数 */
+	private volatile int reconnectCount;
+	/** 连续建立连接失败的次数，websocket握手成功后清零 */
+	private volatile int failureCount;
+	/** 最后一次从开始建立连接到websocket握手成功的纳秒数 */
+	private volatile long connectLatency;
+	/** 迁移的次数 */
+	private volatile int migrateCount;
+	/** TLS握手次数 */
+	private volatile int handshakeCount;
+	/** 恢复了已有会话的TLS握手次数 */
+	private volatile int resumedCount;
+	/** 最后一次TLS握手耗费的纳秒数 */
+	private volatile long handshakeTime;
+
+	/** 协商压缩时，当前连接压缩后和压缩前的数据字节数 */
+	private volatile WebSocketByteCounter compressedBytes;
+	private volatile WebSocketByteCounter uncompressedBytes;
+
+	/**
+	 * <pre>
+	 * 创建wss连接使用的SslContext，不校验服务器证书
+	 * 
+	 * JDK实现在客户端按服务器host和端口缓存会话，重新连接时恢复会话（Java 13以后为TLS 1.3的session ticket），只需要一次往返。
+	 * OpenSSL（需要netty-tcnative）握手本身的CPU开销更小，但当前netty版本中OpenSSL客户端不缓存会话，每次都是完整握手
+	 * </pre>
+	 * 
+	 * @param provider         为空时使用JDK实现，指定OPENSSL但运行环境不支持时也使用JDK实现
+	 * @param sessionCacheSize 缓存的会话数量
+	 * @param sessionTimeout   会话缓存的秒数
+	 */
+	public static SslContext createSslContext(SslProvider provider, int sessionCacheSize, int sessionTimeout)
+			throws SSLException {
+		if (provider == null || provider != SslProvider.JDK && !OpenSsl.isAvailable())
+			provider = SslProvider.JDK;
+		return SslContextBuilder.forClient().sslProvider(provider).trustManager(InsecureTrustManagerFactory.INSTANCE)
+				.sessionCacheSize(sessionCacheSize).sessionTimeout(sessionTimeout).build();
+	}
+
+	/** 没有在builder中设置SslContext时使用的SslContext，第一次使用时创建 */
+	public static SslContext getDefaultSslContext() throws SSLException {
+		SslContext ctx = defaultSslContext;
+		if (ctx == null)
+			synchronized (WebSocketClient.class) {
+				ctx = defaultSslContext;
+				if (ctx == null)
+					defaultSslContext = ctx = createSslContext(SslProvider.JDK, DEFAULT_SSL_SESSION_CACHE_SIZE,
+							DEFAULT_SSL_SESSION_TIMEOUT);
+			}
+		return ctx;
+	}
 
 	@Override
 	public void logStats() {
-		logger.info("{}@{} {} connect: {} active: {} heartbeat: {} msgcount: {} lastsend: {} last disconnect: {}",
-				builder.key, localIp == null ? "" : localIp, builder.uri.toString(),
+		logger.info(
+				"{}@{} {} connect: {} active: {} heartbeat: {} msgcount: {} lag: {} dropped: {} lastsend: {} last disconnect: {} reconnect: {} tls: {} compressed: {} inflight: {} migrate: {}",
+				builder.key, localIp == null ? "" : localIp, builder.uri,
 				connected + "/" + isChannelConnected() + "/" + DateFormat.format(connectedTime),
-				DateFormat.format(activeTimestamp), DateFormat.format(heartBeatTime), messages.size(),
-				DateFormat.format(lastSendTime), DateFormat.format(disconnectTime));
+				DateFormat.format(activeTimestamp), DateFormat.format(heartBeatTime), queue.size(), queue.lag(),
+				queue.dropped(), DateFormat.format(queue.lastSendTime()), DateFormat.format(disconnectTime),
+				reconnectCount, resumedCount + "/" + handshakeCount + "/"
+						+ TimeUnit.NANOSECONDS.toMillis(handshakeTime) + "ms",
+				getCompressedBytesReceived() + "/" + getUncompressedBytesReceived(),
+				getInflightFrames() + "/" + getReadPauseCount(), migrateCount + "/" + duplicateFrames);
 	}
 
 	/**
-	 * 调度时间到，从消息队列中取出一个发送
+	 * 返回true表示已经发送，false表示等待调度或因为连接已经断开而丢弃。等待发送的消息达到上限时按builder中设置的QueueOverflow处理
 	 */
-	private void retrieveAndSend() {
-		synchronized (messages) {
-			if (messages.size() > 0) {
-				channel.writeAndFlush(messages.get(0));
-				lastSendTime = System.currentTimeMillis();
-				messages.remove(0);
-			}
+	public boolean sendMessage(Object obj) {
+		return queue.send(obj);
+	}
 
-			if (messages.size() > 0)
-				scheduleService.schedule(() -> retrieveAndSend(), requestInterval, TimeUnit.MILLISECONDS);
-			else
-				scheduling = false;
-		}
+	/**
+	 * 用codec把消息编码到从池中分配的direct buffer中发送。没有连接时不编码，返回false
+	 */
+	public <M> boolean sendMessage(WebSocketCodec<M> codec, M msg) {
+		Channel ch = channel;
+		if (ch == null)
+			return false;
+		return queue.send(WebSocketCodecs.encode(codec, msg, ch.alloc()));
 	}
 
 	/**
-	 * 返回true表示已经发送，false表示等待调度
+	 * 发送一组消息，返回已经发送的数量，其余等待调度。不限速时全部写出后只flush一次
 	 */
-	public synchronized boolean sendMessage(Object obj) {
-		if (requestInterval == 0 || !scheduling && System.currentTimeMillis() - lastSendTime > requestInterval) {
-			channel.writeAndFlush(obj);
-			lastSendTime = System.currentTimeMillis();
-			return true;
-		}
+	public int sendMessages(Collection<?> objs) {
+		return queue.send(objs);
+	}
 
-		synchronized (messages) {
-			messages.add(obj);
-			if (!scheduling) {
-				long scheduleTime = requestInterval - (System.currentTimeMillis() - lastSendTime);
-				if (scheduleTime <= 0)
-					scheduleTime = 1;
+	/** 等待发送的消息数量 */
+	public int getQueueSize() {
+		return queue.size();
+	}
 
-				scheduling = true;
-				scheduleService.schedule(() -> retrieveAndSend(), scheduleTime, TimeUnit.MILLISECONDS);
-			}
-		}
-		return false;
+	/** 最早等待发送的消息已经等待的毫秒数 */
+	public long getQueueLag() {
+		return queue.lag();
+	}
+
+	/** 因为发送队列已满或连接断开而丢弃的消息数量 */
+	public long getQueueDropped() {
+		return queue.dropped();
+	}
+
+	/** 重新连接的次数，不包括第一次连接 */
+	public int getReconnectCount() {
+		return reconnectCount;
+	}
+
+	@Override
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	@Override
+	public long getConnectLatency() {
+		return TimeUnit.NANOSECONDS.toMillis(connectLatency);
+	}
+
+	/** 用migrate()替换连接的次数，包括setReconnectOverlap()时的定时重连 */
+	public int getMigrateCount() {
+		return migrateCount;
+	}
+
+	/** 新旧连接重叠期间被判定为重复而没有分发的帧数量 */
+	public long getDuplicateFrames() {
+		return duplicateFrames;
+	}
+
+	/** TLS握手次数 */
+	public int getHandshakeCount() {
+		return handshakeCount;
+	}
+
+	/** 恢复了已有会话、没有进行完整握手的TLS握手次数 */
+	public int getResumedCount() {
+		return resumedCount;
+	}
+
+	/** 最后一次TLS握手耗费的毫秒数 */
+	public long getHandshakeTime() {
+		return TimeUnit.NANOSECONDS.toMillis(handshakeTime);
+	}
+
+	/** 已经接收、等待execSvc处理的帧数量。没有设置setInboundWaterMarks()时为0 */
+	public int getInflightFrames() {
+		WebSocketInboundLimiter limiter = this.limiter;
+		return limiter == null ? 0 : limiter.inflight();
+	}
+
+	/** 因为等待处理的帧太多而暂停读取的次数 */
+	public long getReadPauseCount() {
+		WebSocketInboundLimiter limiter = this.limiter;
+		return limiter == null ? 0 : limiter.pauseCount();
+	}
+
+	/** 当前连接收到的压缩后数据字节数。没有设置压缩时为0 */
+	public long getCompressedBytesReceived() {
+		WebSocketByteCounter counter = compressedBytes;
+		return counter == null ? 0 : counter.received();
+	}
+
+	/** 当前连接收到的解压后数据字节数。没有设置压缩时为0 */
+	public long getUncompressedBytesReceived() {
+		WebSocketByteCounter counter = uncompressedBytes;
+		return counter == null ? 0 : counter.received();
+	}
+
+	/** 当前连接发送的压缩后数据字节数。没有设置压缩时为0 */
+	public long getCompressedBytesSent() {
+		WebSocketByteCounter counter = compressedBytes;
+		return counter == null ? 0 : counter.sent();
+	}
+
+	/** 当前连接发送的压缩前数据字节数。没有设置压缩时为0 */
+	public long getUncompressedBytesSent() {
+		WebSocketByteCounter counter = uncompressedBytes;
+		return counter == null ? 0 : counter.sent();
 	}
 
 	/**
@@ -130,6 +303,11 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 	protected WebSocketClient(long requestInterval, WebSocketClientBuilder<T, V> builder) {
 		this.requestInterval = requestInterval;
 		this.builder = builder;
+		List<TokenBucket> limits = new ArrayList<>(builder.rateLimits);
+		if (requestInterval > 0)
+			limits.add(new TokenBucket(1, TimeUnit.MILLISECONDS.toNanos(requestInterval), 1));
+		queue = new WebSocketSendQueue(limits, builder.maxQueueSize, builder.queueOverflow, builder.flushMessages,
+				builder.flushBytes, scheduleService, () -> channel);
 	}
 
 	public WebSocketClientBuilder<T, V> getBuilder() {
@@ -145,6 +323,14 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 
 	/** 断开连接。如果受监管，随后会被自动重连 */
 	public synchronized void disconnect() {
+		Channel r = replacing;
+		if (r != null) {
+			abandoned.add(r);
+			replacing = null;
+			dedup = null;
+			r.close();
+		}
+
 		if (channel == null)
 			return;
 
@@ -174,18 +360,62 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 	 */
 	@Override
 	public synchronized boolean open(String localIp) throws Exception {
+		return connect(localIp, false);
+	}
+
+	/**
+	 * 先用localIp建立新连接，websocket握手成功、运行onConnected，新连接收到第一个帧后用新连接替换原连接，再关闭原连接，
+	 * 期间原连接继续接收数据。新连接失败或者超时没有收到帧时保留原连接。没有连接时与open()相同
+	 * 
+	 * onConnected运行时sendMessage()仍然发送到原连接，新连接上的订阅等消息要通过onConnected的Channel参数发送
+	 */
+	@Override
+	public synchronized boolean migrate(String localIp) throws Exception {
+		if (!connected)
+			return open(localIp);
+		if (replacing != null) {
+			logger.info("[" + builder.key + "] 已经在迁移中");
+			return false;
+		}
+		return connect(localIp, true);
+	}
+
+	/**
+	 * @param overlap 为true时保留原连接，新连接握手成功后再替换
+	 */
+	private boolean connect(String localIp, boolean overlap) throws Exception {
 		if (connecting) {
 			logger.info("[" + builder.key + "] 已经在连接中");
 			return false;
 		}
 
-		this.localIp = localIp;
+		if (!overlap) { // 迁移时在切换连接后才使用新的localIp，迁移的次数只计入migrateCount
+			this.localIp = localIp;
 
-		if (channel != null)
-			disconnect();
+			if (channel != null || replacing != null)
+				disconnect();
+
+			if (connectedTime > 0) {
+				reconnectCount++;
+				Jfr.webSocketReconnect(builder.key, builder.uri, disconnectTime);
+			}
+		}
+		long openTime = System.nanoTime();
 
 		connecting = true;
-		connected = false;
+		if (!overlap)
+			connected = false;
+
+		if (!builder.orderedDispatch || builder.execSvc == null)
+			serial = null;
+		else if (serial == null || serial.getExecutor() != builder.execSvc)
+			serial = new SerialExecutor(builder.execSvc, builder.dispatchBatchSize);
+
+		if (builder.inboundHighWaterMark == 0 || builder.execSvc == null)
+			limiter = null;
+		else if (limiter == null || limiter.lowWaterMark != builder.inboundLowWaterMark
+				|| limiter.highWaterMark != builder.inboundHighWaterMark)
+			limiter = new WebSocketInboundLimiter(builder.inboundLowWaterMark, builder.inboundHighWaterMark);
 
 		if (builder.starting != null)
 			builder.starting.run();
@@ -208,16 +438,33 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 		}
 		final SslContext sslCtx;
 		if ("wss".equalsIgnoreCase(builder.uri.getScheme())) {
-			sslCtx = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+			sslCtx = builder.sslContext == null ? getDefaultSslContext() : builder.sslContext;
 		} else {
 			sslCtx = null;
 		}
 
+		final WebSocketByteCounter compressed = builder.compression ? new WebSocketByteCounter() : null;
+		final WebSocketByteCounter uncompressed = builder.compression ? new WebSocketByteCounter() : null;
+		if (!overlap) {
+			compressedBytes = compressed;
+			uncompressedBytes = uncompressed;
+		}
+
 		@SuppressWarnings("unchecked")
 		final WebSocketClientHandler<V> handler = new WebSocketClientHandler<>(builder.key, builder.data,
-				WebSocketClientHandshakerFactory.newHandshaker(builder.uri, WebSocketVersion.V13, null, false,
-						new DefaultHttpHeaders(), 1000 * 1024),
+				WebSocketClientHandshakerFactory.newHandshaker(builder.uri, WebSocketVersion.V13, null, builder.compression,
+						new DefaultHttpHeaders(), builder.maxFramePayloadLength),
+				builder.fragmentMode == WebSocketClientBuilder.FragmentMode.STREAM,
 				(channel, data) -> {
+					Jfr.webSocketConnect(builder.key, builder.uri, localIp, openTime, null);
+					connectLatency = System.nanoTime() - openTime;
+					if (overlap && channel == replacing) { // 等新连接收到第一个帧时切换。在onConnected重新订阅之前开始记录原连接的帧
+						dedup = builder.overlapDedupWindow > 0
+								? new WebSocketFrameDeduplicator(builder.overlapDedupWindow,
+										(Function<WebSocketFrame, ?>) builder.overlapDedupKey)
+								: null;
+						replacingReady = true;
+					}
 					connectedLock.lock();
 					try {
 						if (builder.connectedHandler == null)
@@ -226,12 +473,14 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 						if (builder.execSvc == null)
 							builder.connectedHandler.accept(channel, data);
 						else
-							builder.execSvc.submit(() -> {
+							execute(() -> {
 								builder.connectedHandler.accept(channel, data);
 							});
 					} finally {
 						connected = true;
+						failureCount = 0;
 						connectedLock.unlock();
+						notifyState();
 					}
 				}, (channel, frame, data) -> {
 					activeTimestamp = System.currentTimeMillis();
@@ -239,17 +488,26 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 					if (builder.frameHandler == null)
 						return;
 
+					if ((replacing != null || retiring != null || dedup != null || !abandoned.isEmpty())
+							&& !overlapAccept(channel, frame, localIp, compressed, uncompressed))
+						return;
+
 					if (builder.execSvc == null)
 						builder.frameHandler.accept(channel, (T) frame, data);
 					else {
 						// 保留frame对象，使其可以在execSvc线程中访问
 						frame.retain();
-						builder.execSvc.submit(() -> {
+						WebSocketInboundLimiter limiter = this.limiter;
+						if (limiter != null)
+							limiter.acquire(channel);
+						execute(() -> {
 							try {
 								builder.frameHandler.accept(channel, (T) frame, data);
 							} finally {
 								// 释放frame对象
 								frame.release();
+								if (limiter != null)
+									limiter.release();
 							}
 						});
 					}
@@ -265,6 +523,16 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 					pipeline.addLast(sslCtx.newHandler(ch.alloc(), host, port));
 				pipeline.addLast(new HttpClientCodec());
 				pipeline.addLast(new HttpObjectAggregator(65535));
+				if (compressed != null) {
+					// 协商成功后压缩和解压的handler加在WebSocketClientExtensionHandler之后，位于两个计数器之间
+					pipeline.addLast(compressed);
+					pipeline.addLast(new WebSocketClientExtensionHandler(new PerMessageDeflateClientExtensionHandshaker(
+							builder.compressionLevel, builder.allowClientWindowBits, builder.serverWindowBits,
+							builder.allowClientNoContext, builder.serverNoContext)));
+					pipeline.addLast(uncompressed);
+				}
+				if (builder.fragmentMode == WebSocketClientBuilder.FragmentMode.AGGREGATE)
+					pipeline.addLast(new WebSocketFrameAggregator(builder.maxMessageSize));
 				pipeline.addLast(handler);
 			}
 		});
@@ -285,33 +553,79 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 					connecting = false;
 
 					logger.info(theIp + "[" + builder.key + "] 建立连接失败");
+					Jfr.webSocketConnect(builder.key, builder.uri, localIp, openTime, future.cause());
 
+					if (overlap) { // 保留原连接
+						migrateRetryTime = System.currentTimeMillis() + MIGRATE_TIMEOUT;
+						notifyState();
+						return;
+					}
+
+					failureCount++;
 					if (builder.connectError != null && !builder.connectError.apply(future.cause(), builder.data))
 						beMonitored = false;
+					notifyState();
 				} else {
-					connectedTime = heartBeatTime = activeTimestamp = System.currentTimeMillis();
-
 					logger.info(theIp + "[" + builder.key + "] 建立连接成功");
 
+					Channel theChannel = future.channel();
+					if (overlap) {
+						replacingReady = false;
+						replacing = theChannel;
+						scheduleService.schedule(() -> {
+							if (replacing != theChannel)
+								return;
+							// 握手没有成功，或者新连接没有收到帧（例如没有订阅成功），不能确认新连接可用，保留原连接
+							logger.info(theIp + "[" + builder.key + "] 迁移超时"
+									+ (replacingReady ? "，新连接没有收到数据" : ""));
+							theChannel.close();
+						}, MIGRATE_TIMEOUT, TimeUnit.MILLISECONDS);
+					} else {
+						connectedTime = heartBeatTime = activeTimestamp = System.currentTimeMillis();
+						channel = theChannel;
+					}
+
+					SslHandler ssl = theChannel.pipeline().get(SslHandler.class);
+					if (ssl != null)
+						watchHandshake(ssl);
+
 					// { 设置中断监听
-					Channel theChannel = channel = future.channel();
-					channel.closeFuture().addListener(new ChannelFutureListener() {
+					theChannel.closeFuture().addListener(new ChannelFutureListener() {
 						@Override
 						public void operationComplete(ChannelFuture future) throws Exception {
+							if (abandoned.remove(theChannel)) {
+								if (theChannel == retiring)
+									retiring = null;
+								logger.info(theIp + "[" + builder.key + "] 不再使用的连接已关闭");
+								return;
+							}
+							if (theChannel == replacing) {
+								replacing = null;
+								dedup = null;
+								migrateRetryTime = System.currentTimeMillis() + MIGRATE_TIMEOUT;
+								logger.info(theIp + "[" + builder.key + "] 迁移失败，保留原连接");
+								notifyState();
+								return;
+							}
+
 							disconnectTime = System.currentTimeMillis();
 
 							logger.info(theIp + "[" + builder.key + "] 连接中断");
+							Jfr.webSocketDisconnect(builder.key, builder.uri, connectedTime);
 
 							if (channel == theChannel) {
 								channel = null;
+								if (!connected) // websocket握手没有成功
+									failureCount++;
 								connected = false;
 							}
+							notifyState();
 
 							if (builder.disconnected != null)
 								if (builder.execSvc == null)
 									builder.disconnected.accept(builder.data);
 								else
-									builder.execSvc.submit(() -> builder.disconnected.accept(builder.data));
+									execute(() -> builder.disconnected.accept(builder.data));
 						}
 					});
 					// }
@@ -325,6 +639,142 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 
 	}
 
+	/**
+	 * 迁移期间决定是否分发frame：新连接收到第一个帧时切换，之后不再分发原连接的帧。
+	 * 
+	 * 设置了去重时，切换前记录原连接分发的帧，切换后丢弃新连接上与原连接分发过的相同的帧；原连接在关闭前收到的帧只要新连接没有分发过，
+	 * 仍然分发。新连接可能落后于原连接，原连接关闭后继续去重，直到记录都已匹配、新连接已经收到window个帧或超时
+	 */
+	private boolean overlapAccept(Channel ch, WebSocketFrame frame, String localIp, WebSocketByteCounter compressed,
+			WebSocketByteCounter uncompressed) {
+		synchronized (overlapLock) {
+			if (ch == replacing)
+				replace(ch, localIp, compressed, uncompressed);
+
+			WebSocketFrameDeduplicator dedup = this.dedup;
+			if (ch != channel) { // 原连接在切换后收到的帧
+				if (ch != retiring || dedup == null)
+					return false;
+				if (dedup.isDuplicateOld(frame)) {
+					duplicateFrames++;
+					return false;
+				}
+				return true;
+			}
+
+			if (dedup == null)
+				return true;
+			if (replacing != null) { // 切换前原连接的帧
+				dedup.recordOld(frame);
+				return true;
+			}
+
+			boolean duplicate = dedup.isDuplicateNew(frame, retiring != null);
+			if (dedup.done(retiring != null))
+				this.dedup = null;
+			if (duplicate) {
+				duplicateFrames++;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/** 迁移时新连接握手成功并收到第一个帧，替换原连接并关闭原连接 */
+	private void replace(Channel ch, String localIp, WebSocketByteCounter compressed,
+			WebSocketByteCounter uncompressed) {
+		Channel old;
+		synchronized (overlapLock) {
+			if (replacing != ch || !replacingReady)
+				return;
+
+			old = channel;
+			retiring = old;
+			if (old != null)
+				abandoned.add(old);
+			channel = ch;
+			replacing = null;
+			this.localIp = localIp;
+			compressedBytes = compressed;
+			uncompressedBytes = uncompressed;
+			connectedTime = heartBeatTime = activeTimestamp = System.currentTimeMillis();
+			migrateCount++;
+		}
+		notifyState();
+
+		WebSocketFrameDeduplicator d = dedup;
+		if (d != null)
+			scheduleService.schedule(() -> {
+				synchronized (overlapLock) {
+					if (dedup == d)
+						dedup = null;
+				}
+			}, MIGRATE_TIMEOUT, TimeUnit.MILLISECONDS);
+
+		if (old != null) {
+			old.writeAndFlush(new CloseWebSocketFrame());
+			scheduleService.schedule(() -> {
+				old.close();
+			}, 1, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * 记录TLS握手耗时。TCP连接建立后SslHandler才开始握手；恢复的会话创建时间早于这次握手开始的时间
+	 */
+	private void watchHandshake(SslHandler ssl) {
+		long start = System.nanoTime();
+		long startMillis = System.currentTimeMillis();
+		ssl.handshakeFuture().addListener(f -> {
+			long time = System.nanoTime() - start;
+			boolean resumed = false;
+			if (f.isSuccess()) {
+				SSLSession session = ssl.engine().getSession();
+				resumed = session != null && session.getCreationTime() < startMillis;
+				handshakeTime = time;
+				handshakeCount++;
+				if (resumed)
+					resumedCount++;
+			}
+			Jfr.webSocketTlsHandshake(builder.key, builder.uri, resumed, start, f.cause());
+		});
+	}
+
+	/** 在execSvc中执行回调 */
+	private void execute(Runnable task) {
+		SerialExecutor serial = this.serial;
+		if (serial != null)
+			serial.execute(task);
+		else
+			builder.execSvc.submit(task);
+	}
+
+	private void notifyState() {
+		Runnable listener = stateListener;
+		if (listener != null)
+			listener.run();
+	}
+
+	@Override
+	public boolean setStateListener(Runnable listener) {
+		stateListener = listener;
+		return true;
+	}
+
+	@Override
+	public long getDeadline() {
+		if (!connected)
+			return 0;
+
+		long deadline = Long.MAX_VALUE;
+		if (builder.maxInactiveTime > 0)
+			deadline = activeTimestamp + builder.maxInactiveTime;
+		if (builder.reconnectInterval > 0 && replacing == null) // 迁移中切换连接时会通知
+			deadline = Math.min(deadline,
+					Math.max(connectedTime + builder.reconnectInterval, builder.reconnectOverlap ? migrateRetryTime : 0));
+		return deadline;
+	}
+
 	public boolean reconnect() throws Exception {
 		return open(localIp);
 	}
@@ -334,6 +784,7 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 		return channel != null;
 	}
 
+	@Override
 	public boolean isConnected() {
 		return connected;
 	}
@@ -367,7 +818,7 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 			if (builder.execSvc == null)
 				builder.heartBeat.accept(channel, builder.data);
 			else
-				builder.execSvc.submit(() -> {
+				execute(() -> {
 					builder.heartBeat.accept(channel, builder.data);
 				});
 
@@ -402,9 +853,21 @@ public class WebSocketClient<T extends WebSocketFrame, V> implements WebSocketCl
 
 	@Override
 	public boolean disconnectIfReconnect() {
-		if (!connected || builder.reconnectInterval == 0
-				|| System.currentTimeMillis() - connectedTime < builder.reconnectInterval)
+		long now = System.currentTimeMillis();
+		if (!connected || builder.reconnectInterval == 0 || now - connectedTime < builder.reconnectInterval)
+			return false;
+
+		if (builder.reconnectOverlap) { // 先建立新连接，不断开原连接
+			if (replacing == null && !connecting && now >= migrateRetryTime)
+				try {
+					migrate(localIp);
+				} catch (Exception e) {
+					logger.error("[" + builder.key + "] 定时重连失败", e);
+					migrateRetryTime = now + MIGRATE_TIMEOUT;
+				}
 			return false;
+		}
+
 		disconnect();
 		return true;
 	}
@@ -1,15 +1,23 @@
 package com.aggrepoint.utils.ws;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.aggrepoint.utils.TriConsumer;
+import com.aggrepoint.utils.thread.SerialExecutor;
+import com.aggrepoint.utils.ws.codec.WebSocketCodec;
+import com.aggrepoint.utils.ws.codec.WebSocketCodecs;
 
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.ssl.SslContext;
 
 /**
  * <pre>
@@ -18,12 +26,41 @@ import io.netty.handler.codec.http.websocketx.WebSocketFrame;
  * </pre>
  * 
  * @author jiangmingyang
- *
+ * 
  * @param <T>
  * @param <V>
  */
 public class WebSocketClientBuilder<T extends WebSocketFrame, V> {
 	public static final long DEFAULT_INACTIVE_TIME = 60 * 1000;
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 65536;
+	public static final int DEFAULT_MAX_FRAME_PAYLOAD_LENGTH = 1000 * 1024;
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+	/** 服务器把一个消息分成多个帧发送时的处理方式 */
+	public enum FragmentMode {
+		/** 每个帧单独交给frameHandler，丢弃ContinuationWebSocketFrame */
+		NONE,
+		/** 收齐所有分片后组合为一个帧交给frameHandler。分片的内容不复制，用CompositeByteBuf组合 */
+		AGGREGATE,
+		/**
+		 * 每个分片到达时交给frameHandler，后续分片为ContinuationWebSocketFrame，用isFinalFragment()判断消息是否结束。
+		 * 消息不需要完整地保存在内存中，frameHandler的帧类型T需要为WebSocketFrame
+		 */
+		STREAM
+	}
+
+	/** 限速发送队列已满时的处理方式 */
+	public enum QueueOverflow {
+		/**
+		 * 默认方式。sendMessage()阻塞到队列有空位。在event loop线程中调用时（例如没有设置execSvc时在回调中发送）不能阻塞，
+		 * 改为抛出WebSocketQueueFullException
+		 */
+		BLOCK,
+		/** 丢弃队列中最早的消息 */
+		DROP_OLDEST,
+		/** sendMessage()抛出WebSocketQueueFullException */
+		FAIL
+	}
 
 	URI uri;
 
@@ -33,6 +70,15 @@ public class WebSocketClientBuilder<T extends WebSocketFrame, V> {
 	/** 负责执行回调函数的ExecutorService */
 	ExecutorService execSvc;
 
+	/** 是否在execSvc中按顺序执行同一个客户端的回调 */
+	boolean orderedDispatch;
+	/** 按顺序执行时，每次占用execSvc线程最多连续执行的回调数 */
+	int dispatchBatchSize = SerialExecutor.DEFAULT_BATCH_SIZE;
+
+	/** 等待execSvc处理的帧达到inboundHighWaterMark时暂停读取，降到inboundLowWaterMark时恢复，为0表示不限制 */
+	int inboundHighWaterMark;
+	int inboundLowWaterMark;
+
 	/** 准备启动运行回调。可以在启动运行前调整Builder */
 	Runnable starting;
 	/** 连接成功回调 */
@@ -53,8 +99,41 @@ public class WebSocketClientBuilder<T extends WebSocketFrame, V> {
 	long maxInactiveTime = DEFAULT_INACTIVE_TIME;
 	/** 发送请求消息的时间间隔 */
 	long requestInterval;
+	/** 令牌桶限速，与requestInterval同时生效 */
+	List<TokenBucket> rateLimits = new ArrayList<>();
+	/** 限速发送队列中最多等待的消息数 */
+	int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+	QueueOverflow queueOverflow = QueueOverflow.BLOCK;
+	/** 合并flush时每批最多的消息数，为0表示每个消息单独flush */
+	int flushMessages;
+	/** 合并flush时每批最多的字节数，为0表示不限制 */
+	int flushBytes;
+	/** 一个帧最大的数据长度 */
+	int maxFramePayloadLength = DEFAULT_MAX_FRAME_PAYLOAD_LENGTH;
+	FragmentMode fragmentMode = FragmentMode.NONE;
+	/** AGGREGATE模式下组合后的消息最大长度 */
+	int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
 	/** 重新建立连接时间间隔 */
 	long reconnectInterval = 0;
+	/** 定时重连时先建立新连接再关闭原连接 */
+	boolean reconnectOverlap;
+	/** 新旧连接重叠期间去重的帧数量，为0表示不去重 */
+	int overlapDedupWindow;
+	/** 去重时从帧中取得用于比较的键，为空时按内容比较 */
+	Function<? super T, ?> overlapDedupKey;
+	/** 是否协商permessage-deflate压缩 */
+	boolean compression;
+	int compressionLevel = 6;
+	/** 要求服务器使用的server_max_window_bits */
+	int serverWindowBits = 15;
+	/** 是否允许服务器指定client_max_window_bits */
+	boolean allowClientWindowBits;
+	/** 是否要求服务器不保留压缩上下文（server_no_context_takeover） */
+	boolean serverNoContext;
+	/** 是否允许服务器要求客户端不保留压缩上下文（client_no_context_takeover） */
+	boolean allowClientNoContext;
+	/** wss连接使用的SslContext，为空时使用WebSocketClient.getDefaultSslContext() */
+	SslContext sslContext;
 
 	/**
 	 * @param execSvc 如果不为空，则用其执行connectedHandler、frameHandler、heartBeat和disconnected。
@@ -73,6 +152,42 @@ public class WebSocketClientBuilder<T extends WebSocketFrame, V> {
 		return this;
 	}
 
+	/**
+	 * <pre>
+	 * 在execSvc中按接收顺序执行同一个客户端的回调，不同客户端的回调仍然并行执行。
+	 * 不设置时每个帧单独提交给execSvc，同一个连接的帧可能在不同线程中乱序处理
+	 * </pre>
+	 * 
+	 * @param batchSize 每次占用execSvc线程最多连续执行的回调数，之后把线程让给其他客户端
+	 */
+	public WebSocketClientBuilder<T, V> setOrderedDispatch(boolean ordered, int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize必须大于0");
+		this.orderedDispatch = ordered;
+		this.dispatchBatchSize = batchSize;
+		return this;
+	}
+
+	public WebSocketClientBuilder<T, V> setOrderedDispatch(boolean ordered) {
+		return setOrderedDispatch(ordered, SerialExecutor.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * <pre>
+	 * 设置了execSvc时，限制已经接收但frameHandler还没有处理完的帧数量。达到highWaterMark时暂停从socket读取，
+	 * 服务器的发送被TCP窗口阻挡，降到lowWaterMark时恢复读取。highWaterMark为0表示不限制
+	 * 
+	 * 需要按订阅者的处理能力接收帧时，可以使用WebSocketFramePublisher作为frameHandler
+	 * </pre>
+	 */
+	public WebSocketClientBuilder<T, V> setInboundWaterMarks(int lowWaterMark, int highWaterMark) {
+		if (highWaterMark != 0 && (lowWaterMark < 0 || highWaterMark <= lowWaterMark))
+			throw new IllegalArgumentException("必须满足0 <= lowWaterMark < highWaterMark");
+		this.inboundLowWaterMark = lowWaterMark;
+		this.inboundHighWaterMark = highWaterMark;
+		return this;
+	}
+
 	public WebSocketClientBuilder<T, V> setKey(String key) {
 		this.key = key;
 		return this;
@@ -106,16 +221,172 @@ public class WebSocketClientBuilder<T extends WebSocketFrame, V> {
 		return this;
 	}
 
+	/**
+	 * <pre>
+	 * 令牌桶限速：每period时间补充permits个令牌，最多积累burst个，发送一个消息消耗一个令牌。
+	 * 可以多次调用设置多个时间窗口，例如每秒10个、突发20个，同时每分钟300个，发送时需要同时满足
+	 * 
+	 * requestInterval相当于每requestInterval毫秒1个令牌、burst为1的令牌桶
+	 * </pre>
+	 */
+	public WebSocketClientBuilder<T, V> addRateLimit(int permits, long period, TimeUnit unit, int burst) {
+		rateLimits.add(new TokenBucket(permits, unit.toNanos(period), burst));
+		return this;
+	}
+
+	/**
+	 * 令牌桶限速，burst与permits相同
+	 */
+	public WebSocketClientBuilder<T, V> addRateLimit(int permits, long period, TimeUnit unit) {
+		return addRateLimit(permits, period, unit, permits);
+	}
+
+	/**
+	 * 设置了requestInterval或令牌桶限速时，等待发送的消息数量上限和达到上限时的处理方式
+	 * 
+	 * @param maxQueueSize 必须大于0
+	 */
+	public WebSocketClientBuilder<T, V> setMaxQueueSize(int maxQueueSize, QueueOverflow overflow) {
+		if (maxQueueSize <= 0)
+			throw new IllegalArgumentException("maxQueueSize必须大于0: " + maxQueueSize);
+
+		this.maxQueueSize = maxQueueSize;
+		this.queueOverflow = overflow;
+		return this;
+	}
+
+	/**
+	 * 合并flush。sendMessage()不在调用线程中写出，而是交给event loop，每maxMessages个消息或maxBytes字节flush一次，
+	 * 减少系统调用。maxMessages为0表示不合并
+	 */
+	public WebSocketClientBuilder<T, V> setFlushConsolidation(int maxMessages, int maxBytes) {
+		this.flushMessages = maxMessages;
+		this.flushBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * 一个帧最大的数据长度，超过时关闭连接。分片发送的消息中每个分片分别计算
+	 */
+	public WebSocketClientBuilder<T, V> setMaxFramePayloadLength(int maxFramePayloadLength) {
+		this.maxFramePayloadLength = maxFramePayloadLength;
+		return this;
+	}
+
+	/**
+	 * @param maxMessageSize AGGREGATE模式下组合后的消息最大长度，超过时关闭连接
+	 */
+	public WebSocketClientBuilder<T, V> setFragmentMode(FragmentMode mode, int maxMessageSize) {
+		this.fragmentMode = mode;
+		this.maxMessageSize = maxMessageSize;
+		return this;
+	}
+
+	public WebSocketClientBuilder<T, V> setFragmentMode(FragmentMode mode) {
+		return setFragmentMode(mode, DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
 	public WebSocketClientBuilder<T, V> setReconnectInterval(long t) {
 		reconnectInterval = t;
 		return this;
 	}
 
+	/**
+	 * <pre>
+	 * 定时重连时不先断开连接：建立新连接并握手，运行onConnected（例如重新订阅），新连接收到第一个帧后改为分发新连接的帧，
+	 * 再关闭原连接。新连接失败或者在超时时间内没有收到帧时放弃迁移，保留原连接，稍后再试
+	 * 
+	 * 注意：切换前WebSocketClient的当前连接仍然是原连接，onConnected中调用sendMessage()会发送到原连接，
+	 * 新连接收不到订阅而迁移超时。onConnected中要用参数中的Channel发送订阅等消息，例如WebSocketCodecs.write()
+	 * 
+	 * 切换前原连接的帧照常分发，不去重时切换后不再分发原连接的帧。dedupWindow大于0时去重：切换后新连接上与原连接
+	 * 分发过的键相同的帧不再分发，原连接关闭前收到的帧只要新连接没有分发过仍然分发，切换时不丢失数据
+	 * 
+	 * 注意：dedupKey为空时按内容去重，只适用于每个帧内容都不同的数据流。心跳、没有变化的行情快照等内容重复的帧
+	 * 如果在窗口内被原连接分发过，新连接上正常到达的同样内容会被丢弃。这类数据流应当用dedupKey返回消息中的序号等唯一标识
+	 * 
+	 * 从新连接握手成功时开始记录原连接分发的帧，服务器在订阅时重发的更早的数据不能去重
+	 * </pre>
+	 * 
+	 * @param dedupWindow 去重记录的帧数量，0表示不去重
+	 * @param dedupKey    从帧中取得去重的键，键的equals和hashCode决定是否重复。为空时按内容去重，返回null的帧不去重
+	 */
+	public WebSocketClientBuilder<T, V> setReconnectOverlap(boolean overlap, int dedupWindow,
+			Function<? super T, ?> dedupKey) {
+		if (dedupWindow < 0)
+			throw new IllegalArgumentException("dedupWindow不能小于0");
+		reconnectOverlap = overlap;
+		overlapDedupWindow = dedupWindow;
+		overlapDedupKey = dedupKey;
+		return this;
+	}
+
+	/** 按内容去重，只适用于每个帧内容都不同的数据流，见setReconnectOverlap(boolean, int, Function) */
+	public WebSocketClientBuilder<T, V> setReconnectOverlap(boolean overlap, int dedupWindow) {
+		return setReconnectOverlap(overlap, dedupWindow, null);
+	}
+
+	public WebSocketClientBuilder<T, V> setReconnectOverlap(boolean overlap) {
+		return setReconnectOverlap(overlap, 0);
+	}
+
+	/**
+	 * <pre>
+	 * 在握手时请求permessage-deflate压缩，服务器不支持时不压缩
+	 * 
+	 * 窗口越小服务器为每个连接占用的内存越少，压缩率也越低。不保留上下文时每个消息单独压缩，节省内存但压缩率明显下降
+	 * </pre>
+	 * 
+	 * @param compressionLevel      客户端发送消息的压缩级别，0-9
+	 * @param serverWindowBits      要求服务器使用的窗口位数，8-15
+	 * @param allowClientWindowBits 是否允许服务器指定客户端的窗口位数。窗口位数不是15时需要jzlib
+	 * @param serverNoContext       是否要求服务器不保留压缩上下文
+	 * @param allowClientNoContext  是否允许服务器要求客户端不保留压缩上下文
+	 */
+	public WebSocketClientBuilder<T, V> setCompression(int compressionLevel, int serverWindowBits,
+			boolean allowClientWindowBits, boolean serverNoContext, boolean allowClientNoContext) {
+		if (compressionLevel < 0 || compressionLevel > 9)
+			throw new IllegalArgumentException("compressionLevel必须在0和9之间: " + compressionLevel);
+		if (serverWindowBits < 8 || serverWindowBits > 15)
+			throw new IllegalArgumentException("serverWindowBits必须在8和15之间: " + serverWindowBits);
+
+		this.compression = true;
+		this.compressionLevel = compressionLevel;
+		this.serverWindowBits = serverWindowBits;
+		this.allowClientWindowBits = allowClientWindowBits;
+		this.serverNoContext = serverNoContext;
+		this.allowClientNoContext = allowClientNoContext;
+		return this;
+	}
+
+	/**
+	 * 按默认参数请求permessage-deflate压缩：压缩级别6，窗口位数15，保留压缩上下文
+	 */
+	public WebSocketClientBuilder<T, V> setCompression(boolean compression) {
+		this.compression = compression;
+		return this;
+	}
+
+	/**
+	 * <pre>
+	 * wss连接使用的SslContext，可以用WebSocketClient.createSslContext()创建。
+	 * 同一个SslContext的连接共享TLS会话缓存，重新连接时可以恢复会话，省去完整握手
+	 * </pre>
+	 */
+	public WebSocketClientBuilder<T, V> setSslContext(SslContext sslContext) {
+		this.sslContext = sslContext;
+		return this;
+	}
+
 	public WebSocketClientBuilder<T, V> onStarting(Runnable v) {
 		starting = v;
 		return this;
 	}
 
+	/**
+	 * websocket握手成功后运行，参数为新建立的连接。设置了setReconnectOverlap()时，迁移中运行的onConnected要用这个Channel
+	 * 发送订阅等消息，WebSocketClient.sendMessage()在切换前仍然发送到原连接
+	 */
 	public WebSocketClientBuilder<T, V> onConnected(BiConsumer<Channel, V> v) {
 		connectedHandler = v;
 		return this;
@@ -126,6 +397,25 @@ public class WebSocketClientBuilder<T extends WebSocketFrame, V> {
 		return this;
 	}
 
+	/**
+	 * <pre>
+	 * 用codec把接收到的帧直接解码为消息，代替onFrame()。handler返回后调用codec.release()回收消息
+	 * 
+	 * 每个帧需要包含完整的消息，服务器分片发送时应使用FragmentMode.AGGREGATE
+	 * </pre>
+	 */
+	public <M> WebSocketClientBuilder<T, V> onMessage(WebSocketCodec<M> codec, TriConsumer<Channel, M, V> handler) {
+		frameHandler = (channel, frame, data) -> {
+			M msg = WebSocketCodecs.decode(codec, frame);
+			try {
+				handler.accept(channel, msg, data);
+			} finally {
+				codec.release(msg);
+			}
+		};
+		return this;
+	}
+
 	public WebSocketClientBuilder<T, V> onHeartBeat(BiConsumer<Channel, V> v) {
 		heartBeat = v;
 		return this;
@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.aggrepoint.utils.TriConsumer;
+import com.aggrepoint.utils.jfr.Jfr;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -15,6 +16,7 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
@@ -33,14 +35,25 @@ public class WebSocketClientHandler<V> extends SimpleChannelInboundHandler<Objec
 	private BiConsumer<Channel, V> connected;
 	private TriConsumer<Channel, WebSocketFrame, V> processor;
 	private V data;
+	/** 是否把ContinuationWebSocketFrame交给processor */
+	private boolean streamFragments;
 
 	public WebSocketClientHandler(String id, V data, WebSocketClientHandshaker handshaker,
 			BiConsumer<Channel, V> connected, TriConsumer<Channel, WebSocketFrame, V> processor) {
+		this(id, data, handshaker, false, connected, processor);
+	}
+
+	/**
+	 * @param streamFragments 为true时分片消息的后续分片也交给processor，否则丢弃
+	 */
+	public WebSocketClientHandler(String id, V data, WebSocketClientHandshaker handshaker, boolean streamFragments,
+			BiConsumer<Channel, V> connected, TriConsumer<Channel, WebSocketFrame, V> processor) {
 		this.id = id;
 		this.data = data;
 		this.connected = connected;
 		this.processor = processor;
 		this.handshaker = handshaker;
+		this.streamFragments = streamFragments;
 	}
 
 	public ChannelFuture handshakeFuture() {
@@ -77,9 +90,22 @@ public class WebSocketClientHandler<V> extends SimpleChannelInboundHandler<Objec
 		if (msg instanceof WebSocketFrame) {
 			final WebSocketFrame frame = (WebSocketFrame) msg;
 			if (frame instanceof TextWebSocketFrame) {
+				long start = System.nanoTime();
+				int size = frame.content().readableBytes();
 				processor.accept(ch, (TextWebSocketFrame) frame, data);
+				Jfr.webSocketFrame(id, "text", size, start);
 			} else if (frame instanceof BinaryWebSocketFrame) {
+				long start = System.nanoTime();
+				int size = frame.content().readableBytes();
 				processor.accept(ch, (BinaryWebSocketFrame) frame, data);
+				Jfr.webSocketFrame(id, "binary", size, start);
+			} else if (frame instanceof ContinuationWebSocketFrame) {
+				if (streamFragments) {
+					long start = System.nanoTime();
+					int size = frame.content().readableBytes();
+					processor.accept(ch, frame, data);
+					Jfr.webSocketFrame(id, "continuation", size, start);
+				}
 			} else if (frame instanceof PongWebSocketFrame) {
 			} else if (frame instanceof CloseWebSocketFrame)
 				ch.close();
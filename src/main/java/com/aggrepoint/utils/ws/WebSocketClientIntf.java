@@ -17,6 +17,28 @@ public interface WebSocketClientIntf {
 	/** 返回true表示已经物理连接建立成功 */
 	boolean isChannelConnected();
 
+	/** 返回true表示websocket握手已经成功 */
+	default boolean isConnected() {
+		return isChannelConnected();
+	}
+
+	/** 连续建立连接失败的次数，握手成功后清零。监控器据此退避重连 */
+	default int getFailureCount() {
+		return 0;
+	}
+
+	/** 最后一次从开始建立连接到websocket握手成功的毫秒数，-1表示不支持 */
+	default long getConnectLatency() {
+		return -1;
+	}
+
+	/**
+	 * 在localIp上建立新连接，成功后替换原连接。返回false表示不支持或无法迁移，下一次重新建立连接时再使用新的IP
+	 */
+	default boolean migrate(String localIp) throws Exception {
+		return false;
+	}
+
 	/** 如果已经连接成功并且超过限时没有活动，断开连接，并返回true */
 	boolean disconnectIfInactive();
 
@@ -34,4 +56,18 @@ public interface WebSocketClientIntf {
 
 	/** 建立连接 */
 	boolean open(String localIp) throws Exception;
+
+	/**
+	 * 下一次因为不活跃或定时重连需要断开连接的时间（毫秒），Long.MAX_VALUE表示没有，0表示无法确定，需要定期检查
+	 */
+	default long getDeadline() {
+		return 0;
+	}
+
+	/**
+	 * 设置连接建立、建立失败或断开时调用的监听器。返回false表示不支持，监控器需要定期检查连接状态
+	 */
+	default boolean setStateListener(Runnable listener) {
+		return false;
+	}
 }
@@ -2,44 +2,299 @@ package com.aggrepoint.utils.ws;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aggrepoint.utils.thread.VirtualThreads;
 
 /**
  * 支持多个本地IP地址，每个IP地址建立一个WebSocketClientMonitor对象。将要启动和维持的
- * WebSocketClient平均分批给各个IP地址对应的WebSocketClientMonitor。
+ * WebSocketClient按各个IP地址的健康状况分配给对应的WebSocketClientMonitor，健康度越高分到的连接越多。
+ * 
+ * 定期按健康度重新计算每个IP地址应该承担的连接数量，把连接从不健康或过载的IP地址迁移到其他IP地址。
+ * 已经建立的连接先在新的IP地址上建立连接，握手成功后再关闭原连接。运行中可以增加或移除IP地址，
+ * 移除的IP地址在连接全部迁走后停止。
  * 
  * 如果只有一个IP地址，等同于直接使用WebSocketClientMonitorSingle。
  */
 public class WebSocketClientMonitorGroup implements WebSocketClientMonitor {
-	List<String> ips;
-	List<WebSocketClientMonitorSingle> monitors = new ArrayList<>();
+	private static final Logger logger = LoggerFactory.getLogger(WebSocketClientMonitorGroup.class);
+
+	public static final long DEFAULT_REBALANCE_INTERVAL = 30 * 1000;
+	public static final int DEFAULT_MAX_MIGRATIONS = 20;
+	/** 连接数量超过应承担数量的比例超过这个值才迁移，避免来回迁移 */
+	static final double REBALANCE_TOLERANCE = 0.2;
+
+	String name;
+	int connectInterval;
+	int heartBeatInterval;
+	int loopInterval;
+	List<WebSocketClientMonitorSingle> monitors = new CopyOnWriteArrayList<>();
+	/** 正在移除的IP地址对应的monitor */
+	Set<WebSocketClientMonitorSingle> draining = ConcurrentHashMap.newKeySet();
+	/** 重新分配的时间间隔，0表示不重新分配 */
+	long rebalanceInterval = DEFAULT_REBALANCE_INTERVAL;
+	/** 每次重新分配最多迁移的连接数量 */
+	int maxMigrations = DEFAULT_MAX_MIGRATIONS;
+	Thread rebalanceThread;
+	boolean stopped;
+
+	/** 是否调用过setReconnect()，运行中增加的IP地址也使用这些参数 */
+	boolean reconnect;
+	int reconnectConcurrency;
+	int connectsPerSecond;
+	int connectBurst;
+	long initialBackoff;
+	long maxBackoff;
 
 	public WebSocketClientMonitorGroup(String name, List<String> ips, int connectInterval, int heartBeatInterval,
 			int loopInterval) {
+		this.name = name;
+		this.connectInterval = connectInterval;
+		this.heartBeatInterval = heartBeatInterval;
+		this.loopInterval = loopInterval;
+
 		if (ips == null || ips.size() == 0)
 			monitors.add(
 					new WebSocketClientMonitorSingle(name, null, connectInterval, heartBeatInterval, loopInterval));
-		else {
-			this.ips = ips;
+		else
 			for (String ip : ips)
-				monitors.add(new WebSocketClientMonitorSingle(name + "@" + ip, ip, connectInterval, heartBeatInterval,
-						loopInterval));
+				monitors.add(createMonitor(ip));
+	}
+
+	WebSocketClientMonitorSingle createMonitor(String ip) {
+		WebSocketClientMonitorSingle monitor = new WebSocketClientMonitorSingle(name + "@" + ip, ip, connectInterval,
+				heartBeatInterval, loopInterval);
+		if (reconnect)
+			monitor.setReconnect(reconnectConcurrency, connectsPerSecond, connectBurst, initialBackoff, maxBackoff);
+		return monitor;
+	}
+
+	/**
+	 * 设置各个IP地址重连的并发数、速度和退避时间，需要在startClient()之前调用。之后用addIp()增加的IP地址使用同样的设置
+	 */
+	public synchronized WebSocketClientMonitorGroup setReconnect(int concurrency, int connectsPerSecond, int burst,
+			long initialBackoff, long maxBackoff) {
+		for (WebSocketClientMonitorSingle monitor : monitors)
+			monitor.setReconnect(concurrency, connectsPerSecond, burst, initialBackoff, maxBackoff);
+
+		reconnect = true;
+		reconnectConcurrency = concurrency;
+		this.connectsPerSecond = connectsPerSecond;
+		connectBurst = burst;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		return this;
+	}
+
+	/**
+	 * @param interval      重新分配的毫秒间隔，0表示不重新分配
+	 * @param maxMigrations 每次最多迁移的连接数量
+	 */
+	public WebSocketClientMonitorGroup setRebalance(long interval, int maxMigrations) {
+		if (interval < 0 || maxMigrations <= 0)
+			throw new IllegalArgumentException("interval不能小于0，maxMigrations必须大于0");
+		rebalanceInterval = interval;
+		this.maxMigrations = maxMigrations;
+		return this;
+	}
+
+	/** 按健康度折算后连接最少的monitor */
+	private WebSocketClientMonitorSingle select() {
+		WebSocketClientMonitorSingle monitor = null;
+		double min = Double.MAX_VALUE;
+		for (WebSocketClientMonitorSingle m : monitors) {
+			if (draining.contains(m))
+				continue;
+			int count = m.getClientCount();
+			double load = (count + 1) / score(m, count);
+			if (load < min) {
+				min = load;
+				monitor = m;
+			}
 		}
+		return monitor;
+	}
+
+	static double score(WebSocketClientMonitorSingle monitor, int count) {
+		WebSocketReconnector reconnector = monitor.getReconnector();
+		return reconnector == null ? 1 : reconnector.getHealth().score(count);
 	}
 
 	@Override
-	public WebSocketClientMonitor startClient(WebSocketClientIntf client) {
-		if (ips == null)
-			monitors.get(0).startClient(client);
-		else {
-			WebSocketClientMonitorSingle monitor = monitors.get(0);
-			for (int i = 1; i < monitors.size(); i++) {
-				WebSocketClientMonitorSingle m = monitors.get(i);
-				if (m.getClientCount() < monitor.getClientCount())
-					monitor = m;
+	public synchronized WebSocketClientMonitor startClient(WebSocketClientIntf client) {
+		select().startClient(client);
+		startRebalance();
+		return this;
+	}
+
+	private void startRebalance() {
+		if (rebalanceThread != null || rebalanceInterval == 0 || stopped)
+			return;
+
+		rebalanceThread = VirtualThreads.newThread("WebSocketClientMonitorGroup-" + name, () -> {
+			while (true) {
+				try {
+					Thread.sleep(rebalanceInterval);
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				try {
+					rebalance();
+				} catch (Exception e) {
+					logger.error(name + " 重新分配连接失败", e);
+				}
 			}
-			monitor.startClient(client);
+		});
+		rebalanceThread.setDaemon(true);
+		rebalanceThread.start();
+	}
+
+	/** 停止重新分配的线程和各个IP地址的monitor */
+	public synchronized void stop() {
+		stopped = true;
+		if (rebalanceThread != null) {
+			rebalanceThread.interrupt();
+			rebalanceThread = null;
 		}
+		for (WebSocketClientMonitorSingle m : monitors)
+			m.stop();
+	}
 
+	/**
+	 * 按健康度计算每个IP地址应该承担的连接数量，从超出较多的IP地址迁移连接到不足的IP地址，先迁移没有连接上的。
+	 * 返回迁移的连接数量
+	 */
+	public synchronized int rebalance() {
+		int total = 0;
+		double sum = 0;
+		for (WebSocketClientMonitorSingle m : monitors) {
+			int count = m.getClientCount();
+			total += count;
+			if (!draining.contains(m))
+				sum += score(m, count);
+		}
+
+		int moved = 0;
+		if (sum > 0)
+			for (WebSocketClientMonitorSingle from : monitors) {
+				int count = from.getClientCount();
+				double target = target(from, total, sum);
+				if (!draining.contains(from) && count <= target * (1 + REBALANCE_TOLERANCE) + 1)
+					continue;
+
+				// 正在移除的IP地址的连接全部迁走，其他IP地址只迁到差一个以上连接的IP地址
+				double min = draining.contains(from) ? -Double.MAX_VALUE : 1;
+				List<WebSocketClientIntf> clients = from.getClients();
+				clients.sort((a, b) -> Boolean.compare(a.isConnected(), b.isConnected()));
+				int surplus = count - (int) Math.ceil(target);
+				for (WebSocketClientIntf client : clients) {
+					if (surplus <= 0 || moved >= maxMigrations)
+						break;
+
+					WebSocketClientMonitorSingle to = null;
+					double deficit = -Double.MAX_VALUE;
+					for (WebSocketClientMonitorSingle m : monitors) {
+						if (m == from || draining.contains(m))
+							continue;
+						double d = target(m, total, sum) - m.getClientCount();
+						if (d >= min && d > deficit) {
+							deficit = d;
+							to = m;
+						}
+					}
+					if (to == null)
+						break;
+
+					migrate(client, from, to);
+					surplus--;
+					moved++;
+				}
+			}
+
+		for (WebSocketClientMonitorSingle m : draining)
+			if (m.getClientCount() == 0) {
+				m.stop();
+				monitors.remove(m);
+				draining.remove(m);
+				logger.info("{} 已经移除", m.name);
+			}
+
+		return moved;
+	}
+
+	/** monitor应该承担的连接数量 */
+	private double target(WebSocketClientMonitorSingle monitor, int total, double sum) {
+		if (draining.contains(monitor))
+			return 0;
+		return total * score(monitor, monitor.getClientCount()) / sum;
+	}
+
+	private void migrate(WebSocketClientIntf client, WebSocketClientMonitorSingle from,
+			WebSocketClientMonitorSingle to) {
+		from.remove(client);
+		to.startClient(client);
+
+		if (!client.isConnected()) {
+			logger.info("{}[{}] 迁移到{}", from.name, client.getKey(), to.name);
+			return;
+		}
+
+		try {
+			if (client.migrate(to.getBindIp()))
+				logger.info("{}[{}] 迁移到{}，建立新连接后关闭原连接", from.name, client.getKey(), to.name);
+			else
+				logger.info("{}[{}] 迁移到{}，重新连接时使用新的IP地址", from.name, client.getKey(), to.name);
+		} catch (Exception e) {
+			logger.error(from.name + "[" + client.getKey() + "] 迁移失败", e);
+		}
+	}
+
+	/** 增加本地IP地址，随后把其他IP地址的连接分配过来 */
+	public synchronized WebSocketClientMonitorGroup addIp(String ip) {
+		for (WebSocketClientMonitorSingle m : monitors)
+			if (ip.equals(m.getBindIp())) {
+				if (draining.remove(m))
+					logger.info("{} 不再移除", m.name);
+				return this;
+			}
+
+		monitors.add(createMonitor(ip));
+		logger.info("{} 增加IP地址{}", name, ip);
+		rebalance();
 		return this;
 	}
+
+	/** 移除本地IP地址，连接全部迁移到其他IP地址后停止。返回false表示没有其他可用的IP地址 */
+	public synchronized boolean removeIp(String ip) {
+		for (WebSocketClientMonitorSingle m : monitors)
+			if (ip.equals(m.getBindIp())) {
+				if (monitors.size() - draining.size() <= 1 && !draining.contains(m)) {
+					logger.info("{} 没有其他可用的IP地址，不能移除{}", name, ip);
+					return false;
+				}
+				draining.add(m);
+				logger.info("{} 移除IP地址{}", name, ip);
+				rebalance();
+				return true;
+			}
+		return false;
+	}
+
+	public List<String> getIps() {
+		List<String> ips = new ArrayList<>();
+		for (WebSocketClientMonitorSingle m : monitors)
+			if (m.getBindIp() != null && !draining.contains(m))
+				ips.add(m.getBindIp());
+		return ips;
+	}
+
+	public List<WebSocketClientMonitorSingle> getMonitors() {
+		return monitors;
+	}
 }
@@ -9,12 +9,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
+import com.aggrepoint.utils.thread.VirtualThreads;
+
 /**
  * <pre>
  * 启动一个线程，检查一组WebSocketClient的运行状态，如果有WebSocketClient被断开了，负责重新建立
  * 连接，如果WebSocketClient连接正常，则触发心跳方法。
  * 
- * 在建立连接的时候，可以在连接之间保持一定时间间隔，避免一瞬间建立大量的连接
+ * 在建立连接的时候，可以在连接之间保持一定时间间隔，避免一瞬间建立大量的连接。需要重连的WebSocketClient交给
+ * WebSocketReconnector并行建立连接，连续失败的WebSocketClient按指数退避重试，不阻塞检查
  * 
  * 如果连接被主动关停，将连接移出管理列表
  * 
@@ -36,6 +39,15 @@ public class WebSocketClientMonitorSingle implements WebSocketClientMonitor {
 	int heartBeatInterval;
 	/** 每轮检查之间的时间间隔 */
 	int checkInterval;
+	/** 并行建立连接的线程数 */
+	int reconnectConcurrency = WebSocketReconnector.DEFAULT_CONCURRENCY;
+	/** 每秒最多建立的连接数，0表示按connectInterval间隔建立连接 */
+	int connectsPerSecond;
+	int connectBurst;
+	long initialBackoff = WebSocketReconnector.DEFAULT_INITIAL_BACKOFF;
+	long maxBackoff = WebSocketReconnector.DEFAULT_MAX_BACKOFF;
+
+	WebSocketReconnector reconnector;
 
 	Thread monitorThread;
 	List<WebSocketClientIntf> clients = new ArrayList<>();
@@ -50,6 +62,43 @@ public class WebSocketClientMonitorSingle implements WebSocketClientMonitor {
 		this.checkInterval = checkInterval;
 	}
 
+	/**
+	 * 设置重连的并发数、速度和退避时间，需要在startClient()之前调用
+	 * 
+	 * @param concurrency       并行建立连接的线程数
+	 * @param connectsPerSecond 每秒最多建立的连接数，0表示按connectInterval间隔建立连接
+	 * @param burst             连续建立连接的最大数量
+	 * @param initialBackoff    第一次失败后最长等待的毫秒数
+	 * @param maxBackoff        退避等待的最长毫秒数
+	 */
+	public WebSocketClientMonitorSingle setReconnect(int concurrency, int connectsPerSecond, int burst,
+			long initialBackoff, long maxBackoff) {
+		if (concurrency <= 0 || connectsPerSecond < 0 || connectsPerSecond > 0 && burst <= 0 || initialBackoff < 0
+				|| maxBackoff < initialBackoff)
+			throw new IllegalArgumentException("重连参数不正确");
+
+		reconnectConcurrency = concurrency;
+		this.connectsPerSecond = connectsPerSecond;
+		connectBurst = burst;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		return this;
+	}
+
+	static WebSocketReconnector createReconnector(String name, String bindIp, int concurrency, int connectInterval,
+			int connectsPerSecond, int burst, long initialBackoff, long maxBackoff) {
+		if (connectsPerSecond > 0)
+			return new WebSocketReconnector(name, bindIp, concurrency, connectsPerSecond, burst, initialBackoff,
+					maxBackoff);
+		return new WebSocketReconnector(name, bindIp, concurrency,
+				connectInterval > 0 ? new TokenBucket(1, TimeUnit.MILLISECONDS.toNanos(connectInterval), 1) : null,
+				initialBackoff, maxBackoff);
+	}
+
+	public WebSocketReconnector getReconnector() {
+		return reconnector;
+	}
+
 	void printStatus(List<WebSocketClientIntf> cls) {
 		if (System.currentTimeMillis() > nextPrintTime) {
 			nextPrintTime = System.currentTimeMillis() + REPORT_INTERVAL;
@@ -58,12 +107,18 @@ public class WebSocketClientMonitorSingle implements WebSocketClientMonitor {
 					client.logStats();
 			} else
 				logger.info("{} 没有WebSocket连接", name);
+			logger.info("{} {}", name, reconnector.getHealth());
+			if (reconnector.getRecovering() > 0)
+				logger.info("{} 有{}个连接正在恢复，已用时{}毫秒", name, reconnector.getRecovering(),
+						reconnector.getRecoveryElapsed());
 		}
 	}
 
 	void startMonitor() {
 		if (monitorThread == null) {
-			monitorThread = new Thread(() -> {
+			reconnector = createReconnector(name, bindIp, reconnectConcurrency, connectInterval, connectsPerSecond,
+					connectBurst, initialBackoff, maxBackoff);
+			monitorThread = VirtualThreads.newThread("WebSocketClientMonitor-" + name, () -> {
 				List<WebSocketClientIntf> cls = new ArrayList<>();
 
 				while (Thread.currentThread() == monitorThread) {
@@ -82,21 +137,19 @@ public class WebSocketClientMonitorSingle implements WebSocketClientMonitor {
 						}
 					}
 
-					// 所有需要重连的client
-					List<WebSocketClientIntf> toOpen = new ArrayList<>();
 					for (WebSocketClientIntf client : cls) {
 						if (client.isConnecting())
 							continue;
 
 						if (!client.isChannelConnected())
-							toOpen.add(client);
+							reconnector.reconnect(client);
 						else if (client.disconnectIfInactive()) {
 							logger.info(name + "[" + client.getKey() + "] 因为没有接收到数据" + client.getInactiveTime()
 									+ "毫秒被停止，等待重启");
-							toOpen.add(client);
+							reconnector.reconnect(client, true);
 						} else if (client.disconnectIfReconnect()) {
 							logger.info(name + "[" + client.getKey() + "] 定时停止，等待重启");
-							toOpen.add(client);
+							reconnector.reconnect(client, true);
 						} else {
 							Long heartBeatTime = client.getHeartBeatTime();
 							if (heartBeatTime != null && heartBeatTime + heartBeatInterval < System.currentTimeMillis())
@@ -110,22 +163,6 @@ public class WebSocketClientMonitorSingle implements WebSocketClientMonitor {
 
 					printStatus(cls);
 
-					// 重连
-					boolean first = true;
-					for (WebSocketClientIntf client : toOpen) {
-						try {
-							if (!first && connectInterval > 0) // 连接时间间隔
-								TimeUnit.MILLISECONDS.sleep(connectInterval);
-
-							client.open(bindIp);
-							first = false;
-						} catch (Exception e) {
-							logger.error(name + "[" + client.getKey() + "] 无法建立连接", e);
-						}
-
-						printStatus(cls);
-					}
-
 					try {
 						Thread.sleep(checkInterval);
 					} catch (Exception e) {
@@ -154,6 +191,33 @@ public class WebSocketClientMonitorSingle implements WebSocketClientMonitor {
 		}
 	}
 
+	public List<WebSocketClientIntf> getClients() {
+		synchronized (clients) {
+			return new ArrayList<>(clients);
+		}
+	}
+
+	public String getBindIp() {
+		return bindIp;
+	}
+
+	/** 不再监控client，但不停止它 */
+	public void remove(WebSocketClientIntf client) {
+		synchronized (clients) {
+			if (clients.remove(client))
+				clients.notify();
+		}
+		if (reconnector != null)
+			reconnector.remove(client);
+	}
+
+	/** 停止监控线程和重连线程 */
+	public void stop() {
+		monitorThread = null;
+		if (reconnector != null)
+			reconnector.stop();
+	}
+
 	/**
 	 * 等待所有client被终止运行
 	 */
@@ -0,0 +1,283 @@
+package com.aggrepoint.utils.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import com.aggrepoint.utils.thread.VirtualThreads;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+
+/**
+ * <pre>
+ * 与WebSocketClientMonitorSingle功能相同，但不是每轮检查所有WebSocketClient，而是在HashedWheelTimer上为每个
+ * WebSocketClient安排下一次需要处理的时间：发送心跳、不活跃超时、定时重连中最早的一个。时间到时检查状态并安排下一次，
+ * 开销与事件数量成正比，与连接数量无关
+ * 
+ * 不活跃的超时时间不在每次收到数据时调整，而是在到期时根据最后活跃时间重新计算，收到数据本身没有额外开销
+ * 
+ * WebSocketClient在连接建立、建立失败和断开时通知监控器立即检查。不支持通知或无法给出超时时间的WebSocketClientIntf
+ * 每checkInterval检查一次
+ * 
+ * 定时器线程只负责到期通知，检查在monitor线程中执行，需要重连的WebSocketClient交给WebSocketReconnector并行建立连接
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class WebSocketClientMonitorWheel implements WebSocketClientMonitor {
+	private static final Logger logger = LoggerFactory.getLogger(WebSocketClientMonitorWheel.class);
+
+	/** 定时器的精度 */
+	static final long TICK = 10;
+	static final int TICKS_PER_WHEEL = 1024;
+
+	String name;
+	/** 要绑定的本地IP */
+	String bindIp;
+	/** 建立连接时间间隔 */
+	int connectInterval;
+	/** 发送心跳时间间隔 */
+	int heartBeatInterval;
+	/** 正在连接或状态无法确定时的检查间隔 */
+	int checkInterval;
+	/** 并行建立连接的线程数 */
+	int reconnectConcurrency = WebSocketReconnector.DEFAULT_CONCURRENCY;
+	/** 每秒最多建立的连接数，0表示按connectInterval间隔建立连接 */
+	int connectsPerSecond;
+	int connectBurst;
+	long initialBackoff = WebSocketReconnector.DEFAULT_INITIAL_BACKOFF;
+	long maxBackoff = WebSocketReconnector.DEFAULT_MAX_BACKOFF;
+
+	HashedWheelTimer timer;
+	ExecutorService executor;
+	Map<WebSocketClientIntf, Entry> clients = new ConcurrentHashMap<>();
+	WebSocketReconnector reconnector;
+
+	class Entry implements Runnable {
+		WebSocketClientIntf client;
+		/** 是否会在状态变化时通知 */
+		boolean notified;
+		Timeout timeout;
+		/** 检查期间状态发生了变化 */
+		volatile boolean changed;
+		/** 已经提交到executor还没有执行 */
+		AtomicBoolean queued = new AtomicBoolean();
+
+		Entry(WebSocketClientIntf client) {
+			this.client = client;
+		}
+
+		/** 在delay毫秒后检查 */
+		synchronized void schedule(long delay) {
+			if (timeout != null)
+				timeout.cancel();
+			timeout = timer.newTimeout(t -> {
+				if (queued.compareAndSet(false, true))
+					executor.execute(this);
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		/** 状态发生了变化，立即检查 */
+		void stateChanged() {
+			changed = true;
+			schedule(0);
+		}
+
+		synchronized void cancel() {
+			if (timeout != null)
+				timeout.cancel();
+		}
+
+		@Override
+		public void run() {
+			queued.set(false);
+			changed = false;
+
+			long delay;
+			try {
+				delay = check();
+			} catch (Exception e) {
+				logger.error(name + "[" + client.getKey() + "] 检查状态失败", e);
+				delay = checkInterval;
+			}
+
+			if (delay < 0)
+				return;
+			schedule(changed ? 0 : delay);
+		}
+
+		/** 返回到下一次检查的毫秒数，-1表示不再监控 */
+		long check() throws Exception {
+			if (!client.beMonitored()) {
+				logger.info(name + "[" + client.getKey() + "] 被主动关停，不再监控");
+				remove(this);
+				return -1;
+			}
+
+			if (client.isConnecting())
+				return checkInterval;
+
+			if (!client.isChannelConnected())
+				return open(false);
+
+			if (client.disconnectIfInactive()) {
+				logger.info(name + "[" + client.getKey() + "] 因为没有接收到数据" + client.getInactiveTime() + "毫秒被停止，等待重启");
+				return open(true);
+			}
+
+			if (client.disconnectIfReconnect()) {
+				logger.info(name + "[" + client.getKey() + "] 定时停止，等待重启");
+				return open(true);
+			}
+
+			long now = System.currentTimeMillis();
+			long next = client.getDeadline();
+			if (next == 0 || !notified)
+				next = next == 0 ? now + checkInterval : Math.min(next, now + checkInterval);
+
+			Long heartBeatTime = client.getHeartBeatTime();
+			if (heartBeatTime != null) {
+				if (heartBeatTime + heartBeatInterval <= now) {
+					try {
+						client.heartBeat();
+					} catch (Exception e) {
+						logger.error(name + "[" + client.getKey() + "] 发送心跳失败", e);
+					}
+					heartBeatTime = now;
+				}
+				next = Math.min(next, heartBeatTime + heartBeatInterval);
+			}
+
+			return Math.max(next - now, 0);
+		}
+
+		/**
+		 * 交给reconnector建立连接，连接建立或失败时会收到通知。返回到下一次检查的毫秒数
+		 * 
+		 * @param initiated 连接是否由监控器主动断开
+		 */
+		long open(boolean initiated) {
+			reconnector.reconnect(client, initiated);
+			return checkInterval;
+		}
+	}
+
+	public WebSocketClientMonitorWheel(String name, String bindIp, int connectInterval, int heartBeatInterval,
+			int checkInterval) {
+		this.name = name;
+		this.bindIp = StringUtils.isEmpty(bindIp) ? null : bindIp;
+		this.connectInterval = connectInterval;
+		this.heartBeatInterval = heartBeatInterval;
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * 设置重连的并发数、速度和退避时间，需要在startClient()之前调用。参数含义与WebSocketClientMonitorSingle.setReconnect()相同
+	 */
+	public WebSocketClientMonitorWheel setReconnect(int concurrency, int connectsPerSecond, int burst,
+			long initialBackoff, long maxBackoff) {
+		if (concurrency <= 0 || connectsPerSecond < 0 || connectsPerSecond > 0 && burst <= 0 || initialBackoff < 0
+				|| maxBackoff < initialBackoff)
+			throw new IllegalArgumentException("重连参数不正确");
+
+		reconnectConcurrency = concurrency;
+		this.connectsPerSecond = connectsPerSecond;
+		connectBurst = burst;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		return this;
+	}
+
+	public WebSocketReconnector getReconnector() {
+		return reconnector;
+	}
+
+	synchronized void startMonitor() {
+		if (timer != null)
+			return;
+
+		reconnector = WebSocketClientMonitorSingle.createReconnector(name, bindIp, reconnectConcurrency, connectInterval,
+				connectsPerSecond, connectBurst, initialBackoff, maxBackoff);
+		timer = new HashedWheelTimer(VirtualThreads.factory("WebSocketClientMonitorTimer-" + name, true), TICK,
+				TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+		executor = Executors.newSingleThreadExecutor(VirtualThreads.factory("WebSocketClientMonitor-" + name, false));
+		timer.newTimeout(this::printStatus, WebSocketClientMonitorSingle.REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	void printStatus(Timeout t) {
+		List<Entry> entries = new ArrayList<>(clients.values());
+		executor.execute(() -> {
+			if (entries.size() > 0) {
+				for (Entry entry : entries)
+					entry.client.logStats();
+			} else
+				logger.info("{} 没有WebSocket连接", name);
+			if (reconnector.getRecovering() > 0)
+				logger.info("{} 有{}个连接正在恢复，已用时{}毫秒", name, reconnector.getRecovering(),
+						reconnector.getRecoveryElapsed());
+		});
+		timer.newTimeout(this::printStatus, WebSocketClientMonitorSingle.REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	void remove(Entry entry) {
+		entry.cancel();
+		entry.client.setStateListener(null);
+		synchronized (clients) {
+			clients.remove(entry.client);
+			clients.notifyAll();
+		}
+	}
+
+	@Override
+	public WebSocketClientMonitor startClient(WebSocketClientIntf client) {
+		startMonitor();
+		client.setMonitored();
+
+		Entry entry = new Entry(client);
+		if (clients.putIfAbsent(client, entry) == null) {
+			entry.notified = client.setStateListener(entry::stateChanged);
+			logger.info(name + "[" + client.getKey() + "] 开始监控");
+			entry.schedule(0);
+		}
+		return this;
+	}
+
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/** 停止定时器、监控线程和重连线程，之后不能再调用startClient() */
+	public synchronized void stop() {
+		if (timer == null)
+			return;
+
+		timer.stop();
+		executor.shutdown();
+		reconnector.stop();
+	}
+
+	/**
+	 * 等待所有client被终止运行
+	 */
+	public void sync() {
+		while (true)
+			synchronized (clients) {
+				if (clients.size() == 0)
+					return;
+				try {
+					clients.wait();
+				} catch (InterruptedException e) {
+				}
+			}
+	}
+}
@@ -0,0 +1,162 @@
+package com.aggrepoint.utils.ws;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * <pre>
+ * 新旧连接重叠期间去重。切换前记录原连接分发的帧；切换后新连接的帧与原连接分发过的相同时判定为重复，
+ * 原连接在关闭前还在传输中的帧与新连接分发过的相同时判定为重复，不同时仍然分发，不会因为切换丢失数据
+ * 
+ * 没有指定keyFunction时按帧的内容判断是否相同，内容相同的帧（例如心跳、没有变化的行情快照）会被当作重复。
+ * 指定keyFunction时按其返回的键（例如消息中的序号）判断，返回null的帧不参与去重，总是分发
+ * 
+ * 每一边最多记录最近window个帧的键
+ * 
+ * 原连接和新连接可能在不同的event loop中，方法都是同步的
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+class WebSocketFrameDeduplicator {
+	/** 按内容去重时帧的键 */
+	static class Payload {
+		byte[] bytes;
+		int hash;
+
+		Payload(byte[] bytes) {
+			this.bytes = bytes;
+			hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Payload && Arrays.equals(bytes, ((Payload) obj).bytes);
+		}
+	}
+
+	/** 一边连接分发过的帧 */
+	static class Record {
+		int window;
+		/** 每个键还没有匹配的记录数量 */
+		Map<Object, Integer> counts = new HashMap<>();
+		/** 还没有匹配的记录的先后顺序，用于淘汰最早的记录 */
+		ArrayDeque<Object> order = new ArrayDeque<>();
+
+		Record(int window) {
+			this.window = window;
+		}
+
+		void add(Object key) {
+			if (order.size() >= window)
+				decrement(order.poll());
+
+			counts.merge(key, 1, Integer::sum);
+			order.add(key);
+		}
+
+		/** 有相同的记录时删除最早的一个并返回true */
+		boolean remove(Object key) {
+			if (!counts.containsKey(key))
+				return false;
+
+			decrement(key);
+			order.removeFirstOccurrence(key);
+			return true;
+		}
+
+		private void decrement(Object key) {
+			counts.computeIfPresent(key, (k, v) -> v == 1 ? null : v - 1);
+		}
+
+		boolean isEmpty() {
+			return counts.isEmpty();
+		}
+	}
+
+	private int window;
+	private Function<WebSocketFrame, ?> keyFunction;
+	private Record fromOld;
+	private Record fromNew;
+	/** 已经检查的新连接的帧数量 */
+	private int checked;
+	private long suppressed;
+
+	/**
+	 * @param keyFunction 为空时按帧的内容去重
+	 */
+	WebSocketFrameDeduplicator(int window, Function<WebSocketFrame, ?> keyFunction) {
+		this.window = window;
+		this.keyFunction = keyFunction;
+		fromOld = new Record(window);
+		fromNew = new Record(window);
+	}
+
+	private Object key(WebSocketFrame frame) {
+		if (keyFunction != null)
+			return keyFunction.apply(frame);
+		return new Payload(ByteBufUtil.getBytes(frame.content()));
+	}
+
+	/** 切换前原连接分发了frame */
+	synchronized void recordOld(WebSocketFrame frame) {
+		Object key = key(frame);
+		if (key != null)
+			fromOld.add(key);
+	}
+
+	/** 切换后原连接收到frame，新连接已经分发过时返回true */
+	synchronized boolean isDuplicateOld(WebSocketFrame frame) {
+		Object key = key(frame);
+		if (key == null)
+			return false;
+
+		if (fromNew.remove(key)) {
+			suppressed++;
+			return true;
+		}
+		fromOld.add(key);
+		return false;
+	}
+
+	/**
+	 * 新连接收到frame，原连接已经分发过时返回true
+	 * 
+	 * @param oldOpen 原连接还没有关闭，需要记录新连接分发的帧
+	 */
+	synchronized boolean isDuplicateNew(WebSocketFrame frame, boolean oldOpen) {
+		checked++;
+		Object key = key(frame);
+		if (key == null)
+			return false;
+
+		if (fromOld.remove(key)) {
+			suppressed++;
+			return true;
+		}
+		if (oldOpen)
+			fromNew.add(key);
+		return false;
+	}
+
+	/** 原连接已经关闭，并且记录都已经匹配或者新连接已经收到window个帧，不会再有重复 */
+	synchronized boolean done(boolean oldOpen) {
+		return !oldOpen && (fromOld.isEmpty() || checked >= window);
+	}
+
+	/** 判定为重复的帧数量 */
+	synchronized long suppressed() {
+		return suppressed;
+	}
+}
@@ -0,0 +1,131 @@
+package com.aggrepoint.utils.ws;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.aggrepoint.utils.TriConsumer;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * <pre>
+ * 以Reactive Streams的Publisher提供WebSocketClient接收到的帧，按订阅者request()的数量发送。
+ * 作为frameHandler使用：builder.onFrame(publisher)
+ * 
+ * 还没有发送给订阅者的帧达到highWaterMark时停止从socket读取，降到lowWaterMark时恢复。
+ * 没有订阅者时帧也在缓冲中等待，因此缓冲满后连接会暂停读取直到有订阅者
+ * 
+ * 只允许一个订阅者。订阅者在onNext()中取得帧的所有权，处理完后需要调用release()。取消订阅后丢弃接收到的帧
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class WebSocketFramePublisher<T extends WebSocketFrame, V> implements Publisher<T>, TriConsumer<Channel, T, V> {
+	private final WebSocketInboundLimiter limiter;
+	private final ConcurrentLinkedQueue<T> buffer = new ConcurrentLinkedQueue<>();
+	private final AtomicReference<Subscriber<? super T>> subscriber = new AtomicReference<>();
+	private final AtomicLong requested = new AtomicLong();
+	/** 正在执行或等待执行drain()的次数，保证onNext()不会并发调用 */
+	private final AtomicInteger wip = new AtomicInteger();
+	private volatile boolean cancelled;
+	/** 要在drain()中通知订阅者的错误，与onNext()一样不能并发调用 */
+	private volatile Throwable error;
+
+	public WebSocketFramePublisher(int lowWaterMark, int highWaterMark) {
+		limiter = new WebSocketInboundLimiter(lowWaterMark, highWaterMark);
+	}
+
+	@Override
+	public void accept(Channel channel, T frame, V data) {
+		if (cancelled)
+			return;
+
+		frame.retain();
+		buffer.add(frame);
+		limiter.acquire(channel);
+		drain();
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super T> s) {
+		if (s == null)
+			throw new NullPointerException("subscriber");
+
+		if (!subscriber.compareAndSet(null, s)) {
+			s.onSubscribe(new Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			s.onError(new IllegalStateException("只允许一个订阅者"));
+			return;
+		}
+
+		s.onSubscribe(new Subscription() {
+			@Override
+			public void request(long n) {
+				if (n <= 0) {
+					if (error == null)
+						error = new IllegalArgumentException("request()的参数必须大于0: " + n);
+				} else
+					requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+				drain();
+			}
+
+			@Override
+			public void cancel() {
+				cancelled = true;
+				drain();
+			}
+		});
+		drain();
+	}
+
+	private void drain() {
+		if (wip.getAndIncrement() != 0)
+			return;
+
+		do {
+			Subscriber<? super T> s = subscriber.get();
+			T frame;
+			if (error != null && !cancelled) { // 规范§3.9：request()参数不合法时以onError结束订阅
+				cancelled = true;
+				s.onError(error);
+			}
+
+			if (cancelled)
+				while ((frame = buffer.poll()) != null) {
+					frame.release();
+					limiter.release();
+				}
+			else if (s != null)
+				while (requested.get() > 0 && !cancelled && (frame = buffer.poll()) != null) {
+					if (requested.get() != Long.MAX_VALUE)
+						requested.decrementAndGet();
+					limiter.release();
+					s.onNext(frame);
+				}
+		} while (wip.decrementAndGet() != 0);
+	}
+
+	/** 还没有发送给订阅者的帧数量 */
+	public int getBuffered() {
+		return limiter.inflight();
+	}
+
+	/** 因为缓冲已满而暂停读取的次数 */
+	public long getPauseCount() {
+		return limiter.pauseCount();
+	}
+}
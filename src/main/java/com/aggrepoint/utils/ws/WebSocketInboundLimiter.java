@@ -0,0 +1,81 @@
+package com.aggrepoint.utils.ws;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.Channel;
+
+/**
+ * <pre>
+ * 限制已经接收但还没有处理完的帧数量：达到highWaterMark时关闭channel的autoRead，不再从socket读取，
+ * 由TCP窗口让服务器放慢发送；降到lowWaterMark时重新打开autoRead
+ * 
+ * acquire()在channel的event loop中调用，release()可以在任何线程中调用。修改autoRead都在event loop中按最新状态执行，
+ * 避免暂停和恢复交错执行后停留在错误的状态
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+class WebSocketInboundLimiter {
+	final int lowWaterMark;
+	final int highWaterMark;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final AtomicBoolean paused = new AtomicBoolean();
+	/** 最后接收到帧的channel，重新连接后为新的channel */
+	private volatile Channel channel;
+	private volatile long pauseCount;
+
+	WebSocketInboundLimiter(int lowWaterMark, int highWaterMark) {
+		if (lowWaterMark < 0 || highWaterMark <= lowWaterMark)
+			throw new IllegalArgumentException("必须满足0 <= lowWaterMark < highWaterMark");
+		this.lowWaterMark = lowWaterMark;
+		this.highWaterMark = highWaterMark;
+	}
+
+	/** 接收到一个帧 */
+	void acquire(Channel ch) {
+		channel = ch;
+		if (inflight.incrementAndGet() >= highWaterMark && paused.compareAndSet(false, true))
+			pauseCount++;
+
+		if (paused.get()) {
+			apply(ch);
+			// 暂停前其他线程可能已经处理完了大部分帧
+			if (inflight.get() <= lowWaterMark)
+				resume();
+		}
+	}
+
+	/** 一个帧处理完毕 */
+	void release() {
+		if (inflight.decrementAndGet() <= lowWaterMark)
+			resume();
+	}
+
+	private void resume() {
+		if (!paused.compareAndSet(true, false))
+			return;
+
+		Channel ch = channel;
+		if (ch != null)
+			ch.eventLoop().execute(() -> apply(ch));
+	}
+
+	private void apply(Channel ch) {
+		ch.config().setAutoRead(!paused.get());
+	}
+
+	int inflight() {
+		return inflight.get();
+	}
+
+	boolean paused() {
+		return paused.get();
+	}
+
+	/** 关闭autoRead的次数 */
+	long pauseCount() {
+		return pauseCount;
+	}
+}
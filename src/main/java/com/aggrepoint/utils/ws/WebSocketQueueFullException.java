@@ -0,0 +1,12 @@
+package com.aggrepoint.utils.ws;
+
+/**
+ * 用于限速发送消息：发送队列已满，无法加入等待
+ */
+public class WebSocketQueueFullException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public WebSocketQueueFullException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,342 @@
+package com.aggrepoint.utils.ws;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aggrepoint.utils.thread.VirtualThreads;
+
+/**
+ * <pre>
+ * WebSocketClientMonitor用来重新建立连接：concurrency个线程并行执行open()，所有线程共享一个令牌桶限制每秒建立连接的数量
+ * 
+ * 每个WebSocketClient按连续失败次数指数退避：第n次失败后等待[0, min(maxBackoff, initialBackoff * 2^(n-1))]之间的随机时间，
+ * 避免大量连接同时重试。握手成功后失败次数清零，下一次断开后立即重连
+ * 
+ * 记录每次建立连接的结果和已建立连接的意外断开，作为bindIp的健康状况。监控器主动断开的连接不计入
+ * 
+ * 从有连接断开到所有断开的连接都恢复为一次恢复过程，记录恢复的连接数量和用时。如果已经有连接恢复，剩下的连接都在失败
+ * 并且maxBackoff时间内没有新的连接恢复，剩下的连接作为没有恢复的连接结束本次恢复过程，不再计入以后的恢复过程
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class WebSocketReconnector {
+	private static final Logger logger = LoggerFactory.getLogger(WebSocketReconnector.class);
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+	public static final long DEFAULT_INITIAL_BACKOFF = 1000;
+	public static final long DEFAULT_MAX_BACKOFF = 60 * 1000;
+	/** 检查断开的连接是否已经恢复的间隔 */
+	static final long RECOVERY_CHECK_INTERVAL = 100;
+
+	String name;
+	String bindIp;
+	/** 为空表示不限速 */
+	TokenBucket bucket;
+	long initialBackoff;
+	long maxBackoff;
+
+	private DelayQueue<Task> queue = new DelayQueue<>();
+	/** 在queue中等待的client */
+	private Set<WebSocketClientIntf> queued = ConcurrentHashMap.newKeySet();
+	/** 还没有恢复的client和开始重连的时间 */
+	private Map<WebSocketClientIntf, Long> recovering = new ConcurrentHashMap<>();
+	/** 已经调用open()还没有结果的client，以及当时的失败次数 */
+	private Map<WebSocketClientIntf, Integer> attempts = new ConcurrentHashMap<>();
+	/** 建立连接成功的client */
+	private Set<WebSocketClientIntf> up = ConcurrentHashMap.newKeySet();
+	private WebSocketBindHealth health = new WebSocketBindHealth();
+	private volatile boolean stopped;
+	private ReentrantLock checkLock = new ReentrantLock();
+	private long lastCheck;
+	/** 本次恢复过程开始的时间，0表示没有在恢复 */
+	private volatile long recoveryStart;
+	private volatile int recoveryCount;
+	/** 本次恢复过程中最后一个连接恢复的时间 */
+	private long lastRecovered;
+	private volatile long lastRecoveryTime;
+	private volatile int lastRecoveryCount;
+	private volatile int lastUnrecoveredCount;
+	private LongAdder opened = new LongAdder();
+
+	static class Task implements Delayed {
+		WebSocketClientIntf client;
+		/** System.nanoTime() */
+		long time;
+
+		Task(WebSocketClientIntf client, long time) {
+			this.client = client;
+			this.time = time;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(time, ((Task) o).time);
+		}
+	}
+
+	/**
+	 * @param concurrency       并行执行open()的线程数
+	 * @param connectsPerSecond 每秒最多建立的连接数，0表示不限制
+	 * @param burst             连续建立连接的最大数量
+	 * @param initialBackoff    第一次失败后最长等待的毫秒数
+	 * @param maxBackoff        退避等待的最长毫秒数
+	 */
+	public WebSocketReconnector(String name, String bindIp, int concurrency, int connectsPerSecond, int burst,
+			long initialBackoff, long maxBackoff) {
+		this(name, bindIp, concurrency,
+				connectsPerSecond > 0 ? new TokenBucket(connectsPerSecond, TimeUnit.SECONDS.toNanos(1), burst) : null,
+				initialBackoff, maxBackoff);
+	}
+
+	WebSocketReconnector(String name, String bindIp, int concurrency, TokenBucket bucket, long initialBackoff,
+			long maxBackoff) {
+		this.name = name;
+		this.bindIp = bindIp;
+		this.bucket = bucket;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+
+		ThreadFactory factory = VirtualThreads.factory("WebSocketReconnector-" + name, true);
+		for (int i = 0; i < concurrency; i++)
+			factory.newThread(this::work).start();
+	}
+
+	/** 按client的失败次数退避后重新建立连接。已经在等待的client不重复加入 */
+	public void reconnect(WebSocketClientIntf client) {
+		reconnect(client, false);
+	}
+
+	/**
+	 * @param initiated 连接是由监控器主动断开的（不活跃或定时重连），不计入bindIp的断开次数
+	 */
+	public void reconnect(WebSocketClientIntf client, boolean initiated) {
+		if (!queued.add(client))
+			return;
+
+		if (up.remove(client) && !initiated)
+			health.disconnected();
+
+		if (!recovering.containsKey(client))
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				if (recoveryStart == 0) {
+					recoveryStart = lastRecovered = now;
+					recoveryCount = 0;
+				}
+				recovering.putIfAbsent(client, now);
+			}
+
+		queue.add(new Task(client, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff(client.getFailureCount()))));
+	}
+
+	/** 连续失败failures次后等待的毫秒数，是[0, min(maxBackoff, initialBackoff * 2^(failures-1))]之间的随机数 */
+	public long backoff(int failures) {
+		if (failures <= 0 || initialBackoff <= 0)
+			return 0;
+		long max = initialBackoff << Math.min(failures - 1, 30);
+		if (max <= 0 || max > maxBackoff)
+			max = maxBackoff;
+		return ThreadLocalRandom.current().nextLong(max + 1);
+	}
+
+	public boolean isPending(WebSocketClientIntf client) {
+		return queued.contains(client);
+	}
+
+	/** client不再由这个reconnector负责重连 */
+	public void remove(WebSocketClientIntf client) {
+		queued.remove(client);
+		attempts.remove(client);
+		up.remove(client);
+		recovering.remove(client);
+	}
+
+	/** 停止所有线程 */
+	public void stop() {
+		stopped = true;
+	}
+
+	private void work() {
+		while (!stopped)
+			try {
+				Task task = queue.poll(RECOVERY_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				check();
+				if (task == null)
+					continue;
+
+				// 已经移出的client不消耗令牌
+				if (!queued.contains(task.client))
+					continue;
+				acquire();
+				if (!queued.remove(task.client)) // 等待令牌期间被移出
+					continue;
+				if (!task.client.beMonitored() || task.client.isConnecting() || task.client.isChannelConnected())
+					continue;
+
+				opened.increment();
+				attempts.put(task.client, task.client.getFailureCount());
+				task.client.open(bindIp);
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable e) {
+				logger.error(name + " 无法建立连接", e);
+			}
+	}
+
+	/** 从令牌桶取得一个令牌，没有时等待 */
+	private void acquire() throws InterruptedException {
+		if (bucket == null)
+			return;
+
+		while (true) {
+			long delay;
+			synchronized (bucket) {
+				delay = bucket.delay(System.nanoTime());
+				if (delay == 0) {
+					bucket.take();
+					return;
+				}
+			}
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+	}
+
+	/** 由一个线程每RECOVERY_CHECK_INTERVAL检查一次 */
+	private void check() {
+		if (attempts.isEmpty() && recoveryStart == 0 || !checkLock.tryLock())
+			return;
+
+		try {
+			long now = System.currentTimeMillis();
+			if (now - lastCheck < RECOVERY_CHECK_INTERVAL)
+				return;
+			lastCheck = now;
+
+			checkAttempts();
+			checkRecovery(now);
+		} finally {
+			checkLock.unlock();
+		}
+	}
+
+	/** 记录建立连接的结果 */
+	private void checkAttempts() {
+		for (Iterator<Map.Entry<WebSocketClientIntf, Integer>> it = attempts.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<WebSocketClientIntf, Integer> entry = it.next();
+			WebSocketClientIntf client = entry.getKey();
+			if (client.isConnected()) {
+				it.remove();
+				up.add(client);
+				health.succeeded(client.getConnectLatency());
+			} else if (client.getFailureCount() > entry.getValue()
+					|| !client.isConnecting() && !client.isChannelConnected()) {
+				it.remove();
+				health.failed();
+			}
+		}
+	}
+
+	/** 检查断开的连接是否已经恢复，本次恢复过程结束时记录恢复用时 */
+	private void checkRecovery(long now) {
+		if (recoveryStart == 0)
+			return;
+
+		synchronized (this) {
+			long start = recoveryStart;
+			if (start == 0)
+				return;
+
+			int unrecovered = 0;
+			boolean failing = true;
+			for (Iterator<Map.Entry<WebSocketClientIntf, Long>> it = recovering.entrySet().iterator(); it
+					.hasNext();) {
+				Map.Entry<WebSocketClientIntf, Long> entry = it.next();
+				WebSocketClientIntf client = entry.getKey();
+				boolean member = entry.getValue() >= start;
+				if (client.isConnected() || !client.beMonitored()) {
+					it.remove();
+					if (member) {
+						recoveryCount++;
+						lastRecovered = now;
+					}
+				} else if (member) {
+					unrecovered++;
+					if (client.getFailureCount() == 0)
+						failing = false;
+				}
+			}
+
+			if (unrecovered > 0 && (recoveryCount == 0 || !failing || now - lastRecovered < maxBackoff))
+				return;
+
+			lastRecoveryTime = lastRecovered - start;
+			lastRecoveryCount = recoveryCount;
+			lastUnrecoveredCount = unrecovered;
+			recoveryStart = 0;
+			if (unrecovered == 0)
+				logger.info("{} 恢复了{}个连接，用时{}毫秒", name, lastRecoveryCount, lastRecoveryTime);
+			else
+				logger.info("{} 恢复了{}个连接，用时{}毫秒，{}个连接没有恢复", name, lastRecoveryCount, lastRecoveryTime,
+						unrecovered);
+		}
+	}
+
+	/** bindIp的健康状况 */
+	public WebSocketBindHealth getHealth() {
+		return health;
+	}
+
+	/** 等待重新建立连接的client数量 */
+	public int getPending() {
+		return queued.size();
+	}
+
+	/** 正在恢复的连接数量 */
+	public int getRecovering() {
+		return recovering.size();
+	}
+
+	/** 正在进行的恢复过程已经用了多少毫秒，没有在恢复时为0 */
+	public long getRecoveryElapsed() {
+		long start = recoveryStart;
+		return start == 0 ? 0 : System.currentTimeMillis() - start;
+	}
+
+	/** 上一次恢复过程的用时，毫秒 */
+	public long getLastRecoveryTime() {
+		return lastRecoveryTime;
+	}
+
+	/** 上一次恢复过程恢复的连接数量 */
+	public int getLastRecoveryCount() {
+		return lastRecoveryCount;
+	}
+
+	/** 上一次恢复过程结束时没有恢复的连接数量 */
+	public int getLastUnrecoveredCount() {
+		return lastUnrecoveredCount;
+	}
+
+	/** 调用open()的总次数 */
+	public long getOpenCount() {
+		return opened.sum();
+	}
+}
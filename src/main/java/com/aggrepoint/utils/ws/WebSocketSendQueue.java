@@ -0,0 +1,366 @@
+package com.aggrepoint.utils.ws;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * <pre>
+ * WebSocketClient的限速发送队列。发送一个消息需要从每个令牌桶中各取得一个令牌，没有令牌时消息放入环形缓冲区，
+ * 由同一个调度任务在令牌恰好可用时取出发送，每个连接最多只有一个调度任务
+ * 
+ * 调度任务执行时，把令牌允许的消息一起写出后只flush一次，令牌桶的burst允许一次写出多个消息
+ * 
+ * 队列达到上限时按WebSocketClientBuilder.QueueOverflow处理，BLOCK方式在event loop中不等待而是抛出异常。
+ * 连接断开时丢弃队列中的消息
+ * 
+ * 设置了flushMessages时合并flush：各线程发送的消息先放入pending，由event loop中的一个任务依次写出，
+ * 每flushMessages个消息或flushBytes字节flush一次，写完时再flush一次
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+class WebSocketSendQueue {
+	static final int INITIAL_CAPACITY = 16;
+	static final int MAX_WRITE_PENDING = 4096;
+
+	/** 为空表示不限速 */
+	private TokenBucket[] buckets;
+	private int maxSize;
+	private WebSocketClientBuilder.QueueOverflow overflow;
+	private ScheduledExecutorService scheduler;
+	private Supplier<Channel> channel;
+	/** 合并flush时每批最多的消息数，为0表示不合并 */
+	private int flushMessages;
+	/** 合并flush时每批最多的字节数，为0表示不限制 */
+	private int flushBytes;
+
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition notFull = lock.newCondition();
+
+	/** 环形缓冲区，按需扩大，不超过maxSize */
+	private Object[] items = new Object[INITIAL_CAPACITY];
+	/** 消息进入队列的时间 */
+	private long[] times = new long[INITIAL_CAPACITY];
+	private int head;
+	private int size;
+
+	/** 最后一次发送消息的时间 */
+	private volatile long lastSendTime;
+	/** 是否有调度任务 */
+	private boolean scheduled;
+	private Runnable drainTask = this::drain;
+	private LongAdder dropped = new LongAdder();
+
+	/** 等待event loop写出的消息 */
+	private ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<>();
+	private AtomicInteger pendingCount = new AtomicInteger();
+	/** 是否已经提交了写出pending的任务 */
+	private AtomicBoolean flushing = new AtomicBoolean();
+	private Runnable writePendingTask = this::writePending;
+
+	/**
+	 * @param limits 令牌桶参数，为每个队列复制新的令牌桶
+	 */
+	WebSocketSendQueue(List<TokenBucket> limits, int maxSize, WebSocketClientBuilder.QueueOverflow overflow,
+			int flushMessages, int flushBytes, ScheduledExecutorService scheduler, Supplier<Channel> channel) {
+		buckets = new TokenBucket[limits.size()];
+		for (int i = 0; i < buckets.length; i++)
+			buckets[i] = limits.get(i).copy();
+		this.maxSize = maxSize;
+		this.overflow = overflow;
+		this.flushMessages = flushMessages;
+		this.flushBytes = flushBytes;
+		this.scheduler = scheduler;
+		this.channel = channel;
+	}
+
+	private static int bytes(Object msg) {
+		if (msg instanceof ByteBufHolder)
+			return ((ByteBufHolder) msg).content().readableBytes();
+		if (msg instanceof ByteBuf)
+			return ((ByteBuf) msg).readableBytes();
+		return 0;
+	}
+
+	/** 写出但不flush。合并flush时放入pending */
+	private void write(Channel ch, Object msg) {
+		if (flushMessages == 0) {
+			ch.write(msg);
+			return;
+		}
+
+		pending.add(msg);
+		pendingCount.incrementAndGet();
+		if (flushing.compareAndSet(false, true))
+			ch.eventLoop().execute(writePendingTask);
+	}
+
+	private void flush(Channel ch) {
+		if (flushMessages == 0)
+			ch.flush();
+	}
+
+	/**
+	 * 在event loop中写出pending中的消息。每次最多写出MAX_WRITE_PENDING个，避免长时间占用event loop
+	 * 
+	 * 执行时才取当前的连接：提交任务后重新连接或迁移时写到新连接，连接已经断开时丢弃
+	 */
+	private void writePending() {
+		Channel ch = channel.get();
+		if (ch == null) {
+			flushing.set(false);
+			Object msg;
+			while ((msg = pending.poll()) != null) {
+				pendingCount.decrementAndGet();
+				discard(msg);
+			}
+			return;
+		}
+		if (!ch.eventLoop().inEventLoop()) { // 新连接在另一个event loop中
+			ch.eventLoop().execute(writePendingTask);
+			return;
+		}
+		flushing.set(false);
+
+		int messages = 0;
+		long bytes = 0;
+		Object msg;
+		for (int i = 0; i < MAX_WRITE_PENDING && (msg = pending.poll()) != null; i++) {
+			pendingCount.decrementAndGet();
+			bytes += bytes(msg);
+			ch.write(msg);
+			if (++messages >= flushMessages || flushBytes > 0 && bytes >= flushBytes) {
+				ch.flush();
+				messages = 0;
+				bytes = 0;
+			}
+		}
+		if (messages > 0)
+			ch.flush();
+
+		if (!pending.isEmpty() && flushing.compareAndSet(false, true))
+			ch.eventLoop().execute(writePendingTask);
+	}
+
+	/** 连接已经断开，丢弃消息 */
+	private boolean discard(Object msg) {
+		ReferenceCountUtil.release(msg);
+		dropped.increment();
+		return false;
+	}
+
+	/**
+	 * 返回true表示已经发送，false表示等待调度或因为连接已经断开而丢弃
+	 */
+	boolean send(Object msg) {
+		if (buckets.length == 0) {
+			Channel ch = channel.get();
+			if (ch == null)
+				return discard(msg);
+			if (flushMessages == 0)
+				ch.writeAndFlush(msg);
+			else
+				write(ch, msg);
+			lastSendTime = System.currentTimeMillis();
+			return true;
+		}
+
+		lock.lock();
+		try {
+			if (!scheduled && acquire(System.nanoTime())) {
+				Channel ch = channel.get();
+				if (ch == null)
+					return discard(msg);
+				write(ch, msg);
+				flush(ch);
+				lastSendTime = System.currentTimeMillis();
+				return true;
+			}
+
+			while (size == maxSize)
+				switch (overflow) {
+				case DROP_OLDEST:
+					ReferenceCountUtil.release(poll());
+					dropped.increment();
+					break;
+				case FAIL:
+					ReferenceCountUtil.release(msg);
+					throw new WebSocketQueueFullException("发送队列已满: " + size);
+				default:
+					// 在event loop中等待会使连接上的读写全部停止
+					Channel ch = channel.get();
+					if (ch != null && ch.eventLoop().inEventLoop()) {
+						ReferenceCountUtil.release(msg);
+						throw new WebSocketQueueFullException("发送队列已满，不能在event loop中等待: " + size);
+					}
+					try {
+						notFull.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						ReferenceCountUtil.release(msg);
+						throw new WebSocketQueueFullException("等待发送队列时被中断");
+					}
+				}
+
+			add(msg, System.currentTimeMillis());
+			if (!scheduled)
+				schedule(System.nanoTime());
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** 从每个令牌桶中各取一个令牌，有一个桶没有令牌时不取并返回false */
+	private boolean acquire(long now) {
+		for (TokenBucket bucket : buckets)
+			if (!bucket.available(now))
+				return false;
+		for (TokenBucket bucket : buckets)
+			bucket.take();
+		return true;
+	}
+
+	/** 在所有令牌桶都有令牌时执行调度任务 */
+	private void schedule(long now) {
+		long delay = 0;
+		for (TokenBucket bucket : buckets)
+			delay = Math.max(delay, bucket.delay(now));
+		scheduled = true;
+		scheduler.schedule(drainTask, delay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 发送一组消息，返回已经发送的数量。不限速时全部写出后只flush一次
+	 */
+	int send(Collection<?> msgs) {
+		if (buckets.length > 0) {
+			int sent = 0;
+			for (Object msg : msgs)
+				if (send(msg))
+					sent++;
+			return sent;
+		}
+
+		Channel ch = channel.get();
+		if (ch == null) {
+			for (Object msg : msgs)
+				discard(msg);
+			return 0;
+		}
+		for (Object msg : msgs)
+			write(ch, msg);
+		flush(ch);
+		lastSendTime = System.currentTimeMillis();
+		return msgs.size();
+	}
+
+	private void add(Object msg, long now) {
+		if (size == items.length) { // 扩大缓冲区
+			int capacity = (int) Math.min((long) items.length * 2, maxSize);
+			Object[] newItems = new Object[capacity];
+			long[] newTimes = new long[capacity];
+			for (int i = 0; i < size; i++) {
+				newItems[i] = items[(head + i) % items.length];
+				newTimes[i] = times[(head + i) % items.length];
+			}
+			items = newItems;
+			times = newTimes;
+			head = 0;
+		}
+
+		int tail = (head + size) % items.length;
+		items[tail] = msg;
+		times[tail] = now;
+		size++;
+	}
+
+	private Object poll() {
+		Object msg = items[head];
+		items[head] = null;
+		head = (head + 1) % items.length;
+		size--;
+		return msg;
+	}
+
+	/**
+	 * 调度时间到，发送令牌允许的所有消息
+	 */
+	private void drain() {
+		lock.lock();
+		try {
+			Channel ch = channel.get();
+			if (ch == null) { // 连接已经断开
+				while (size > 0) {
+					ReferenceCountUtil.release(poll());
+					dropped.increment();
+				}
+				scheduled = false;
+				notFull.signalAll();
+				return;
+			}
+
+			long now = System.nanoTime();
+			int count = 0;
+			while (size > 0 && acquire(now)) {
+				write(ch, poll());
+				count++;
+			}
+			if (count > 0) {
+				flush(ch);
+				lastSendTime = System.currentTimeMillis();
+				notFull.signalAll();
+			}
+
+			if (size > 0)
+				schedule(now);
+			else
+				scheduled = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** 等待发送的消息数量，包括等待event loop写出的消息 */
+	int size() {
+		lock.lock();
+		try {
+			return size + pendingCount.get();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** 队列中最早的消息已经等待的毫秒数，队列为空时为0 */
+	long lag() {
+		lock.lock();
+		try {
+			return size == 0 ? 0 : System.currentTimeMillis() - times[head];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** 因为队列已满或连接断开而丢弃的消息数量 */
+	long dropped() {
+		return dropped.sum();
+	}
+
+	long lastSendTime() {
+		return lastSendTime;
+	}
+}
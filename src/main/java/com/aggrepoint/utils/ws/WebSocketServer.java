@@ -13,6 +13,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import com.aggrepoint.utils.TriConsumer;
+import com.aggrepoint.utils.ws.codec.WebSocketCodec;
+import com.aggrepoint.utils.ws.codec.WebSocketCodecs;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
@@ -124,6 +126,29 @@ public class WebSocketServer {
 		return stop;
 	}
 
+	/**
+	 * 启动运行WebSocketServer，用codec把接收到的帧直接解码为消息。messageReceived返回后调用codec.release()回收消息。
+	 * 发送消息可以用WebSocketCodecs.write()
+	 * 
+	 * @param codec
+	 *            消息编解码
+	 * @param messageReceived
+	 *            接收到消息
+	 */
+	public static <T, M> Runnable start(String certChain, String privateKey, int port, String webSocketPath,
+			BiConsumer<Channel, FullHttpRequest> httpHandler, BiFunction<Channel, String, T> wsConnected,
+			WebSocketCodec<M> codec, TriConsumer<T, Channel, M> messageReceived, Consumer<T> wsDisconnect)
+			throws SSLException, FileNotFoundException {
+		return start(certChain, privateKey, port, webSocketPath, httpHandler, wsConnected, (svc, channel, frame) -> {
+			M msg = WebSocketCodecs.decode(codec, frame);
+			try {
+				messageReceived.accept(svc, channel, msg);
+			} finally {
+				codec.release(msg);
+			}
+		}, wsDisconnect);
+	}
+
 	/**
 	 * 发送HTTP响应
 	 * 
@@ -0,0 +1,77 @@
+package com.aggrepoint.utils.ws.codec;
+
+import java.util.function.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * <pre>
+ * 用文本帧传输JSON的参考实现。子类用JsonReader把帧的内容直接读入从池中取得的消息对象，
+ * 用JsonWriter把消息直接写入发送用的ByteBuf
+ * 
+ * JsonReader和JsonWriter为每个线程各复用一个
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public abstract class JsonCodec<M extends PooledMessage> implements WebSocketCodec<M> {
+	private static final FastThreadLocal<JsonReader> READER = new FastThreadLocal<JsonReader>() {
+		@Override
+		protected JsonReader initialValue() {
+			return new JsonReader();
+		}
+	};
+
+	private static final FastThreadLocal<JsonWriter> WRITER = new FastThreadLocal<JsonWriter>() {
+		@Override
+		protected JsonWriter initialValue() {
+			return new JsonWriter();
+		}
+	};
+
+	private final MessagePool<M> pool;
+
+	/**
+	 * @param pooled 为false时每次解码创建新的消息对象
+	 */
+	protected JsonCodec(Supplier<M> factory, boolean pooled) {
+		pool = new MessagePool<>(factory, pooled);
+	}
+
+	protected JsonCodec(Supplier<M> factory) {
+		this(factory, true);
+	}
+
+	/** 从reader读取一个消息的内容到msg中 */
+	protected abstract void read(JsonReader reader, M msg);
+
+	protected abstract void write(M msg, JsonWriter writer);
+
+	@Override
+	public M decode(ByteBuf in) {
+		M msg = pool.get();
+		try {
+			read(READER.get().reset(in), msg);
+		} catch (RuntimeException e) {
+			msg.recycle();
+			throw e;
+		}
+		return msg;
+	}
+
+	@Override
+	public void encode(M msg, ByteBuf out) {
+		write(msg, WRITER.get().reset(out));
+	}
+
+	@Override
+	public boolean text() {
+		return true;
+	}
+
+	@Override
+	public void release(M msg) {
+		msg.recycle();
+	}
+}
@@ -0,0 +1,422 @@
+package com.aggrepoint.utils.ws.codec;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * <pre>
+ * 直接从ByteBuf中按顺序读取JSON，不创建中间的String。字段名和字符串值放在复用的StringBuilder中，
+ * 在下一次读取前有效；数字直接从字节解析，常见的十进制小数不经过Double.parseDouble()
+ * 
+ * 读取对象：
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     reader.nextName();
+ *     if (reader.nameIs("s"))
+ *         msg.symbol.append(reader.nextString());
+ *     else
+ *         reader.skipValue();
+ * }
+ * reader.endObject();
+ * 
+ * nextLong()和nextDouble()也接受放在引号中的数字
+ * 
+ * 不是线程安全的，JsonCodec为每个线程复用一个实例
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class JsonReader {
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END
+	}
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+			1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	/** 不超过2^53的整数可以精确地表示为double */
+	private static final long MAX_EXACT = 1L << 53;
+
+	private ByteBuf in;
+	private int pos;
+	private int end;
+
+	private final StringBuilder name = new StringBuilder();
+	private final StringBuilder string = new StringBuilder();
+
+	// { 最后解析的数字
+	private boolean negative;
+	private long mantissa;
+	/** 小数点后的位数减去指数 */
+	private int scale;
+	/** 有效数字超过18位 */
+	private boolean overflow;
+	/** 没有小数部分和指数 */
+	private boolean integral;
+	private int numberStart;
+	private int numberEnd;
+	// }
+
+	/** 从in的读取位置开始读取，不改变in的读取位置 */
+	public JsonReader reset(ByteBuf in) {
+		this.in = in;
+		pos = in.readerIndex();
+		end = in.writerIndex();
+		return this;
+	}
+
+	private CorruptedFrameException error(String message) {
+		return new CorruptedFrameException(message + " at " + (pos - in.readerIndex()));
+	}
+
+	private int skipWhitespace() {
+		while (pos < end) {
+			byte b = in.getByte(pos);
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+				return b;
+			pos++;
+		}
+		return -1;
+	}
+
+	private void expect(char c) {
+		if (skipWhitespace() != c)
+			throw error("Expected '" + c + "'");
+		pos++;
+	}
+
+	public Token peek() {
+		int b = skipWhitespace();
+		switch (b) {
+		case -1:
+			return Token.END;
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '}':
+			return Token.END_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case ']':
+			return Token.END_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			return Token.BOOLEAN;
+		case 'n':
+			return Token.NULL;
+		default:
+			return Token.NUMBER;
+		}
+	}
+
+	public void beginObject() {
+		expect('{');
+	}
+
+	public void endObject() {
+		expect('}');
+	}
+
+	public void beginArray() {
+		expect('[');
+	}
+
+	public void endArray() {
+		expect(']');
+	}
+
+	/** 当前对象或数组中是否还有字段或元素。跳过元素之间的逗号 */
+	public boolean hasNext() {
+		int b = skipWhitespace();
+		if (b == ',') {
+			pos++;
+			b = skipWhitespace();
+		}
+		return b != '}' && b != ']' && b != -1;
+	}
+
+	/** 读取字段名和后面的冒号 */
+	public void nextName() {
+		name.setLength(0);
+		readString(name);
+		expect(':');
+	}
+
+	/** 最后读取的字段名，在下一次nextName()前有效 */
+	public CharSequence name() {
+		return name;
+	}
+
+	public boolean nameIs(String s) {
+		if (name.length() != s.length())
+			return false;
+		for (int i = s.length() - 1; i >= 0; i--)
+			if (name.charAt(i) != s.charAt(i))
+				return false;
+		return true;
+	}
+
+	/** 读取字符串值，在下一次读取字符串前有效。值为null时返回null */
+	public CharSequence nextString() {
+		if (nextNull())
+			return null;
+		string.setLength(0);
+		readString(string);
+		return string;
+	}
+
+	/** 读取字符串值，追加到to中 */
+	public void nextString(StringBuilder to) {
+		readString(to);
+	}
+
+	private void readString(StringBuilder to) {
+		expect('"');
+		while (pos < end) {
+			int b = in.getByte(pos++);
+			if (b == '"')
+				return;
+			if (b == '\\')
+				readEscape(to);
+			else if (b >= 0)
+				to.append((char) b);
+			else
+				readUtf8(b, to);
+		}
+		throw error("Unterminated string");
+	}
+
+	private void readEscape(StringBuilder to) {
+		if (pos >= end)
+			throw error("Unterminated escape");
+		int b = in.getByte(pos++);
+		switch (b) {
+		case 'b':
+			to.append('\b');
+			break;
+		case 'f':
+			to.append('\f');
+			break;
+		case 'n':
+			to.append('\n');
+			break;
+		case 'r':
+			to.append('\r');
+			break;
+		case 't':
+			to.append('\t');
+			break;
+		case 'u':
+			if (pos + 4 > end)
+				throw error("Invalid unicode escape");
+			int c = 0;
+			for (int i = 0; i < 4; i++) {
+				int d = Character.digit(in.getByte(pos++), 16);
+				if (d < 0)
+					throw error("Invalid unicode escape");
+				c = (c << 4) | d;
+			}
+			to.append((char) c);
+			break;
+		default:
+			to.append((char) b);
+		}
+	}
+
+	private void readUtf8(int b, StringBuilder to) {
+		int n;
+		int cp;
+		if ((b & 0xE0) == 0xC0) {
+			n = 1;
+			cp = b & 0x1F;
+		} else if ((b & 0xF0) == 0xE0) {
+			n = 2;
+			cp = b & 0x0F;
+		} else if ((b & 0xF8) == 0xF0) {
+			n = 3;
+			cp = b & 0x07;
+		} else
+			throw error("Invalid UTF-8");
+
+		if (pos + n > end)
+			throw error("Invalid UTF-8");
+		for (int i = 0; i < n; i++)
+			cp = (cp << 6) | (in.getByte(pos++) & 0x3F);
+		to.appendCodePoint(cp);
+	}
+
+	/** 值为null时读取null并返回true */
+	public boolean nextNull() {
+		if (skipWhitespace() != 'n')
+			return false;
+		literal("null");
+		return true;
+	}
+
+	public boolean nextBoolean() {
+		int b = skipWhitespace();
+		if (b == 't') {
+			literal("true");
+			return true;
+		}
+		if (b == 'f') {
+			literal("false");
+			return false;
+		}
+		throw error("Expected boolean");
+	}
+
+	private void literal(String s) {
+		if (pos + s.length() > end)
+			throw error("Expected " + s);
+		for (int i = 0; i < s.length(); i++)
+			if (in.getByte(pos++) != s.charAt(i))
+				throw error("Expected " + s);
+	}
+
+	private void readNumber() {
+		boolean quoted = skipWhitespace() == '"';
+		if (quoted)
+			pos++;
+
+		numberStart = pos;
+		negative = false;
+		mantissa = 0;
+		scale = 0;
+		overflow = false;
+		integral = true;
+		int digits = 0;
+
+		if (pos < end && in.getByte(pos) == '-') {
+			negative = true;
+			pos++;
+		}
+
+		boolean fraction = false;
+		for (; pos < end; pos++) {
+			int b = in.getByte(pos);
+			if (b >= '0' && b <= '9') {
+				if (mantissa == 0 && b == '0' && !fraction)
+					continue;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+					if (fraction)
+						scale++;
+				} else {
+					overflow = true;
+					if (!fraction)
+						scale--;
+				}
+			} else if (b == '.' && !fraction) {
+				fraction = true;
+				integral = false;
+			} else if (b == 'e' || b == 'E') {
+				integral = false;
+				pos++;
+				boolean negExp = false;
+				if (pos < end && (in.getByte(pos) == '-' || in.getByte(pos) == '+'))
+					negExp = in.getByte(pos++) == '-';
+				int exp = 0;
+				for (; pos < end; pos++) {
+					b = in.getByte(pos);
+					if (b < '0' || b > '9')
+						break;
+					exp = Math.min(exp * 10 + (b - '0'), 10000);
+				}
+				scale += negExp ? exp : -exp;
+				break;
+			} else
+				break;
+		}
+
+		numberEnd = pos;
+		if (numberEnd == numberStart || numberEnd == numberStart + 1 && negative)
+			throw error("Expected number");
+
+		if (quoted)
+			expect('"');
+	}
+
+	public long nextLong() {
+		readNumber();
+		if (!integral)
+			throw error("Not a long");
+		if (overflow)
+			try {
+				return Long.parseLong(in.toString(numberStart, numberEnd - numberStart, StandardCharsets.US_ASCII));
+			} catch (NumberFormatException e) {
+				throw error("Not a long");
+			}
+		return negative ? -mantissa : mantissa;
+	}
+
+	public int nextInt() {
+		long v = nextLong();
+		if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+			throw error("Not an int");
+		return (int) v;
+	}
+
+	public double nextDouble() {
+		readNumber();
+
+		double v;
+		if (!overflow && mantissa < MAX_EXACT && scale >= -22 && scale <= 22)
+			// 两个精确的double相乘或相除，结果是正确舍入的
+			v = scale >= 0 ? mantissa / POW10[scale] : mantissa * POW10[-scale];
+		else
+			v = Double.parseDouble(in.toString(numberStart, numberEnd - numberStart, StandardCharsets.US_ASCII));
+		return negative ? -v : v;
+	}
+
+	/** 跳过一个值，包括嵌套的对象和数组 */
+	public void skipValue() {
+		int depth = 0;
+		do {
+			int b = skipWhitespace();
+			switch (b) {
+			case -1:
+				throw error("Unexpected end");
+			case '{':
+			case '[':
+				depth++;
+				pos++;
+				break;
+			case '}':
+			case ']':
+				depth--;
+				pos++;
+				break;
+			case ',':
+			case ':':
+				pos++;
+				break;
+			case '"':
+				skipString();
+				break;
+			default:
+				while (pos < end) {
+					b = in.getByte(pos);
+					if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t')
+						break;
+					pos++;
+				}
+			}
+		} while (depth > 0);
+	}
+
+	private void skipString() {
+		pos++;
+		while (pos < end) {
+			byte b = in.getByte(pos++);
+			if (b == '"')
+				return;
+			if (b == '\\')
+				pos++;
+		}
+		throw error("Unterminated string");
+	}
+}
@@ -0,0 +1,184 @@
+package com.aggrepoint.utils.ws.codec;
+
+import java.math.BigDecimal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * <pre>
+ * 直接向ByteBuf中写入JSON，自动在字段和元素之间加逗号
+ * 
+ * 价格、数量等定点小数可以用value(unscaled, scale)写出，不经过double和String
+ * 
+ * 不是线程安全的，JsonCodec为每个线程复用一个实例
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class JsonWriter {
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+	private ByteBuf out;
+	/** 下一个字段或元素前是否需要逗号 */
+	private boolean comma;
+	private final byte[] digits = new byte[20];
+
+	public JsonWriter reset(ByteBuf out) {
+		this.out = out;
+		comma = false;
+		return this;
+	}
+
+	private void separator() {
+		if (comma)
+			out.writeByte(',');
+	}
+
+	public JsonWriter beginObject() {
+		separator();
+		out.writeByte('{');
+		comma = false;
+		return this;
+	}
+
+	public JsonWriter endObject() {
+		out.writeByte('}');
+		comma = true;
+		return this;
+	}
+
+	public JsonWriter beginArray() {
+		separator();
+		out.writeByte('[');
+		comma = false;
+		return this;
+	}
+
+	public JsonWriter endArray() {
+		out.writeByte(']');
+		comma = true;
+		return this;
+	}
+
+	public JsonWriter name(CharSequence name) {
+		separator();
+		writeString(name);
+		out.writeByte(':');
+		comma = false;
+		return this;
+	}
+
+	public JsonWriter value(CharSequence value) {
+		separator();
+		if (value == null)
+			out.writeBytes(NULL);
+		else
+			writeString(value);
+		comma = true;
+		return this;
+	}
+
+	public JsonWriter value(long value) {
+		separator();
+		writeLong(value, 0);
+		comma = true;
+		return this;
+	}
+
+	/** 写出unscaled / 10^scale，例如value(650010, 2)写出6500.10 */
+	public JsonWriter value(long unscaled, int scale) {
+		separator();
+		writeLong(unscaled, scale);
+		comma = true;
+		return this;
+	}
+
+	public JsonWriter value(double value) {
+		separator();
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			out.writeBytes(NULL);
+		else
+			ByteBufUtil.writeAscii(out, Double.toString(value));
+		comma = true;
+		return this;
+	}
+
+	public JsonWriter value(boolean value) {
+		separator();
+		out.writeBytes(value ? TRUE : FALSE);
+		comma = true;
+		return this;
+	}
+
+	public JsonWriter nullValue() {
+		separator();
+		out.writeBytes(NULL);
+		comma = true;
+		return this;
+	}
+
+	private void writeLong(long value, int scale) {
+		if (value == Long.MIN_VALUE) {
+			ByteBufUtil.writeAscii(out, BigDecimal.valueOf(value, scale).toPlainString());
+			return;
+		}
+
+		if (value < 0) {
+			out.writeByte('-');
+			value = -value;
+		}
+
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0 || n <= scale);
+
+		for (int i = n - 1; i >= 0; i--) {
+			if (i == scale - 1)
+				out.writeByte('.');
+			out.writeByte(digits[i]);
+		}
+	}
+
+	private void writeString(CharSequence s) {
+		out.writeByte('"');
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.writeByte('\\');
+				out.writeByte(c);
+			} else if (c < 0x20) {
+				switch (c) {
+				case '\n':
+					out.writeByte('\\').writeByte('n');
+					break;
+				case '\r':
+					out.writeByte('\\').writeByte('r');
+					break;
+				case '\t':
+					out.writeByte('\\').writeByte('t');
+					break;
+				default:
+					out.writeByte('\\').writeByte('u').writeByte('0').writeByte('0').writeByte(HEX[c >> 4])
+							.writeByte(HEX[c & 0xF]);
+				}
+			} else if (c < 0x80)
+				out.writeByte(c);
+			else if (c < 0x800)
+				out.writeByte(0xC0 | (c >> 6)).writeByte(0x80 | (c & 0x3F));
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				out.writeByte(0xF0 | (cp >> 18)).writeByte(0x80 | ((cp >> 12) & 0x3F))
+						.writeByte(0x80 | ((cp >> 6) & 0x3F)).writeByte(0x80 | (cp & 0x3F));
+			} else
+				out.writeByte(0xE0 | (c >> 12)).writeByte(0x80 | ((c >> 6) & 0x3F)).writeByte(0x80 | (c & 0x3F));
+		}
+		out.writeByte('"');
+	}
+}
@@ -0,0 +1,100 @@
+package com.aggrepoint.utils.ws.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * <pre>
+ * 用二进制帧传输的参考实现。数值字段按固定长度大端序写出，字符串和字节数组前面是4字节的长度
+ * 
+ * 子类用ByteBuf的readXxx()/writeXxx()和这里的readString()/writeString()/readBytes()/writeBytes()
+ * 读写消息的各个字段。readBytes()返回帧内容的切片，不复制
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public abstract class LengthPrefixedCodec<M extends PooledMessage> implements WebSocketCodec<M> {
+	private final MessagePool<M> pool;
+
+	/**
+	 * @param pooled 为false时每次解码创建新的消息对象
+	 */
+	protected LengthPrefixedCodec(Supplier<M> factory, boolean pooled) {
+		pool = new MessagePool<>(factory, pooled);
+	}
+
+	protected LengthPrefixedCodec(Supplier<M> factory) {
+		this(factory, true);
+	}
+
+	protected abstract void read(ByteBuf in, M msg);
+
+	protected abstract void write(M msg, ByteBuf out);
+
+	@Override
+	public M decode(ByteBuf in) {
+		M msg = pool.get();
+		try {
+			read(in, msg);
+		} catch (RuntimeException e) {
+			msg.recycle();
+			throw e instanceof IndexOutOfBoundsException ? new CorruptedFrameException(e) : e;
+		}
+		return msg;
+	}
+
+	@Override
+	public void encode(M msg, ByteBuf out) {
+		write(msg, out);
+	}
+
+	@Override
+	public void release(M msg) {
+		msg.recycle();
+	}
+
+	private static int readLength(ByteBuf in) {
+		int length = in.readInt();
+		if (length < 0 || length > in.readableBytes())
+			throw new CorruptedFrameException("Invalid length: " + length);
+		return length;
+	}
+
+	/** 以UTF-8写出字符串，前面是字节数 */
+	public static void writeString(ByteBuf out, CharSequence s) {
+		int index = out.writerIndex();
+		out.writeInt(0);
+		int length = ByteBufUtil.writeUtf8(out, s);
+		out.setInt(index, length);
+	}
+
+	/** 读取字符串追加到to中。ASCII字符串不创建中间对象 */
+	public static void readString(ByteBuf in, StringBuilder to) {
+		int length = readLength(in);
+		int index = in.readerIndex();
+		int end = index + length;
+		for (int i = index; i < end; i++) {
+			byte b = in.getByte(i);
+			if (b < 0) { // 非ASCII
+				to.append(in.toString(i, end - i, StandardCharsets.UTF_8));
+				break;
+			}
+			to.append((char) b);
+		}
+		in.skipBytes(length);
+	}
+
+	public static void writeBytes(ByteBuf out, ByteBuf bytes) {
+		out.writeInt(bytes.readableBytes());
+		out.writeBytes(bytes, bytes.readerIndex(), bytes.readableBytes());
+	}
+
+	/** 返回帧内容的切片，只在处理消息期间有效 */
+	public static ByteBuf readBytes(ByteBuf in) {
+		return in.readSlice(readLength(in));
+	}
+}
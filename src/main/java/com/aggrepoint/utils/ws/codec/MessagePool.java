@@ -0,0 +1,40 @@
+package com.aggrepoint.utils.ws.codec;
+
+import java.util.function.Supplier;
+
+import io.netty.util.Recycler;
+
+/**
+ * <pre>
+ * 用netty的Recycler复用消息对象。每个线程有自己的缓存，在其他线程中回收的对象会被送回取得它的线程
+ * 
+ * pooled为false时每次创建新的对象，用于比较或者消息需要长期保存的场合
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public class MessagePool<M extends PooledMessage> {
+	private final Supplier<M> factory;
+	private final Recycler<M> recycler;
+
+	@SuppressWarnings("unchecked")
+	public MessagePool(Supplier<M> factory, boolean pooled) {
+		this.factory = factory;
+		recycler = !pooled ? null : new Recycler<M>() {
+			@Override
+			protected M newObject(Handle<M> handle) {
+				M msg = factory.get();
+				msg.handle = (Handle<PooledMessage>) (Handle<?>) handle;
+				return msg;
+			}
+		};
+	}
+
+	public MessagePool(Supplier<M> factory) {
+		this(factory, true);
+	}
+
+	public M get() {
+		return recycler == null ? factory.get() : recycler.get();
+	}
+}
@@ -0,0 +1,22 @@
+package com.aggrepoint.utils.ws.codec;
+
+import io.netty.util.Recycler;
+
+/**
+ * 可以由MessagePool复用的消息对象。子类在clear()中清除内容，但保留可以复用的数组、StringBuilder等
+ * 
+ * @author jiangmingyang
+ */
+public abstract class PooledMessage {
+	Recycler.Handle<PooledMessage> handle;
+
+	/** 清除内容，准备复用 */
+	protected abstract void clear();
+
+	/** 归还到池中，之后不能再访问。不是从池中取得的对象只清除内容 */
+	public final void recycle() {
+		clear();
+		if (handle != null)
+			handle.recycle(this);
+	}
+}
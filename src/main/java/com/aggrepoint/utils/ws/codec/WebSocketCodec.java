@@ -0,0 +1,36 @@
+package com.aggrepoint.utils.ws.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * <pre>
+ * WebSocket消息的编解码。解码直接读取帧的ByteBuf，编码直接写入发送用的ByteBuf，不经过byte[]或String
+ * 
+ * 客户端用WebSocketClientBuilder.onMessage()和WebSocketClient.sendMessage(codec, msg)，
+ * 服务器端用WebSocketServer.start()的codec参数和WebSocketCodecs.write()
+ * 
+ * decode()返回的对象可以是复用或者从池中取得的，使用者处理完后调用release()，此后不能再访问该对象
+ * </pre>
+ * 
+ * @author jiangmingyang
+ */
+public interface WebSocketCodec<M> {
+	/**
+	 * 解码一个完整的消息。消息中引用in的部分只在处理消息期间有效
+	 * 
+	 * @throws io.netty.handler.codec.CorruptedFrameException 内容格式错误
+	 */
+	M decode(ByteBuf in);
+
+	/** 把消息写入out */
+	void encode(M msg, ByteBuf out);
+
+	/** 编码后的内容用文本帧还是二进制帧发送 */
+	default boolean text() {
+		return false;
+	}
+
+	/** 消息处理完毕，复用消息对象的codec在这里回收 */
+	default void release(M msg) {
+	}
+}
@@ -0,0 +1,47 @@
+package com.aggrepoint.utils.ws.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * 在WebSocketFrame和WebSocketCodec的消息之间转换
+ * 
+ * @author jiangmingyang
+ */
+public final class WebSocketCodecs {
+	private WebSocketCodecs() {
+	}
+
+	/** 解码帧的内容，不改变帧的读取位置 */
+	public static <M> M decode(WebSocketCodec<M> codec, WebSocketFrame frame) {
+		ByteBuf content = frame.content();
+		int index = content.readerIndex();
+		try {
+			return codec.decode(content);
+		} finally {
+			content.readerIndex(index);
+		}
+	}
+
+	/** 把消息编码到alloc分配的direct buffer中。默认的alloc从池中分配 */
+	public static <M> WebSocketFrame encode(WebSocketCodec<M> codec, M msg, ByteBufAllocator alloc) {
+		ByteBuf buf = alloc.directBuffer();
+		try {
+			codec.encode(msg, buf);
+		} catch (RuntimeException e) {
+			buf.release();
+			throw e;
+		}
+		return codec.text() ? new TextWebSocketFrame(buf) : new BinaryWebSocketFrame(buf);
+	}
+
+	/** 编码消息并发送，用于WebSocketServer */
+	public static <M> ChannelFuture write(Channel channel, WebSocketCodec<M> codec, M msg) {
+		return channel.writeAndFlush(encode(codec, msg, channel.alloc()));
+	}
+}
@@ -0,0 +1,234 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.util.HttpConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aggrepoint.utils.http.Http2Channel;
+import com.aggrepoint.utils.http.HttpDownloadTask;
+import com.aggrepoint.utils.http.HttpRequester;
+import com.aggrepoint.utils.http.HttpTask;
+import com.aggrepoint.utils.http.HttpThrottling;
+import com.aggrepoint.utils.http.ResponseLimitException;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * 用进程内的h2c服务器测试Http2Channel。服务器每个连接最多允许2个并发stream，/slow延迟200毫秒响应，/hang不响应，
+ * /form在响应中返回请求的content-type
+ */
+public class Http2ChannelTest {
+	NioEventLoopGroup group = new NioEventLoopGroup(1);
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+	Channel server;
+	String url;
+
+	AtomicInteger connections = new AtomicInteger();
+	AtomicInteger active = new AtomicInteger();
+	AtomicInteger maxActive = new AtomicInteger();
+
+	class StubStreamHandler extends ChannelInboundHandlerAdapter {
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (!(msg instanceof Http2HeadersFrame)) {
+				ReferenceCountUtil.release(msg);
+				return;
+			}
+
+			String path = ((Http2HeadersFrame) msg).headers().path().toString();
+			if (path.startsWith("/hang"))
+				return;
+			// /form返回请求的content-type
+			String reply = "reply " + path
+					+ (path.startsWith("/form") ? " " + ((Http2HeadersFrame) msg).headers().get("content-type") : "");
+
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			ctx.executor().schedule(() -> {
+				active.decrementAndGet();
+				ctx.write(new DefaultHttp2HeadersFrame(
+						new DefaultHttp2Headers().status("200").set("content-type", "text/plain")));
+				ctx.writeAndFlush(new DefaultHttp2DataFrame(
+						Unpooled.copiedBuffer(reply, StandardCharsets.UTF_8), true));
+			}, path.startsWith("/slow") ? 200 : 0, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Before
+	public void start() throws Exception {
+		server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						connections.incrementAndGet();
+						ch.pipeline().addLast(Http2MultiplexCodecBuilder.forServer(new ChannelInitializer<Channel>() {
+							@Override
+							protected void initChannel(Channel ch) throws Exception {
+								ch.pipeline().addLast(new StubStreamHandler());
+							}
+						}).initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams(2)).build());
+					}
+				}).bind("127.0.0.1", 0).sync().channel();
+		url = "http://127.0.0.1:" + ((java.net.InetSocketAddress) server.localAddress()).getPort();
+	}
+
+	@After
+	public void stop() {
+		server.close();
+		group.shutdownGracefully();
+		executor.shutdown();
+	}
+
+	@Test
+	public void testMultiplexing() throws Exception {
+		// 客户端允许100个并发stream，实际并发受服务器SETTINGS限制
+		Http2Channel channel = new Http2Channel(executor, null, 1000, 5000).setMaxConnectionsPerHost(1);
+
+		CountDownLatch latch = new CountDownLatch(10);
+		AtomicInteger ok = new AtomicInteger();
+		for (int i = 0; i < 10; i++) {
+			String expected = "reply /slow/" + i;
+			channel.request(new HttpTask(url + "/slow/" + i, (content, exp) -> {
+				if (expected.equals(content))
+					ok.incrementAndGet();
+				latch.countDown();
+			}));
+		}
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(10, ok.get());
+		assertEquals(1, connections.get());
+		assertEquals(2, maxActive.get());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		Http2Channel channel = new Http2Channel(executor, null, 1000, 5000);
+
+		AtomicReference<Exception> error = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		channel.request(new HttpTask(new RequestBuilder(HttpConstants.Methods.GET).setUrl(url + "/hang")
+				.setRequestTimeout(300).build(), (content, exp) -> {
+					error.set(exp);
+					latch.countDown();
+				}));
+
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		assertTrue(error.get() instanceof ExecutionException);
+		assertTrue(error.get().getCause() instanceof TimeoutException);
+
+		// 超时的stream被关闭，连接仍然可用
+		assertEquals("reply /fast", channel.request(new HttpTask(url + "/fast")).sync().getResponseBody());
+	}
+
+	@Test
+	public void testTaskLimits() throws Exception {
+		Http2Channel channel = new Http2Channel(executor, null, 1000, 5000);
+
+		AtomicReference<Exception> size = new AtomicReference<>();
+		AtomicReference<Exception> type = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(2);
+		channel.request(new HttpTask(url + "/size", (content, exp) -> {
+			size.set(exp);
+			latch.countDown();
+		}).setMaxBodySize(5L));
+		channel.request(new HttpTask(url + "/type", (content, exp) -> {
+			type.set(exp);
+			latch.countDown();
+		}).setContentTypes("application/json"));
+
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		assertTrue(size.get() instanceof ResponseLimitException);
+		assertTrue(type.get() instanceof ResponseLimitException);
+	}
+
+	@Test
+	public void testConnectFailure() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		Http2Channel channel = new Http2Channel(executor, null, 1000, 5000);
+		CountDownLatch latch = new CountDownLatch(3);
+		AtomicInteger failed = new AtomicInteger();
+		for (int i = 0; i < 3; i++)
+			channel.request(new HttpTask("http://127.0.0.1:" + port + "/" + i, (content, exp) -> {
+				if (exp != null)
+					failed.incrementAndGet();
+				latch.countDown();
+			}));
+
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		assertEquals(3, failed.get());
+	}
+
+	@Test
+	public void testDownloadTask() throws Exception {
+		Http2Channel channel = new Http2Channel(executor, null, 1000, 5000);
+		HttpThrottling throttling = new HttpThrottling(new HttpRequester[] { channel }, 0, 10);
+
+		// 不支持的下载任务回调done，请求线程继续执行后面的请求
+		AtomicReference<Exception> error = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(2);
+		throttling.request(new HttpDownloadTask(url + "/file", new File("h2.download"), (result, exp) -> {
+			error.set(exp);
+			latch.countDown();
+		}));
+		AtomicReference<String> content = new AtomicReference<>();
+		throttling.request(new HttpTask(url + "/fast", (c, exp) -> {
+			content.set(c);
+			latch.countDown();
+		}));
+
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		assertTrue(error.get() instanceof UnsupportedOperationException);
+		assertEquals("reply /fast", content.get());
+	}
+
+	@Test
+	public void testFormRequest() throws Exception {
+		Http2Channel channel = new Http2Channel(executor, null, 1000, 5000);
+
+		// 表单请求发出时加上content-type，不修改调用者的Request，可以重复使用
+		Request request = new RequestBuilder(HttpConstants.Methods.POST).setUrl(url + "/form").addFormParam("a", "1")
+				.build();
+		for (int i = 0; i < 2; i++)
+			assertEquals("reply /form application/x-www-form-urlencoded",
+					channel.request(new HttpTask(request, null)).sync().getResponseBody());
+		assertFalse(request.getHeaders().contains("content-type"));
+	}
+}
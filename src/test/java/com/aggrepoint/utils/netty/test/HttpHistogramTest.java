@@ -0,0 +1,41 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.aggrepoint.utils.http.HttpHistogram;
+
+public class HttpHistogramTest {
+	@Test
+	public void testPercentile() throws Exception {
+		HttpHistogram h = new HttpHistogram();
+		for (int i = 1; i <= 10000; i++)
+			h.record(i);
+
+		HttpHistogram.Snapshot s = h.snapshot();
+		assertEquals(10000, s.getCount());
+		assertEquals(5000.5, s.getMean(), 0.001);
+		assertEquals(1, s.getMin());
+		// 误差不超过1/32
+		assertTrue(Math.abs(s.getPercentile(50) - 5000) <= 5000 / 32);
+		assertTrue(Math.abs(s.getPercentile(99) - 9900) <= 9900 / 32);
+		assertTrue(s.getMax() >= 10000 && s.getMax() <= 10000 + 10000 / 32);
+	}
+
+	@Test
+	public void testInterval() throws Exception {
+		HttpHistogram h = new HttpHistogram();
+		for (int i = 0; i < 100; i++)
+			h.record(10);
+		assertEquals(100, h.intervalSnapshot().getCount());
+
+		h.record(1000000);
+		HttpHistogram.Snapshot s = h.intervalSnapshot();
+		assertEquals(1, s.getCount());
+		assertTrue(s.getMin() >= 1000000);
+		assertEquals(101, h.snapshot().getCount());
+		assertEquals(0, h.intervalSnapshot().getCount());
+	}
+}
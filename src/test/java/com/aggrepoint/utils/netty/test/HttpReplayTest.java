@@ -0,0 +1,67 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.aggrepoint.utils.http.HttpChannel;
+import com.aggrepoint.utils.http.HttpRecorder;
+import com.aggrepoint.utils.http.HttpReplay;
+import com.aggrepoint.utils.http.ResponseFuture;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpReplayTest {
+	@Test
+	public void testRecordAndReplay() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body = ("reply " + exchange.getRequestURI().getQuery()).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/q?n=";
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		File dir = Files.createTempDirectory("record").toFile();
+
+		// 录制
+		HttpRecorder recorder = new HttpRecorder(dir, 4096, 100);
+		HttpChannel channel = new HttpChannel(executor, null, 1000, 1000, 1000, false, null, null)
+				.setRecorder(recorder);
+		List<ResponseFuture> list = new ArrayList<>();
+		for (int i = 0; i < 20; i++)
+			list.add(channel.request(url + i, (content, exp) -> {
+			}));
+		ResponseFuture.sync(list);
+		recorder.close();
+		server.stop(0);
+
+		List<HttpRecorder.Record> records = HttpRecorder.read(dir);
+		assertEquals(20, records.size());
+
+		// 回放
+		HttpReplay replay = new HttpReplay(executor, dir).setLatencyScale(0);
+		for (int i = 0; i < 20; i++)
+			assertEquals("reply n=" + i, replay.request(url + i, (content, exp) -> {
+			}).sync().getResponseBody());
+		// 没有录制过的请求
+		assertNull(replay.request(url + "x", (content, exp) -> {
+		}).sync());
+		assertEquals(20, replay.getMetrics().snapshot().getLatency().getCount());
+	}
+}
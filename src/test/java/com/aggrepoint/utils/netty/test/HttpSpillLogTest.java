@@ -0,0 +1,214 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.util.HttpConstants;
+import org.junit.Test;
+
+import com.aggrepoint.utils.http.HttpChannel;
+import com.aggrepoint.utils.http.HttpDownloadTask;
+import com.aggrepoint.utils.http.HttpSpillLog;
+import com.aggrepoint.utils.http.HttpTask;
+import com.aggrepoint.utils.http.HttpThrottling;
+import com.aggrepoint.utils.http.ResponseFuture;
+import com.aggrepoint.utils.http.ResponseLimitException;
+import com.aggrepoint.utils.http.ThrottlingOverflowException;
+import com.sun.net.httpserver.HttpServer;
+
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+
+public class HttpSpillLogTest {
+	@Test
+	public void testSpillAndReplay() throws Exception {
+		File dir = Files.createTempDirectory("spill").toFile();
+
+		// 使用较小的段，让记录跨越多个段文件
+		HttpSpillLog log = new HttpSpillLog(dir, 4096, false);
+		for (int i = 0; i < 100; i++)
+			log.append(new RequestBuilder(HttpConstants.Methods.POST).setUrl("http://localhost/" + i)
+					.addHeader("X-Seq", "" + i).setBody("body" + i).build(), "data" + i);
+
+		for (int i = 0; i < 40; i++)
+			assertEquals("data" + i, log.poll().getData());
+		log.close();
+
+		// 重新打开，继续读出未读出的记录
+		log = new HttpSpillLog(dir, 4096, true);
+		assertEquals(60, log.size());
+		for (int i = 40; i < 100; i++) {
+			HttpSpillLog.Entry entry = log.poll();
+			assertEquals("data" + i, entry.getData());
+			assertEquals("http://localhost/" + i, entry.getRequest().getUrl());
+			assertEquals("" + i, entry.getRequest().getHeaders().get("X-Seq"));
+			assertEquals("body" + i, entry.getRequest().getStringData());
+		}
+		assertNull(log.poll());
+		log.close();
+	}
+
+	@Test
+	public void testRequestSettings() throws Exception {
+		File dir = Files.createTempDirectory("spill").toFile();
+		HttpSpillLog log = new HttpSpillLog(dir, 4096, false);
+
+		log.append(new RequestBuilder(HttpConstants.Methods.GET).setUrl("http://localhost/")
+				.addCookie(new DefaultCookie("session", "abc")).setRequestTimeout(1234).setReadTimeout(567)
+				.setVirtualHost("example.com").build(), null);
+		Request request = log.poll().getRequest();
+		assertEquals("session", request.getCookies().get(0).name());
+		assertEquals("abc", request.getCookies().get(0).value());
+		assertEquals(1234, request.getRequestTimeout());
+		assertEquals(567, request.getReadTimeout());
+		assertEquals("example.com", request.getVirtualHost());
+
+		// 字符串内容按请求的字符集保存和重建
+		Charset gbk = Charset.forName("GBK");
+		log.append(new RequestBuilder(HttpConstants.Methods.POST).setUrl("http://localhost/").setCharset(gbk)
+				.setBody("中文内容").build(), null);
+		request = log.poll().getRequest();
+		assertEquals(gbk, request.getCharset());
+		assertEquals("中文内容", request.getStringData());
+
+		// 不能完整保存的请求被拒绝，而不是重建成不同的请求
+		try {
+			log.append(new RequestBuilder(HttpConstants.Methods.GET).setUrl("http://localhost/")
+					.setLocalAddress(InetAddress.getLoopbackAddress()).build(), null);
+			fail();
+		} catch (IOException e) {
+		}
+		assertTrue(log.isEmpty());
+		log.close();
+	}
+
+	@Test
+	public void testThrottlingKeepsTask() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body = "a response longer than the limit".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		HttpChannel channel = new HttpChannel(executor, null, 1000, 1000, 1000, false, null, null);
+		HttpThrottling throttling = new HttpThrottling(new HttpChannel[] { channel }, 20, 1)
+				.setSpillLog(new HttpSpillLog(Files.createTempDirectory("spill").toFile(), 4096, false), null);
+
+		// 等待队列只有1个位置，其余请求被暂存。取回后仍然要按HttpTask中的限制处理响应
+		CountDownLatch latch = new CountDownLatch(5);
+		AtomicInteger limited = new AtomicInteger();
+		for (int i = 0; i < 5; i++)
+			throttling.request(new HttpTask(url + i, (content, exp) -> {
+				if (exp instanceof ResponseLimitException)
+					limited.incrementAndGet();
+				latch.countDown();
+			}).setMaxBodySize(10L));
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(5, limited.get());
+		server.stop(0);
+	}
+
+	@Test
+	public void testThrottlingDownload() throws Exception {
+		byte[] content = new byte[100000];
+		for (int i = 0; i < content.length; i++)
+			content[i] = (byte) i;
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			exchange.sendResponseHeaders(200, content.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(content);
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		HttpChannel channel = new HttpChannel(executor, null, 1000, 1000, 1000, false, null, null);
+		File spillDir = Files.createTempDirectory("spill").toFile();
+		HttpThrottling throttling = new HttpThrottling(new HttpChannel[] { channel }, 20, 1)
+				.setSpillLog(new HttpSpillLog(spillDir, 4096, false), null);
+
+		// 被暂存的下载任务取回后仍然写入文件并回调done
+		File dir = Files.createTempDirectory("download").toFile();
+		CountDownLatch latch = new CountDownLatch(4);
+		AtomicInteger downloaded = new AtomicInteger();
+		for (int i = 0; i < 4; i++) {
+			File file = new File(dir, "file" + i);
+			throttling.request(new HttpDownloadTask(url + i, file, (result, exp) -> {
+				if (exp == null && result.getSize() == content.length && file.length() == content.length)
+					downloaded.incrementAndGet();
+				latch.countDown();
+			}));
+		}
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(4, downloaded.get());
+		server.stop(0);
+
+		// 重启前暂存的下载任务不能重新执行
+		HttpSpillLog log = new HttpSpillLog(spillDir, 4096, false);
+		log.append(new RequestBuilder(HttpConstants.Methods.GET).setUrl(url).build(), null, true);
+		log.close();
+		log = new HttpSpillLog(spillDir, 4096, true);
+		assertTrue(log.poll().isMemoryOnly());
+		log.close();
+	}
+
+	@Test
+	public void testDownloadFailure() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		HttpChannel channel = new HttpChannel(executor, null, 1000, 1000, 1000, false, null, null);
+
+		// 计算已下载部分的校验和时读取.part失败，返回失败的future并回调done
+		File dir = Files.createTempDirectory("download").toFile();
+		File file = new File(dir, "file");
+		new File(dir, "file.part").mkdir();
+		new File(dir, "file.part/x").createNewFile();
+		AtomicReference<Exception> error = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		ResponseFuture future = channel.request(new HttpDownloadTask("http://127.0.0.1:1/", file, (result, exp) -> {
+			error.set(exp);
+			latch.countDown();
+		}).setResume(true).setChecksum("MD5"));
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		assertTrue(error.get() instanceof IOException);
+		assertTrue(future.isDone());
+
+		// 等待队列满时被拒绝的下载任务回调done
+		HttpThrottling throttling = new HttpThrottling(new HttpChannel[] { channel }, 60000, 1);
+		AtomicInteger rejected = new AtomicInteger();
+		for (int i = 0; i < 3; i++)
+			throttling.request(new HttpDownloadTask("http://127.0.0.1:1/" + i, new File(dir, "f" + i), (result, exp) -> {
+				if (exp instanceof ThrottlingOverflowException)
+					rejected.incrementAndGet();
+			}));
+		assertTrue(rejected.get() >= 1);
+	}
+}
@@ -5,12 +5,17 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.util.HttpConstants;
+import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.aggrepoint.utils.http.HttpChannel;
 import com.aggrepoint.utils.http.HttpRepeat;
+import com.aggrepoint.utils.http.HttpRequestTemplate;
 import com.aggrepoint.utils.http.HttpTask;
 import com.aggrepoint.utils.http.HttpThrottling;
 import com.aggrepoint.utils.http.ResponseFuture;
@@ -40,6 +45,20 @@ public class HttpTest {
 		sleep(1000);
 	}
 
+	@Test
+	public void testRequestTemplate() {
+		HttpRequestTemplate template = new HttpRequestTemplate(HttpConstants.Methods.GET,
+				"https://api.binance.com/api/v3/{path}?symbol={symbol}&limit={limit}").addHeader("X-Key", "key");
+
+		Request request = template.request("depth", "ETH BTC", 5);
+		Request expected = new RequestBuilder(HttpConstants.Methods.GET)
+				.setUrl("https://api.binance.com/api/v3/depth?symbol=ETH%20BTC&limit=5").addHeader("X-Key", "key")
+				.build();
+
+		Assert.assertEquals(expected.getUrl(), request.getUrl());
+		Assert.assertEquals("key", request.getHeaders().get("X-Key"));
+	}
+
 	@Test
 	public void testThrottling() {
 		// 限速5秒执行一个，队列容量为3
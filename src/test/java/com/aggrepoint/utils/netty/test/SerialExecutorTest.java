@@ -0,0 +1,54 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.aggrepoint.utils.thread.SerialExecutor;
+
+public class SerialExecutorTest {
+	@Test
+	public void testOrder() throws Exception {
+		int producers = 4;
+		int count = 20000;
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<SerialExecutor> serials = new ArrayList<>();
+			List<List<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < producers; i++) {
+				serials.add(new SerialExecutor(pool, 16));
+				results.add(new ArrayList<>());
+			}
+
+			CountDownLatch done = new CountDownLatch(producers);
+			for (int i = 0; i < producers; i++) {
+				SerialExecutor serial = serials.get(i);
+				List<Integer> result = results.get(i);
+				new Thread(() -> {
+					for (int n = 0; n < count; n++) {
+						int v = n;
+						serial.execute(() -> result.add(v));
+					}
+					serial.execute(done::countDown);
+				}).start();
+			}
+
+			assertTrue(done.await(30, TimeUnit.SECONDS));
+			for (List<Integer> result : results) {
+				assertEquals(count, result.size());
+				for (int n = 0; n < count; n++)
+					assertEquals(n, result.get(n).intValue());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.aggrepoint.utils.netty.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.aggrepoint.utils.ws.WebSocketClientIntf;
+
+/**
+ * 用于测试监控器的WebSocketClientIntf，open()立即成功或失败，不建立网络连接
+ */
+public class StubWebSocketClient implements WebSocketClientIntf {
+	String key;
+	volatile boolean monitored = true;
+	volatile boolean connected;
+	/** open()是否失败 */
+	volatile boolean failing;
+	volatile int failureCount;
+	/** 连接后超过这个时间没有活动则断开，0表示不检查 */
+	volatile long maxInactiveTime;
+	volatile long activeTime;
+	volatile Long heartBeatTime;
+	volatile Runnable listener;
+
+	AtomicInteger opens = new AtomicInteger();
+	AtomicInteger heartBeats = new AtomicInteger();
+	AtomicInteger inactiveKicks = new AtomicInteger();
+
+	public StubWebSocketClient(String key) {
+		this.key = key;
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public void setMonitored() {
+	}
+
+	@Override
+	public void logStats() {
+	}
+
+	@Override
+	public boolean beMonitored() {
+		return monitored;
+	}
+
+	@Override
+	public boolean isConnecting() {
+		return false;
+	}
+
+	@Override
+	public boolean isChannelConnected() {
+		return connected;
+	}
+
+	@Override
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	@Override
+	public boolean disconnectIfInactive() {
+		if (!connected || maxInactiveTime <= 0 || System.currentTimeMillis() - activeTime < maxInactiveTime)
+			return false;
+		connected = false;
+		inactiveKicks.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public long getInactiveTime() {
+		return System.currentTimeMillis() - activeTime;
+	}
+
+	@Override
+	public boolean disconnectIfReconnect() {
+		return false;
+	}
+
+	@Override
+	public Long getHeartBeatTime() {
+		return heartBeatTime;
+	}
+
+	@Override
+	public void heartBeat() {
+		heartBeats.incrementAndGet();
+		heartBeatTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public boolean open(String localIp) throws Exception {
+		opens.incrementAndGet();
+		if (failing) {
+			failureCount++;
+			connected = false;
+		} else {
+			failureCount = 0;
+			connected = true;
+			activeTime = System.currentTimeMillis();
+			heartBeatTime = activeTime;
+		}
+
+		Runnable l = listener;
+		if (l != null)
+			l.run();
+		return connected;
+	}
+
+	/** 模拟连接被服务器断开 */
+	void drop() {
+		connected = false;
+		Runnable l = listener;
+		if (l != null)
+			l.run();
+	}
+
+	@Override
+	public long getDeadline() {
+		return connected && maxInactiveTime > 0 ? activeTime + maxInactiveTime : Long.MAX_VALUE;
+	}
+
+	@Override
+	public boolean setStateListener(Runnable listener) {
+		this.listener = listener;
+		return true;
+	}
+}
@@ -0,0 +1,74 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.aggrepoint.utils.ws.WebSocketClientMonitorWheel;
+
+public class WebSocketClientMonitorWheelTest {
+	private void sleep(int ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	@Test
+	public void testScheduling() {
+		// 心跳间隔100毫秒，检查间隔很长，检查时间完全由client给出的deadline和心跳时间决定
+		WebSocketClientMonitorWheel monitor = new WebSocketClientMonitorWheel("wheel", null, 10, 100, 60000);
+
+		StubWebSocketClient heartBeat = new StubWebSocketClient("heartbeat");
+		StubWebSocketClient inactive = new StubWebSocketClient("inactive");
+		inactive.maxInactiveTime = 300;
+		monitor.startClient(heartBeat).startClient(inactive);
+
+		sleep(1000);
+		// 立即建立连接，之后只发送心跳
+		assertEquals(1, heartBeat.opens.get());
+		assertTrue(heartBeat.heartBeats.get() >= 7 && heartBeat.heartBeats.get() <= 11);
+		// 每300毫秒因为不活跃断开并重新建立连接
+		assertTrue(inactive.inactiveKicks.get() >= 2 && inactive.inactiveKicks.get() <= 4);
+		assertEquals(inactive.inactiveKicks.get() + 1, inactive.opens.get());
+		// 监控器主动断开的连接不影响IP的健康状况
+		assertEquals(0, monitor.getReconnector().getHealth().getDisconnectCount());
+
+		// 连接被服务器断开时收到通知，立即重连
+		heartBeat.drop();
+		sleep(100);
+		assertTrue(heartBeat.connected);
+		assertEquals(2, heartBeat.opens.get());
+		assertEquals(1, monitor.getReconnector().getHealth().getDisconnectCount());
+
+		// 不再需要监控的client被移除
+		heartBeat.monitored = false;
+		inactive.monitored = false;
+		heartBeat.drop();
+		inactive.drop();
+		monitor.sync();
+		assertEquals(0, monitor.getClientCount());
+		monitor.stop();
+	}
+
+	@Test
+	public void testBackoff() {
+		WebSocketClientMonitorWheel monitor = new WebSocketClientMonitorWheel("wheel", null, 10, 1000, 60000)
+				.setReconnect(1, 0, 0, 200, 200);
+
+		StubWebSocketClient client = new StubWebSocketClient("failing");
+		client.failing = true;
+		monitor.startClient(client);
+
+		// 第一次立即连接，之后每次失败后等待0到200毫秒
+		sleep(1000);
+		assertTrue(client.opens.get() >= 5);
+		assertTrue(monitor.getReconnector().getHealth().getFailureRate() > 0.5);
+
+		client.failing = false;
+		sleep(500);
+		assertTrue(client.connected);
+		monitor.stop();
+	}
+}
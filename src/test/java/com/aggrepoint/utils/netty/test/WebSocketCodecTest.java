@@ -0,0 +1,148 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.aggrepoint.utils.ws.codec.JsonCodec;
+import com.aggrepoint.utils.ws.codec.JsonReader;
+import com.aggrepoint.utils.ws.codec.JsonWriter;
+import com.aggrepoint.utils.ws.codec.LengthPrefixedCodec;
+import com.aggrepoint.utils.ws.codec.PooledMessage;
+import com.aggrepoint.utils.ws.codec.WebSocketCodec;
+import com.aggrepoint.utils.ws.codec.WebSocketCodecs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+public class WebSocketCodecTest {
+	static class Trade extends PooledMessage {
+		StringBuilder symbol = new StringBuilder();
+		long time;
+		double price;
+		double quantity;
+
+		@Override
+		protected void clear() {
+			symbol.setLength(0);
+			time = 0;
+			price = 0;
+			quantity = 0;
+		}
+	}
+
+	static class TradeJsonCodec extends JsonCodec<Trade> {
+		TradeJsonCodec() {
+			super(Trade::new);
+		}
+
+		@Override
+		protected void read(JsonReader reader, Trade msg) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				reader.nextName();
+				if (reader.nameIs("s"))
+					reader.nextString(msg.symbol);
+				else if (reader.nameIs("T"))
+					msg.time = reader.nextLong();
+				else if (reader.nameIs("p"))
+					msg.price = reader.nextDouble();
+				else if (reader.nameIs("q"))
+					msg.quantity = reader.nextDouble();
+				else
+					reader.skipValue();
+			}
+			reader.endObject();
+		}
+
+		@Override
+		protected void write(Trade msg, JsonWriter writer) {
+			writer.beginObject().name("s").value(msg.symbol).name("T").value(msg.time).name("p").value(msg.price)
+					.name("q").value(msg.quantity).endObject();
+		}
+	}
+
+	static class TradeBinaryCodec extends LengthPrefixedCodec<Trade> {
+		TradeBinaryCodec() {
+			super(Trade::new);
+		}
+
+		@Override
+		protected void read(ByteBuf in, Trade msg) {
+			readString(in, msg.symbol);
+			msg.time = in.readLong();
+			msg.price = in.readDouble();
+			msg.quantity = in.readDouble();
+		}
+
+		@Override
+		protected void write(Trade msg, ByteBuf out) {
+			writeString(out, msg.symbol);
+			out.writeLong(msg.time).writeDouble(msg.price).writeDouble(msg.quantity);
+		}
+	}
+
+	@Test
+	public void testJsonDecode() {
+		String json = "{\"e\":\"trade\",\"s\":\"BTC\\u00e9\\\"USDT\",\"T\":1537430400123,\"p\":\"6500.10\","
+				+ "\"q\":1.5e-3,\"x\":{\"a\":[1,[2,\"]\"],{}],\"b\":null},\"m\":true}";
+		TradeJsonCodec codec = new TradeJsonCodec();
+		TextWebSocketFrame frame = new TextWebSocketFrame(json);
+		Trade trade = WebSocketCodecs.decode(codec, frame);
+		assertEquals("BTCé\"USDT", trade.symbol.toString());
+		assertEquals(1537430400123L, trade.time);
+		assertEquals(6500.10, trade.price, 0);
+		assertEquals(0.0015, trade.quantity, 0);
+		assertEquals(json, frame.text());
+		codec.release(trade);
+		frame.release();
+
+		// 回收后再次取得的是同一个对象
+		frame = new TextWebSocketFrame("{\"s\":\"ETH\"}");
+		Trade again = WebSocketCodecs.decode(codec, frame);
+		assertSame(trade, again);
+		assertEquals("ETH", again.symbol.toString());
+		assertEquals(0, again.time);
+		codec.release(again);
+		frame.release();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		List<WebSocketCodec<Trade>> codecs = Arrays.asList(new TradeJsonCodec(), new TradeBinaryCodec());
+		for (WebSocketCodec<Trade> codec : codecs) {
+			Trade trade = new Trade();
+			trade.symbol.append("BTC/美元\n");
+			trade.time = -42;
+			trade.price = 0.1 + 0.2;
+			trade.quantity = 123456789.123;
+
+			WebSocketFrame frame = WebSocketCodecs.encode(codec, trade, ByteBufAllocator.DEFAULT);
+			Trade decoded = WebSocketCodecs.decode(codec, frame);
+			assertEquals(trade.symbol.toString(), decoded.symbol.toString());
+			assertEquals(trade.time, decoded.time);
+			assertEquals(trade.price, decoded.price, 0);
+			assertEquals(trade.quantity, decoded.quantity, 0);
+			codec.release(decoded);
+			frame.release();
+		}
+	}
+
+	@Test
+	public void testJsonWriter() {
+		ByteBuf out = Unpooled.buffer();
+		new JsonWriter().reset(out).beginObject().name("a").beginArray().value(650010, 2).value(5, 3).value(-7, 0)
+				.endArray().name("b").beginObject().endObject().name("c").nullValue().name("d").value(false)
+				.endObject();
+		assertEquals("{\"a\":[6500.10,0.005,-7],\"b\":{},\"c\":null,\"d\":false}",
+				out.toString(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,113 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aggrepoint.utils.ws.WebSocketClient;
+import com.aggrepoint.utils.ws.WebSocketClientBuilder;
+import com.aggrepoint.utils.ws.WebSocketServer;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * 用进程内的WebSocket服务器测试迁移。服务器每2毫秒向所有订阅的连接推送一个递增的序号，新连接订阅后到切换之前，
+ * 以及切换后原连接关闭之前，两个连接收到相同的序号
+ */
+public class WebSocketMigrateTest {
+	ScheduledExecutorService feed = Executors.newSingleThreadScheduledExecutor();
+	Set<Channel> subscribers = ConcurrentHashMap.newKeySet();
+	long seq;
+	Runnable stopServer;
+	String url;
+
+	private void sleep(int ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	@Before
+	public void start() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		url = "ws://127.0.0.1:" + port + "/ws";
+
+		stopServer = WebSocketServer.start(null, null, port, "/ws", (channel, req) -> channel.close(),
+				(channel, ip) -> channel, (channel, ch, frame) -> {
+					if (!(frame instanceof TextWebSocketFrame) || !"sub".equals(((TextWebSocketFrame) frame).text()))
+						return;
+					subscribers.add(channel);
+				}, channel -> subscribers.remove(channel));
+
+		feed.scheduleAtFixedRate(() -> {
+			seq++;
+			for (Channel channel : subscribers)
+				channel.writeAndFlush(new TextWebSocketFrame(Long.toString(seq)));
+		}, 2, 2, TimeUnit.MILLISECONDS);
+	}
+
+	@After
+	public void stop() {
+		feed.shutdown();
+		stopServer.run();
+	}
+
+	@Test
+	public void testSequence() throws Exception {
+		List<Long> received = new ArrayList<>();
+		AtomicInteger disconnects = new AtomicInteger();
+
+		WebSocketClient<TextWebSocketFrame, String> client = new WebSocketClientBuilder<TextWebSocketFrame, String>(
+				null, "migrate", url).setReconnectOverlap(true, 1000, frame -> Long.valueOf(frame.text()))
+						.onConnected((channel, data) -> channel.writeAndFlush(new TextWebSocketFrame("sub")))
+						.onFrame((channel, frame, data) -> {
+							synchronized (received) {
+								received.add(Long.valueOf(frame.text()));
+							}
+						}).onDisconnected(data -> disconnects.incrementAndGet()).build();
+
+		client.open(null);
+		for (int i = 0; i < 100 && !client.isConnected(); i++)
+			sleep(20);
+		sleep(200);
+
+		assertTrue(client.migrate(null));
+		// 原连接在切换1秒后关闭
+		sleep(1500);
+		client.disconnect();
+		sleep(100);
+
+		assertEquals(1, client.getMigrateCount());
+		assertEquals(0, client.getReconnectCount());
+		assertTrue(client.getDuplicateFrames() > 0);
+		// 关闭原连接不作为连接中断
+		assertEquals(1, disconnects.get());
+
+		// 序号没有重复，也没有缺失
+		synchronized (received) {
+			TreeSet<Long> unique = new TreeSet<>(received);
+			assertEquals(received.size(), unique.size());
+			assertEquals(unique.last() - unique.first() + 1, unique.size());
+			assertTrue(unique.size() > 500);
+		}
+	}
+}
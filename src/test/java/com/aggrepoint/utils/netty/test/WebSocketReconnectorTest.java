@@ -0,0 +1,75 @@
+package com.aggrepoint.utils.netty.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.aggrepoint.utils.ws.WebSocketReconnector;
+
+public class WebSocketReconnectorTest {
+	private void sleep(int ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	@Test
+	public void testBackoff() {
+		WebSocketReconnector reconnector = new WebSocketReconnector("backoff", null, 1, 0, 0, 100, 1000);
+
+		assertEquals(0, reconnector.backoff(0));
+		long[] max = new long[5];
+		for (int i = 0; i < 2000; i++)
+			for (int failures = 1; failures < max.length; failures++)
+				max[failures] = Math.max(max[failures], reconnector.backoff(failures));
+
+		// 上限按失败次数翻倍：100, 200, 400, 800
+		for (int failures = 1; failures < max.length; failures++) {
+			long limit = 100 << (failures - 1);
+			assertTrue(max[failures] <= limit && max[failures] > limit / 2);
+		}
+		// 不超过maxBackoff，失败次数很大时不溢出
+		for (int i = 0; i < 2000; i++) {
+			long backoff = reconnector.backoff(i % 2 == 0 ? 5 : 1000);
+			assertTrue(backoff >= 0 && backoff <= 1000);
+		}
+		reconnector.stop();
+	}
+
+	@Test
+	public void testRecovery() {
+		WebSocketReconnector reconnector = new WebSocketReconnector("recovery", null, 2, 0, 0, 50, 300);
+
+		// 所有连接都恢复
+		StubWebSocketClient[] clients = new StubWebSocketClient[3];
+		for (int i = 0; i < clients.length; i++) {
+			clients[i] = new StubWebSocketClient("c" + i);
+			reconnector.reconnect(clients[i]);
+		}
+		sleep(400);
+		assertEquals(3, reconnector.getOpenCount());
+		assertEquals(0, reconnector.getRecovering());
+		assertEquals(3, reconnector.getLastRecoveryCount());
+		assertEquals(0, reconnector.getLastUnrecoveredCount());
+		assertEquals(0, reconnector.getRecoveryElapsed());
+
+		// 一个连接一直失败，maxBackoff时间内没有新的连接恢复后结束恢复过程
+		StubWebSocketClient ok = new StubWebSocketClient("ok");
+		StubWebSocketClient failing = new StubWebSocketClient("failing");
+		failing.failing = true;
+		reconnector.reconnect(ok);
+		reconnector.reconnect(failing);
+		for (int i = 0; i < 30; i++) {
+			sleep(50);
+			if (!reconnector.isPending(failing))
+				reconnector.reconnect(failing);
+		}
+		assertEquals(1, reconnector.getLastRecoveryCount());
+		assertEquals(1, reconnector.getLastUnrecoveredCount());
+		assertEquals(0, reconnector.getRecoveryElapsed());
+		assertTrue(reconnector.getHealth().getFailures() > 1);
+		reconnector.stop();
+	}
+}